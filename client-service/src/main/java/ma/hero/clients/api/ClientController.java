@@ -1,18 +1,42 @@
 package ma.hero.clients.api;
 
+import ma.hero.clients.api.feign.ResilientSaleClient;
 import ma.hero.clients.api.feign.SaleClient;
 import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientImportDto;
+import ma.hero.clients.dto.ClientPageDto;
+import ma.hero.clients.dto.ClientSummaryDto;
 import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.service.IClientImportService;
+import ma.hero.clients.service.IClientSalesProjectionService;
+import ma.hero.clients.service.IClientSearchService;
 import ma.hero.clients.service.IClientService;
+import ma.hero.clients.service.IClientSummaryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client controller.
@@ -23,12 +47,35 @@ public class ClientController {
 
     private static final Logger log = LoggerFactory.getLogger(ClientController.class);
 
+    static final String DEGRADED_HEADER = "X-Degraded";
+
+    static final String NEXT_PAGE_HEADER = "X-Next-Page-Token";
+
+    static final String SALES_WATERMARK_HEADER = "X-Sales-Watermark";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
     @Autowired
     IClientService clientService;
 
+    @Autowired
+    private IClientSearchService clientSearchService;
+
+    @Autowired
+    private IClientImportService clientImportService;
+
     @Autowired
     private SaleClient saleClient;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IClientSummaryService clientSummaryService;
+
+    @Autowired
+    private IClientSalesProjectionService salesProjection;
+
     // ----- Create a Client ----- //
     @PostMapping
     public ResponseEntity<Client> createClient(@RequestBody Client client) {
@@ -37,29 +84,127 @@ public class ClientController {
         return new ResponseEntity<>(client, HttpStatus.CREATED);
     }
 
+    // ----- Import Clients from NDJSON or CSV ----- //
+    @PostMapping(value = "/import", consumes = {IClientImportService.NDJSON, IClientImportService.CSV})
+    public ResponseEntity<ClientImportDto> importClients(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                         @RequestParam(value = "importId", required = false) String importId,
+                                                         InputStream body) throws IOException {
+        // the progress can be followed with GET /import/{importId} while the body is read
+        String id = importId == null ? UUID.randomUUID().toString() : importId;
+        log.info("Importing clients in database, import {}.", id);
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        try {
+            ClientImportDto summary = clientImportService.importClients(id, body, mediaType.getType() + "/" + mediaType.getSubtype());
+            return new ResponseEntity<>(summary, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.info("Import {} refused: {}", id, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // ----- Get the progress of a Client import ----- //
+    @GetMapping(value = "/import/{importId}")
+    public ResponseEntity<ClientImportDto> getClientImport(@PathVariable("importId") String importId) {
+        ClientImportDto progress = clientImportService.getImport(importId);
+        if (progress == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(progress, HttpStatus.OK);
+    }
+
     // ----- Get a client by id ----- //
     @GetMapping(value = "/{id}")
-    public ResponseEntity<Client> getClient(@PathVariable("id") Long id) {
+    public ResponseEntity<Client> getClient(@PathVariable("id") Long id, WebRequest request) {
         log.info("Returning a single client from database.");
         Client client = clientService.getClient(id);
+        if (client != null && request.checkNotModified(clientETag(client))) {
+            return null;
+        }
         return new ResponseEntity<>(client, HttpStatus.OK);
     }
 
-    // ----- Get all Clients ----- //
+    // ----- Get a page of Clients ----- //
     @GetMapping
     @PreAuthorize("hasRole('user')")
-    public ResponseEntity<List<Client>> getAllClients() {
-        log.info("Returning all clients from database.");
-        List<Client> clients = clientService.getAllClients();
-        return new ResponseEntity<>(clients, HttpStatus.OK);
+    public ResponseEntity<List<Map<String, Object>>> getClients(@RequestParam(value = "fields", required = false) List<String> fields,
+                                                                @RequestParam(value = "sort", defaultValue = "id") String sort,
+                                                                @RequestParam(value = "pageToken", required = false) String pageToken,
+                                                                @RequestParam(value = "limit", defaultValue = "0") int limit) {
+        log.info("Returning a page of clients from database.");
+        ClientPageDto page;
+        try {
+            page = clientService.getClients(fields, sort, pageToken, limit);
+        } catch (IllegalArgumentException e) {
+            log.info("Invalid clients page request: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNext() != null) {
+            // the body stays a plain list, the next page is asked with ?pageToken=
+            headers.set(NEXT_PAGE_HEADER, page.getNext());
+        }
+        return new ResponseEntity<>(page.getClients(), headers, HttpStatus.OK);
+    }
+
+    // ----- Search Clients by email or name prefix ----- //
+    @GetMapping(value = "/search")
+    @PreAuthorize("hasRole('user')")
+    public ResponseEntity<List<Client>> searchClients(@RequestParam("q") String query,
+                                                      @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (query.trim().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(clientSearchService.search(query, limit), HttpStatus.OK);
     }
 
     // ----- Update an existing Client ----- //
     @PutMapping
     public ResponseEntity<Client> updateClient(@RequestBody Client client) {
         log.info("Update a client from database.");
-        clientService.updateClient(client);
-        return new ResponseEntity<>(client, HttpStatus.OK);
+        Client updated;
+        try {
+            updated = clientService.updateClient(client);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The client was modified by another request", e);
+        }
+        if (updated == null) {
+            return new ResponseEntity<>(client, HttpStatus.OK);
+        }
+        return ResponseEntity.ok().eTag(clientETag(updated)).body(updated);
+    }
+
+    // ----- Update some fields of a Client ----- //
+    @PatchMapping(value = "/{id}")
+    public ResponseEntity<Void> patchClient(@PathVariable("id") Long id, @RequestBody Map<String, Object> changes,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.info("Patch a client from database.");
+        // only the fields present in the body are updated, the expected version comes from If-Match or the body
+        Map<String, Object> fields = new LinkedHashMap<>(changes);
+        fields.remove("id");
+        Object bodyVersion = fields.remove("version");
+        if (ifMatch == null && bodyVersion == null) {
+            // the update is never blind: without a version it could overwrite a change the caller has not seen
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "If-Match or a version is required to patch a client");
+        }
+        long version;
+        boolean patched;
+        try {
+            if (fields.isEmpty()) {
+                throw new IllegalArgumentException("No field to patch");
+            }
+            version = ifMatch != null ? EntityTag.versionOf(ifMatch, id, "client") : Long.parseLong(bodyVersion.toString());
+            patched = clientService.patchClient(id, version, objectMapper.convertValue(fields, Client.class), fields.keySet());
+        } catch (IllegalArgumentException e) {
+            log.info("Invalid patch of client {}: {}", id, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The client was modified by another request", e);
+        }
+        if (!patched) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        // nothing is read back, the update incremented the expected version
+        return ResponseEntity.noContent().eTag(EntityTag.of(id, version + 1)).build();
     }
 
     // ----- Delete a Client ----- //
@@ -70,10 +215,83 @@ public class ClientController {
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
+    // ----- Delete several Clients ----- //
+    @DeleteMapping
+    public ResponseEntity<Long> deleteClients(@RequestParam("ids") List<Long> ids) {
+        log.info("Delete {} clients from database.", ids.size());
+        return new ResponseEntity<>(clientService.deleteClients(ids), HttpStatus.OK);
+    }
+
+    // ------------------- Retrieve the Sales of several Clients ------------------------
+    @GetMapping(value = "/sales")
+    public ResponseEntity<Map<Long, List<SaleDto>>> getClientsSales(@RequestParam("ids") List<Long> ids) {
+        // one call to the sales service for all the clients, instead of one per client
+        Map<Long, List<SaleDto>> sales = saleClient.getClientsSales(new LinkedHashSet<>(ids));
+        return new ResponseEntity<>(sales, degradedHeaders(sales), HttpStatus.OK);
+    }
+
+    // ------------------- Client summary: client, recent sales and totals --------------
+    @GetMapping(value = "/{id}/summary")
+    public CompletableFuture<ResponseEntity<ClientSummaryDto>> getClientSummary(@PathVariable("id") Long id) {
+        log.info("Returning the summary of a client.");
+        // the request thread is released while the lookups run
+        return clientSummaryService.getClientSummary(id)
+                .thenApply(summary -> summary == null
+                        ? new ResponseEntity<ClientSummaryDto>(HttpStatus.NOT_FOUND)
+                        : new ResponseEntity<>(summary, HttpStatus.OK))
+                .exceptionally(failure -> {
+                    log.warn("Client {} summary failed", id, failure);
+                    return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+                });
+    }
+
     // ------------------- Retrieve Client Sales -----------------------------------------
     @GetMapping(value = "/{id}/sales")
     public ResponseEntity<List<SaleDto>> getClientSales(@PathVariable("id") long id) {
-        List<SaleDto> sales = saleClient.getClientSales(id);
-        return new ResponseEntity<>(sales, HttpStatus.OK);
+        if (!salesProjection.isEnabled()) {
+            List<SaleDto> sales = saleClient.getClientSales(id);
+            return new ResponseEntity<>(sales, degradedHeaders(sales), HttpStatus.OK);
+        }
+        // the recent window, from the local projection when it is caught up, from the sales service otherwise
+        Date watermark = salesProjection.getFreshWatermark();
+        if (watermark != null) {
+            return new ResponseEntity<>(salesProjection.getRecentSales(id), watermarkHeaders(watermark), HttpStatus.OK);
+        }
+        List<SaleDto> sales = saleClient.getClientSalesSince(id, DAY_FORMAT.format(salesProjection.getWindowStart()));
+        return new ResponseEntity<>(sales, degradedHeaders(sales), HttpStatus.OK);
+    }
+
+    // ------------------- Retrieve the Client Sales totals ------------------------------
+    @GetMapping(value = "/{id}/sales/totals")
+    public ResponseEntity<SaleTotalsDto> getClientSalesTotals(@PathVariable("id") long id) {
+        Date watermark = salesProjection.getFreshWatermark();
+        if (watermark != null) {
+            return new ResponseEntity<>(salesProjection.getClientTotals(id), watermarkHeaders(watermark), HttpStatus.OK);
+        }
+        return new ResponseEntity<>(saleClient.getClientTotals(id), HttpStatus.OK);
+    }
+
+    /**
+     * Tell the caller up to when the sales served from the projection are complete.
+     */
+    private static HttpHeaders watermarkHeaders(Date watermark) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(SALES_WATERMARK_HEADER, watermark.toInstant().toString());
+        return headers;
+    }
+
+    /**
+     * Tell the caller that the sales are cached or missing because the sales service did not answer.
+     */
+    private static HttpHeaders degradedHeaders(Object sales) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ResilientSaleClient.isDegraded(sales)) {
+            headers.set(DEGRADED_HEADER, "true");
+        }
+        return headers;
+    }
+
+    private static String clientETag(Client client) {
+        return EntityTag.of(client.getId(), client.getVersion());
     }
 }
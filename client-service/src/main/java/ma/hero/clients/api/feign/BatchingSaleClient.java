@@ -0,0 +1,214 @@
+package ma.hero.clients.api.feign;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SaleClient coalescing the concurrent getClientSales calls.
+ * <p>
+ * The ids requested within window-ms of each other, up to max-batch-size, are sent in one getClientsSales call and
+ * the response is split back to each waiting caller. Batches, closed by the window or filled by a caller, are sent from
+ * the dispatch pool. Its queue holds dispatch-queue-capacity batches: beyond, the callers of the batch get a
+ * RejectedExecutionException instead of piling up. A caller waits at most timeout-ms for its sales.
+ * <p>
+ * Calls go to the {@link ResilientSaleClient}; with batching disabled they are simply forwarded to it.
+ */
+@Component
+@Primary
+public class BatchingSaleClient implements SaleClient, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchingSaleClient.class);
+
+    private final SaleClient delegate;
+
+    private final boolean enabled;
+
+    private final long windowMicros;
+
+    private final int maxBatchSize;
+
+    private final long timeoutMs;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ThreadPoolExecutor dispatcher;
+
+    private final DistributionSummary batchSize;
+
+    private final Counter calls;
+
+    private final Object lock = new Object();
+
+    private Map<Long, CompletableFuture<List<SaleDto>>> pending = new LinkedHashMap<>();
+
+    private ScheduledFuture<?> windowTimer;
+
+    private long window;
+
+    public BatchingSaleClient(@Qualifier(SaleClient.RESILIENT_QUALIFIER) SaleClient delegate, MeterRegistry meterRegistry,
+                              @Value("${sales-client.batching.enabled:true}") boolean enabled,
+                              @Value("${sales-client.batching.window-ms:2}") double windowMs,
+                              @Value("${sales-client.batching.max-batch-size:64}") int maxBatchSize,
+                              @Value("${sales-client.batching.dispatch-threads:8}") int dispatchThreads,
+                              @Value("${sales-client.batching.dispatch-queue-capacity:256}") int dispatchQueueCapacity,
+                              @Value("${sales-client.batching.timeout-ms:5000}") long timeoutMs) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.windowMicros = (long) (windowMs * 1000);
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMs = timeoutMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("sale-client-batch-timer"));
+        this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(dispatchQueueCapacity), daemonThreads("sale-client-batch-dispatch"));
+        this.batchSize = DistributionSummary.builder("sales.client.batch.size")
+                .description("Client ids sent per call to the sales service").register(meterRegistry);
+        this.calls = Counter.builder("sales.client.batch.calls")
+                .description("getClientSales calls before batching").register(meterRegistry);
+    }
+
+    @Override
+    public List<SaleDto> getClientSales(Long clientId) {
+        if (!enabled) {
+            return delegate.getClientSales(clientId);
+        }
+        calls.increment();
+        CompletableFuture<List<SaleDto>> future;
+        Map<Long, CompletableFuture<List<SaleDto>>> full = null;
+        synchronized (lock) {
+            // callers asking for the same client in the same window share the result
+            future = pending.computeIfAbsent(clientId, id -> new CompletableFuture<>());
+            if (pending.size() >= maxBatchSize) {
+                full = closeWindow();
+            } else if (windowTimer == null) {
+                long current = window;
+                windowTimer = scheduler.schedule(() -> onWindowElapsed(current), windowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("No sales of client " + clientId + " received within " + timeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the sales of client " + clientId, e);
+        }
+    }
+
+    @Override
+    public Map<Long, List<SaleDto>> getClientsSales(Collection<Long> clientIds) {
+        return delegate.getClientsSales(clientIds);
+    }
+
+    @Override
+    public List<SaleDto> getClientSalesSince(Long clientId, String from) {
+        return delegate.getClientSalesSince(clientId, from);
+    }
+
+    @Override
+    public SaleTotalsDto getClientTotals(Long clientId) {
+        return delegate.getClientTotals(clientId);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    private void onWindowElapsed(long elapsed) {
+        Map<Long, CompletableFuture<List<SaleDto>>> batch;
+        synchronized (lock) {
+            // the window may already have been closed by a caller filling it
+            if (elapsed != window || pending.isEmpty()) {
+                return;
+            }
+            batch = closeWindow();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<Long, CompletableFuture<List<SaleDto>>> batch) {
+        try {
+            dispatcher.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            log.debug("Batch of {} clients rejected, the dispatch queue is full", batch.size());
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Take the pending ids, the caller holds the lock.
+     */
+    private Map<Long, CompletableFuture<List<SaleDto>>> closeWindow() {
+        Map<Long, CompletableFuture<List<SaleDto>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        window++;
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<Long, CompletableFuture<List<SaleDto>>> batch) {
+        batchSize.record(batch.size());
+        try {
+            if (batch.size() == 1) {
+                Map.Entry<Long, CompletableFuture<List<SaleDto>>> single = batch.entrySet().iterator().next();
+                single.getValue().complete(delegate.getClientSales(single.getKey()));
+                return;
+            }
+            Map<Long, List<SaleDto>> sales = delegate.getClientsSales(new ArrayList<>(batch.keySet()));
+            batch.forEach((clientId, future) -> future.complete(sales.getOrDefault(clientId, Collections.emptyList())));
+        } catch (RuntimeException e) {
+            log.debug("Batched call for {} clients failed", batch.size(), e);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package ma.hero.clients.api.feign;
+
+import ma.hero.clients.dto.ClientEventDto;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.List;
+
+/**
+ * Bulk endpoint of the sales service receiving the client changes relayed from the outbox.
+ */
+@FeignClient(name = "sales-service", contextId = "clientEventClient")
+public interface ClientEventClient {
+
+    /**
+     * @return the number of events applied, the already applied ones being skipped.
+     */
+    @PostMapping("/api/sale/client-events")
+    int postClientEvents(@RequestBody List<ClientEventDto> events);
+}
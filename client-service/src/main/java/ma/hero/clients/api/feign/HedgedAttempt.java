@@ -0,0 +1,90 @@
+package ma.hero.clients.api.feign;
+
+import java.util.function.Supplier;
+
+/**
+ * One of the two attempts of a hedged sales service call, known to the thread running it so that the load balancing
+ * rule can keep the hedge off the instance of the first attempt, and so that the losing attempt can be aborted.
+ */
+public final class HedgedAttempt {
+
+    private static final ThreadLocal<HedgedAttempt> CURRENT = new ThreadLocal<>();
+
+    private final String excludedHostPort;
+
+    private volatile String hostPort;
+
+    private volatile Runnable abort;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param excludedHostPort the instance to avoid, null for none.
+     */
+    HedgedAttempt(String excludedHostPort) {
+        this.excludedHostPort = excludedHostPort;
+    }
+
+    /**
+     * Run the request as this attempt on the current thread.
+     */
+    <T> T run(Supplier<T> request) {
+        CURRENT.set(this);
+        try {
+            return request.get();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Abort the request of this attempt, now if it is running, or as soon as it is sent otherwise.
+     */
+    void cancel() {
+        cancelled = true;
+        Runnable abortRequest = abort;
+        if (abortRequest != null) {
+            abortRequest.run();
+        }
+    }
+
+    /**
+     * @return the host:port the request was last sent to, null if not sent yet.
+     */
+    String getHostPort() {
+        return hostPort;
+    }
+
+    /**
+     * @return the host:port the attempt running on the current thread must avoid, null for none.
+     */
+    public static String excludedHostPort() {
+        HedgedAttempt attempt = CURRENT.get();
+        return attempt == null ? null : attempt.excludedHostPort;
+    }
+
+    /**
+     * Note the instance the request of the current attempt is sent to.
+     */
+    public static void sentTo(String hostPort) {
+        HedgedAttempt attempt = CURRENT.get();
+        if (attempt != null) {
+            attempt.hostPort = hostPort;
+        }
+    }
+
+    /**
+     * Register how to abort the request of the current attempt, aborting it at once if the attempt is already cancelled.
+     */
+    public static void onAbort(Runnable abort) {
+        HedgedAttempt attempt = CURRENT.get();
+        if (attempt == null) {
+            return;
+        }
+        attempt.abort = abort;
+        // cancelled is written before abort is read by cancel(): one of both sides always sees the other
+        if (attempt.cancelled) {
+            abort.run();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ma.hero.clients.api.feign;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Peak-EWMA latency and outstanding requests of each instance called through Feign, keyed by host:port.
+ * <p>
+ * A slower answer replaces the average at once, faster ones pull it down with a weight decaying over decay-ms; an
+ * idle instance therefore looks faster and faster until it is tried again. The load of an instance is its latency
+ * times its outstanding requests plus one.
+ */
+@Component
+public class InstanceLatencyTracker {
+
+    /**
+     * Load of an instance never measured but already busy, above any measured one.
+     */
+    private static final double UNMEASURED_BUSY_LOAD = TimeUnit.MINUTES.toNanos(1);
+
+    private final ConcurrentMap<String, Instance> instances = new ConcurrentHashMap<>();
+
+    private final double decayNanos;
+
+    public InstanceLatencyTracker(@Value("${sales-client.load-balancer.decay-ms:10000}") long decayMs) {
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMs);
+    }
+
+    /**
+     * Note a request sent to an instance, to be followed by {@link #end(String, long)}.
+     * @return the start time to give back to end.
+     */
+    public long start(String hostPort) {
+        instance(hostPort).outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Note the end, answered or failed, of a request started with {@link #start(String)}.
+     */
+    public void end(String hostPort, long startNanos) {
+        long now = System.nanoTime();
+        Instance instance = instance(hostPort);
+        instance.outstanding.decrementAndGet();
+        instance.observe(now - startNanos, now);
+    }
+
+    /**
+     * @return the load of the instance, lower is better.
+     */
+    public double load(String hostPort) {
+        Instance instance = instances.get(hostPort);
+        if (instance == null) {
+            return 0;
+        }
+        int outstanding = instance.outstanding.get();
+        double latency = instance.latency(System.nanoTime());
+        if (latency == 0) {
+            return outstanding == 0 ? 0 : UNMEASURED_BUSY_LOAD + outstanding;
+        }
+        return latency * (outstanding + 1);
+    }
+
+    public int outstanding(String hostPort) {
+        Instance instance = instances.get(hostPort);
+        return instance == null ? 0 : instance.outstanding.get();
+    }
+
+    private Instance instance(String hostPort) {
+        return instances.computeIfAbsent(hostPort, key -> new Instance());
+    }
+
+    private final class Instance {
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private double latency;
+        private long stamp = System.nanoTime();
+
+        private synchronized void observe(long rttNanos, long now) {
+            double weight = Math.exp(-Math.max(now - stamp, 0) / decayNanos);
+            stamp = now;
+            // peak sensitive: a slower answer is taken as is
+            latency = rttNanos > latency ? rttNanos : latency * weight + rttNanos * (1 - weight);
+        }
+
+        private synchronized double latency(long now) {
+            return latency * Math.exp(-Math.max(now - stamp, 0) / decayNanos);
+        }
+    }
+}
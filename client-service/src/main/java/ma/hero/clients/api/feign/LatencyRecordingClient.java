@@ -0,0 +1,37 @@
+package ma.hero.clients.api.feign;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Feign Client timing each request to the instance chosen by the load balancer for the {@link InstanceLatencyTracker},
+ * and noting the instance for the {@link HedgedAttempt} running the request.
+ */
+public class LatencyRecordingClient implements Client {
+
+    private final Client delegate;
+
+    private final InstanceLatencyTracker tracker;
+
+    public LatencyRecordingClient(Client delegate, InstanceLatencyTracker tracker) {
+        this.delegate = delegate;
+        this.tracker = tracker;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        URI uri = URI.create(request.url());
+        String hostPort = uri.getHost() + ":" + uri.getPort();
+        HedgedAttempt.sentTo(hostPort);
+        long start = tracker.start(hostPort);
+        try {
+            return delegate.execute(request, options);
+        } finally {
+            tracker.end(hostPort, start);
+        }
+    }
+}
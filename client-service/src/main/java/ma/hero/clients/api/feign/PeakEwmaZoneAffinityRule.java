@@ -0,0 +1,134 @@
+package ma.hero.clients.api.feign;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.niws.loadbalancer.DiscoveryEnabledServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ribbon rule sending each request to the least loaded instance, as measured by the {@link InstanceLatencyTracker}.
+ * <p>
+ * Two random instances are compared rather than all of them, so that concurrent choices do not all rush to the same
+ * instance. The instances of our zone (the "zone" of their Eureka metadata) are preferred: another zone is used
+ * when ours has no instance up, or when its best instance is cross-zone-factor times more loaded. The hedge of a
+ * {@link HedgedAttempt} is kept off the instance of the first attempt, unless it is the only one available.
+ */
+public class PeakEwmaZoneAffinityRule extends AbstractLoadBalancerRule {
+
+    private final InstanceLatencyTracker tracker;
+
+    private final String zone;
+
+    private final double crossZoneFactor;
+
+    /**
+     * @param zone our zone, null or empty for no affinity.
+     */
+    public PeakEwmaZoneAffinityRule(InstanceLatencyTracker tracker, String zone, double crossZoneFactor) {
+        this.tracker = tracker;
+        this.zone = zone == null || zone.isEmpty() ? null : zone;
+        this.crossZoneFactor = crossZoneFactor;
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        // configured by the constructor
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer loadBalancer = getLoadBalancer();
+        if (loadBalancer == null) {
+            return null;
+        }
+        List<Server> local = new ArrayList<>();
+        List<Server> remote = new ArrayList<>();
+        for (Server server : available(loadBalancer)) {
+            if (zone != null && zone.equalsIgnoreCase(zoneOf(server))) {
+                local.add(server);
+            } else {
+                remote.add(server);
+            }
+        }
+        Server bestLocal = leastLoaded(local);
+        Server bestRemote = leastLoaded(remote);
+        if (bestLocal == null || bestRemote == null) {
+            return bestLocal == null ? bestRemote : bestLocal;
+        }
+        return load(bestRemote) * crossZoneFactor < load(bestLocal) ? bestRemote : bestLocal;
+    }
+
+    /**
+     * The instances up whose Ribbon circuit breaker is not tripped, or all the instances up if none.
+     */
+    private List<Server> available(ILoadBalancer loadBalancer) {
+        List<Server> reachable = loadBalancer.getReachableServers();
+        List<Server> up = new ArrayList<>(reachable.size());
+        for (Server server : reachable) {
+            // marked down since the last ping
+            if (server.isAlive() && server.isReadyToServe()) {
+                up.add(server);
+            }
+        }
+        LoadBalancerStats stats = loadBalancer instanceof AbstractLoadBalancer
+                ? ((AbstractLoadBalancer) loadBalancer).getLoadBalancerStats() : null;
+        if (stats == null) {
+            return withoutExcluded(up);
+        }
+        List<Server> healthy = new ArrayList<>(up.size());
+        for (Server server : up) {
+            if (!stats.getSingleServerStat(server).isCircuitBreakerTripped()) {
+                healthy.add(server);
+            }
+        }
+        return withoutExcluded(healthy.isEmpty() ? up : healthy);
+    }
+
+    private static List<Server> withoutExcluded(List<Server> servers) {
+        String excluded = HedgedAttempt.excludedHostPort();
+        if (excluded == null || servers.size() <= 1) {
+            return servers;
+        }
+        List<Server> others = new ArrayList<>(servers.size());
+        for (Server server : servers) {
+            if (!excluded.equals(server.getHostPort())) {
+                others.add(server);
+            }
+        }
+        return others.isEmpty() ? servers : others;
+    }
+
+    private Server leastLoaded(List<Server> servers) {
+        int size = servers.size();
+        if (size <= 1) {
+            return size == 0 ? null : servers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Server a = servers.get(first);
+        Server b = servers.get(second);
+        return load(a) <= load(b) ? a : b;
+    }
+
+    private double load(Server server) {
+        return tracker.load(server.getHostPort());
+    }
+
+    private static String zoneOf(Server server) {
+        if (server instanceof DiscoveryEnabledServer) {
+            return ((DiscoveryEnabledServer) server).getInstanceInfo().getMetadata().get("zone");
+        }
+        return server.getZone();
+    }
+}
@@ -0,0 +1,433 @@
+package ma.hero.clients.api.feign;
+
+import feign.FeignException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * SaleClient protecting client-service from a slow or failing sales service.
+ * <p>
+ * Every call goes through a circuit breaker and a semaphore bulkhead capping the concurrent outbound calls. When the
+ * circuit is open, the bulkhead is full or the call fails, the last sales seen for the client are returned instead,
+ * or an empty list, marked as degraded (see {@link #isDegraded(Object)}). Client errors (4xx) are not absorbed.
+ * Lookups of more client ids than the sales service accepts per request are split into several requests.
+ * <p>
+ * With hedging, a call still running after the p95 of the recent calls is raced against a second one, which the load
+ * balancer sends to another sales service instance; the first answer wins and the other call is aborted. Both calls
+ * run on a pool sized like the bulkhead.
+ */
+@Component(SaleClient.RESILIENT_QUALIFIER)
+public class ResilientSaleClient implements SaleClient, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ResilientSaleClient.class);
+
+    private static final String NAME = "sales-service";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    /**
+     * Calls needed before the hedge delay follows their p95.
+     */
+    private static final long HEDGE_MIN_SAMPLES = 20;
+
+    private final SaleClient delegate;
+
+    private final boolean enabled;
+
+    private final int maxIdsPerCall;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Bulkhead bulkhead;
+
+    private final ThreadPoolExecutor hedgeExecutor;
+
+    private final long minHedgeDelayNanos;
+
+    private final Timer callTimer;
+
+    private final Counter hedges;
+
+    private final Counter hedgeWins;
+
+    private final Counter fallbacks;
+
+    private final Map<Long, List<SaleDto>> lastSales;
+
+    private final Map<Long, SaleTotalsDto> lastTotals;
+
+    private volatile long hedgeDelayNanos;
+
+    private volatile long hedgeDelayRefreshAt;
+
+    @Autowired
+    public ResilientSaleClient(@Qualifier(SaleClient.FEIGN_QUALIFIER) SaleClient delegate, MeterRegistry meterRegistry,
+                               @Value("${sales-client.resilience.enabled:true}") boolean enabled,
+                               @Value("${sales-client.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+                               @Value("${sales-client.resilience.slow-call-duration-ms:1000}") long slowCallDurationMs,
+                               @Value("${sales-client.resilience.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+                               @Value("${sales-client.resilience.sliding-window-size:50}") int slidingWindowSize,
+                               @Value("${sales-client.resilience.minimum-calls:20}") int minimumCalls,
+                               @Value("${sales-client.resilience.open-state-ms:10000}") long openStateMs,
+                               @Value("${sales-client.resilience.max-concurrent-calls:20}") int maxConcurrentCalls,
+                               @Value("${sales-client.resilience.hedging.enabled:false}") boolean hedging,
+                               @Value("${sales-client.resilience.hedging.initial-delay-ms:200}") long initialHedgeDelayMs,
+                               @Value("${sales-client.resilience.hedging.min-delay-ms:20}") long minHedgeDelayMs,
+                               @Value("${sales-client.resilience.cache-size:1000}") int cacheSize,
+                               @Value("${sales-client.max-ids-per-call:1000}") int maxIdsPerCall) {
+        this(delegate, meterRegistry, enabled,
+                CircuitBreakerConfig.custom()
+                        .failureRateThreshold(failureRateThreshold)
+                        .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationMs))
+                        .slowCallRateThreshold(slowCallRateThreshold)
+                        .slidingWindowSize(slidingWindowSize)
+                        .minimumNumberOfCalls(minimumCalls)
+                        .waitDurationInOpenState(Duration.ofMillis(openStateMs))
+                        .build(),
+                BulkheadConfig.custom().maxConcurrentCalls(maxConcurrentCalls).maxWaitDuration(Duration.ZERO).build(),
+                hedging, initialHedgeDelayMs, minHedgeDelayMs, cacheSize, maxIdsPerCall);
+    }
+
+    ResilientSaleClient(SaleClient delegate, MeterRegistry meterRegistry, boolean enabled, CircuitBreakerConfig circuitBreakerConfig,
+                        BulkheadConfig bulkheadConfig, boolean hedging, long initialHedgeDelayMs, long minHedgeDelayMs, int cacheSize,
+                        int maxIdsPerCall) {
+        this.delegate = delegate;
+        this.enabled = enabled;
+        this.maxIdsPerCall = maxIdsPerCall;
+        // rejections and client errors say nothing about the health of the sales service
+        CircuitBreakerConfig config = CircuitBreakerConfig.from(circuitBreakerConfig)
+                .recordException(failure -> !isClientError(failure))
+                .ignoreExceptions(BulkheadFullException.class, RejectedExecutionException.class)
+                .build();
+        CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.of(config);
+        BulkheadRegistry bulkheads = BulkheadRegistry.of(bulkheadConfig);
+        this.circuitBreaker = circuitBreakers.circuitBreaker(NAME);
+        this.bulkhead = bulkheads.bulkhead(NAME);
+        this.hedgeExecutor = hedging ? new ThreadPoolExecutor(0, bulkheadConfig.getMaxConcurrentCalls(), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreads("sale-client-hedge")) : null;
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMs);
+        this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialHedgeDelayMs);
+        this.hedgeDelayRefreshAt = System.nanoTime();
+        this.lastSales = lruMap(cacheSize);
+        this.lastTotals = lruMap(cacheSize);
+
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+        this.callTimer = Timer.builder("sales.client.call")
+                .description("Calls to the sales service").publishPercentiles(0.95).register(meterRegistry);
+        this.hedges = Counter.builder("sales.client.hedge.requests")
+                .description("Hedged calls sent to the sales service").register(meterRegistry);
+        this.hedgeWins = Counter.builder("sales.client.hedge.wins")
+                .description("Hedged calls answering before the original one").register(meterRegistry);
+        this.fallbacks = Counter.builder("sales.client.fallback")
+                .description("Calls answered with cached or empty sales").register(meterRegistry);
+    }
+
+    /**
+     * @return true when the result is a fallback and not a fresh answer of the sales service.
+     */
+    public static boolean isDegraded(Object result) {
+        return result instanceof Degraded;
+    }
+
+    @Override
+    public List<SaleDto> getClientSales(Long clientId) {
+        return call(() -> {
+            List<SaleDto> sales = delegate.getClientSales(clientId);
+            remember(lastSales, clientId, sales);
+            return sales;
+        }, () -> cachedSales(clientId, null));
+    }
+
+    @Override
+    public Map<Long, List<SaleDto>> getClientsSales(Collection<Long> clientIds) {
+        return call(() -> {
+            Map<Long, List<SaleDto>> sales = fetchClientsSales(clientIds);
+            sales.forEach((clientId, clientSales) -> remember(lastSales, clientId, clientSales));
+            return sales;
+        }, () -> {
+            DegradedSalesMap sales = new DegradedSalesMap();
+            clientIds.forEach(clientId -> sales.put(clientId, cachedSales(clientId, null)));
+            return sales;
+        });
+    }
+
+    private Map<Long, List<SaleDto>> fetchClientsSales(Collection<Long> clientIds) {
+        if (clientIds.size() <= maxIdsPerCall) {
+            return delegate.getClientsSales(clientIds);
+        }
+        // the sales service answers 400 beyond its sales.bulk.max-clients
+        List<Long> ids = new ArrayList<>(clientIds);
+        Map<Long, List<SaleDto>> sales = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += maxIdsPerCall) {
+            sales.putAll(delegate.getClientsSales(ids.subList(from, Math.min(ids.size(), from + maxIdsPerCall))));
+        }
+        return sales;
+    }
+
+    @Override
+    public List<SaleDto> getClientSalesSince(Long clientId, String from) {
+        return call(() -> delegate.getClientSalesSince(clientId, from), () -> cachedSales(clientId, from));
+    }
+
+    @Override
+    public SaleTotalsDto getClientTotals(Long clientId) {
+        return call(() -> {
+            SaleTotalsDto totals = delegate.getClientTotals(clientId);
+            remember(lastTotals, clientId, totals);
+            return totals;
+        }, () -> {
+            // no made-up zeros: without cached totals the failure goes to the caller
+            SaleTotalsDto totals;
+            synchronized (lastTotals) {
+                totals = lastTotals.get(clientId);
+            }
+            return totals == null ? null : new DegradedSaleTotals(totals);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private <T> T call(Supplier<T> request, Supplier<T> fallback) {
+        if (!enabled) {
+            return request.get();
+        }
+        try {
+            return circuitBreaker.executeSupplier(() -> hedgeExecutor == null ? attempt(request) : hedged(request));
+        } catch (RuntimeException e) {
+            if (isClientError(e)) {
+                throw e;
+            }
+            T result = fallback.get();
+            if (result == null) {
+                throw e;
+            }
+            fallbacks.increment();
+            if (e instanceof CallNotPermittedException || e instanceof BulkheadFullException || e instanceof RejectedExecutionException) {
+                log.debug("Sales service call not sent: {}", e.toString());
+            } else {
+                log.warn("Sales service call failed, answering degraded: {}", e.toString());
+            }
+            return result;
+        }
+    }
+
+    private <T> T attempt(Supplier<T> request) {
+        return bulkhead.executeSupplier(() -> callTimer.record(request));
+    }
+
+    private <T> T hedged(Supplier<T> request) {
+        HedgedAttempt first = new HedgedAttempt(null);
+        CompletableFuture<T> primary = submit(request, first);
+        try {
+            return primary.get(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // slower than the p95: race a second call, which the load balancer sends to another instance
+            hedges.increment();
+            HedgedAttempt second = new HedgedAttempt(first.getHostPort());
+            CompletableFuture<T> hedge = submit(request, second);
+            CompletableFuture<T> winner = new CompletableFuture<>();
+            AtomicBoolean answered = new AtomicBoolean();
+            AtomicInteger failed = new AtomicInteger();
+            primary.whenComplete((value, failure) -> settle(winner, value, failure, answered, failed, false, second));
+            hedge.whenComplete((value, failure) -> settle(winner, value, failure, answered, failed, true, first));
+            return await(winner);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the sales service", e);
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> request, HedgedAttempt hedgedAttempt) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hedgedAttempt.run(() -> attempt(request)), hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    private <T> void settle(CompletableFuture<T> winner, T value, Throwable failure, AtomicBoolean answered, AtomicInteger failed,
+                            boolean hedge, HedgedAttempt other) {
+        if (failure == null) {
+            if (answered.compareAndSet(false, true)) {
+                if (hedge) {
+                    hedgeWins.increment();
+                }
+                winner.complete(value);
+                // frees its connection and bulkhead permit instead of waiting for an answer nobody reads
+                other.cancel();
+            }
+        } else if (failed.incrementAndGet() == 2) {
+            winner.completeExceptionally(failure);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the sales service", e);
+        }
+    }
+
+    /**
+     * The p95 of the recent calls, not below min-delay-ms, refreshed every second.
+     */
+    private long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - hedgeDelayRefreshAt < 0 || callTimer.count() < HEDGE_MIN_SAMPLES) {
+            return hedgeDelayNanos;
+        }
+        hedgeDelayRefreshAt = now + TimeUnit.SECONDS.toNanos(1);
+        for (ValueAtPercentile percentile : callTimer.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == 0.95 && percentile.value() > 0) {
+                hedgeDelayNanos = Math.max(minHedgeDelayNanos, (long) percentile.value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return hedgeDelayNanos;
+    }
+
+    private List<SaleDto> cachedSales(Long clientId, String from) {
+        List<SaleDto> sales;
+        synchronized (lastSales) {
+            sales = lastSales.get(clientId);
+        }
+        DegradedSaleList degraded = new DegradedSaleList();
+        if (sales == null) {
+            return degraded;
+        }
+        if (from == null) {
+            degraded.addAll(sales);
+            return degraded;
+        }
+        Date since = Date.from(LocalDate.parse(from, DAY_FORMAT).atStartOfDay(ZoneOffset.UTC).toInstant());
+        degraded.addAll(sales.stream()
+                .filter(sale -> sale.getOperationDate() != null && !sale.getOperationDate().before(since))
+                .collect(Collectors.toList()));
+        return degraded;
+    }
+
+    private static <V> void remember(Map<Long, V> cache, Long clientId, V value) {
+        if (value == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(clientId, value);
+        }
+    }
+
+    private static boolean isClientError(Throwable failure) {
+        return failure instanceof FeignException && ((FeignException) failure).status() >= 400 && ((FeignException) failure).status() < 500;
+    }
+
+    private static RuntimeException unwrap(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        return new IllegalStateException(failure);
+    }
+
+    private static <V> Map<Long, V> lruMap(int maxSize) {
+        return new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Marker of the fallback results.
+     */
+    private interface Degraded {
+    }
+
+    private static final class DegradedSaleList extends ArrayList<SaleDto> implements Degraded {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class DegradedSalesMap extends LinkedHashMap<Long, List<SaleDto>> implements Degraded {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class DegradedSaleTotals extends SaleTotalsDto implements Degraded {
+
+        private static final long serialVersionUID = 1L;
+
+        private DegradedSaleTotals(SaleTotalsDto totals) {
+            setClientId(totals.getClientId());
+            setFrom(totals.getFrom());
+            setTo(totals.getTo());
+            setCount(totals.getCount());
+            setQuantity(totals.getQuantity());
+            setAmount(totals.getAmount());
+        }
+    }
+}
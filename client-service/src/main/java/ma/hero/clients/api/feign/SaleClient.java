@@ -1,16 +1,44 @@
 package ma.hero.clients.api.feign;
 
+import ma.hero.clients.config.SaleClientFeignConfiguration;
 import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 //@FeignClient(name = "sales-service", url = "http://localhost:9001")
-@FeignClient(name = "sales-service")
+@FeignClient(name = "sales-service", qualifier = SaleClient.FEIGN_QUALIFIER, primary = false,
+        configuration = SaleClientFeignConfiguration.class)
 public interface SaleClient {
 
+    /**
+     * Qualifier of the Feign implementation, the primary SaleClient may be a decorator of it.
+     */
+    String FEIGN_QUALIFIER = "salesServiceFeignClient";
+
+    /**
+     * Name of the circuit breaker and bulkhead decorator of the Feign implementation.
+     */
+    String RESILIENT_QUALIFIER = "resilientSaleClient";
+
     @GetMapping("/api/sale/client/{id}")
     List<SaleDto> getClientSales(@PathVariable("id") Long clientId);
+
+    @GetMapping("/api/sale/clients")
+    Map<Long, List<SaleDto>> getClientsSales(@RequestParam("ids") Collection<Long> clientIds);
+
+    /**
+     * @param from the first day, dd-MM-yyyy, inclusive.
+     */
+    @GetMapping("/api/sale/client/{id}/range")
+    List<SaleDto> getClientSalesSince(@PathVariable("id") Long clientId, @RequestParam("from") String from);
+
+    @GetMapping("/api/sale/client/{id}/totals")
+    SaleTotalsDto getClientTotals(@PathVariable("id") Long clientId);
 }
@@ -0,0 +1,22 @@
+package ma.hero.clients.api.feign;
+
+import ma.hero.clients.config.SaleClientFeignConfiguration;
+import ma.hero.clients.dto.SaleChangePageDto;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Sale change log of the sales service, read by the local sales projection.
+ */
+@FeignClient(name = "sales-service", contextId = "saleFeedClient", configuration = SaleClientFeignConfiguration.class)
+public interface SaleFeedClient {
+
+    /**
+     * @param since the next token of the previous page, null to read the log from the beginning.
+     * @return the changes after the token, in commit order, at most limit of them.
+     * @throws feign.FeignException.Gone if the log was compacted past the token.
+     */
+    @GetMapping("/api/sale/changes")
+    SaleChangePageDto getChanges(@RequestParam(value = "since", required = false) String since, @RequestParam("limit") int limit);
+}
@@ -0,0 +1,74 @@
+package ma.hero.clients.config;
+
+import feign.Client;
+import feign.httpclient.ApacheHttpClient;
+import ma.hero.clients.api.feign.HedgedAttempt;
+import ma.hero.clients.api.feign.InstanceLatencyTracker;
+import ma.hero.clients.api.feign.LatencyRecordingClient;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.cloud.netflix.ribbon.RibbonClient;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.cloud.openfeign.ribbon.CachingSpringLoadBalancerFactory;
+import org.springframework.cloud.openfeign.ribbon.LoadBalancerFeignClient;
+import org.springframework.cloud.openfeign.support.FeignHttpClientProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feign HTTP client and load balancing of the sales service calls.
+ */
+@Configuration
+@RibbonClient(name = "sales-service", configuration = SalesServiceRibbonConfiguration.class)
+public class FeignClientConfiguration {
+
+    private static final long IDLE_CONNECTION_SECONDS = 30;
+
+    /**
+     * The Apache HTTP client of the Feign calls: pooled keep-alive connections sized by the feign.httpclient.*
+     * properties, Accept-Encoding: gzip and transparent inflating of the compressed responses. The requests of a
+     * {@link HedgedAttempt} can be aborted, including while they wait for a pooled connection.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient feignHttpClient(FeignHttpClientProperties properties) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(properties.getTimeToLive(), properties.getTimeToLiveUnit());
+        connectionManager.setMaxTotal(properties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectionTimeout())
+                .setRedirectsEnabled(properties.isFollowRedirects())
+                .build();
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                .disableCookieManagement()
+                .useSystemProperties()
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> {
+                    // run before the connection is leased, on the thread of the attempt
+                    if (request instanceof HttpRequestWrapper && ((HttpRequestWrapper) request).getOriginal() instanceof HttpUriRequest) {
+                        HedgedAttempt.onAbort(((HttpUriRequest) ((HttpRequestWrapper) request).getOriginal())::abort);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * The load balanced Feign client, timing the calls to each instance for the load balancing rule.
+     */
+    @Bean
+    public Client feignClient(CachingSpringLoadBalancerFactory cachingFactory, SpringClientFactory clientFactory,
+                              CloseableHttpClient httpClient, InstanceLatencyTracker tracker) {
+        return new LoadBalancerFeignClient(new LatencyRecordingClient(new ApacheHttpClient(httpClient), tracker),
+                cachingFactory, clientFactory);
+    }
+}
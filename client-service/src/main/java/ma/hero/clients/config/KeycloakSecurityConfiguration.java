@@ -1,5 +1,6 @@
 package ma.hero.clients.config;
 
+import ma.hero.clients.security.LocalJwtAuthenticationFilter;
 import org.keycloak.adapters.KeycloakConfigResolver;
 import org.keycloak.adapters.springboot.KeycloakBaseSpringBootConfiguration;
 import org.keycloak.adapters.springboot.KeycloakSpringBootConfigResolver;
@@ -14,13 +15,22 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.mapping.SimpleAuthorityMapper;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
 import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @KeycloakConfiguration
 @EnableGlobalMethodSecurity(prePostEnabled = true, proxyTargetClass = true)
 public class KeycloakSecurityConfiguration extends KeycloakWebSecurityConfigurerAdapter {
+
+    @Autowired(required = false)
+    private LocalJwtAuthenticationFilter localJwtAuthenticationFilter;
+
     @Configuration
     static class CustomKeycloakBaseSpringBootConfiguration extends KeycloakBaseSpringBootConfiguration {
     }
@@ -35,6 +45,22 @@ public class KeycloakSecurityConfiguration extends KeycloakWebSecurityConfigurer
         return new NullAuthenticatedSessionStrategy();
     }
 
+    /**
+     * The Keycloak filter, skipping the requests already authenticated by the local JWT filter.
+     */
+    @Bean
+    @Override
+    protected KeycloakAuthenticationProcessingFilter keycloakAuthenticationProcessingFilter() throws Exception {
+        RequestMatcher notAuthenticated = request -> {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            return authentication == null || !authentication.isAuthenticated();
+        };
+        KeycloakAuthenticationProcessingFilter filter = new KeycloakAuthenticationProcessingFilter(authenticationManagerBean(),
+                new AndRequestMatcher(KeycloakAuthenticationProcessingFilter.DEFAULT_REQUEST_MATCHER, notAuthenticated));
+        filter.setSessionAuthenticationStrategy(sessionAuthenticationStrategy());
+        return filter;
+    }
+
     /**
      * Prevent double bean declaration
      */
@@ -76,6 +102,12 @@ public class KeycloakSecurityConfiguration extends KeycloakWebSecurityConfigurer
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         super.configure(http);
+        // bearer tokens only, nothing kept in the http session
+        http.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+        if (localJwtAuthenticationFilter != null) {
+            // tokens verified locally with the cached realm keys, before the Keycloak filter
+            http.addFilterBefore(localJwtAuthenticationFilter, KeycloakAuthenticationProcessingFilter.class);
+        }
         // add cors options
         http.cors().and().csrf().disable();
         http.authorizeRequests().antMatchers("/api/**").authenticated();
@@ -0,0 +1,68 @@
+package ma.hero.clients.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.clients.security.JwksKeyCache;
+import ma.hero.clients.security.LocalJwtAuthenticationFilter;
+import ma.hero.clients.security.LocalJwtAuthenticator;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * Local verification of the Keycloak access tokens, see {@link LocalJwtAuthenticator}.
+ * local-jwt.enabled=false leaves the verification to the Keycloak adapter only.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "local-jwt", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LocalJwtConfiguration {
+
+    @Bean
+    public JwksKeyCache jwksKeyCache(RestTemplateBuilder restTemplateBuilder,
+                                     @Value("${keycloak.auth-server-url}") String authServerUrl,
+                                     @Value("${keycloak.realm}") String realm,
+                                     @Value("${local-jwt.jwks-refresh-ms:300000}") long refreshMs,
+                                     @Value("${local-jwt.jwks-min-refresh-interval-ms:10000}") long minRefreshIntervalMs,
+                                     @Value("${local-jwt.jwks-wait-ms:1000}") long waitMs) {
+        RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofSeconds(2))
+                .setReadTimeout(Duration.ofSeconds(5))
+                .build();
+        String jwksUrl = realmUrl(authServerUrl, realm) + "/protocol/openid-connect/certs";
+        return new JwksKeyCache(() -> restTemplate.getForObject(jwksUrl, JSONWebKeySet.class), refreshMs, minRefreshIntervalMs, waitMs);
+    }
+
+    @Bean
+    public LocalJwtAuthenticator localJwtAuthenticator(JwksKeyCache jwksKeyCache, MeterRegistry meterRegistry,
+                                                       @Value("${keycloak.auth-server-url}") String authServerUrl,
+                                                       @Value("${keycloak.realm}") String realm,
+                                                       @Value("${keycloak.principal-attribute:sub}") String principalAttribute,
+                                                       @Value("${local-jwt.cache-size:10000}") long cacheSize) {
+        return new LocalJwtAuthenticator(jwksKeyCache, realmUrl(authServerUrl, realm), principalAttribute, cacheSize, meterRegistry);
+    }
+
+    @Bean
+    public LocalJwtAuthenticationFilter localJwtAuthenticationFilter(LocalJwtAuthenticator localJwtAuthenticator) {
+        return new LocalJwtAuthenticationFilter(localJwtAuthenticator);
+    }
+
+    /**
+     * The filter runs in the security chain only, not as a servlet filter as well.
+     */
+    @Bean
+    public FilterRegistrationBean<LocalJwtAuthenticationFilter> localJwtAuthenticationFilterRegistrationBean(LocalJwtAuthenticationFilter filter) {
+        FilterRegistrationBean<LocalJwtAuthenticationFilter> registrationBean = new FilterRegistrationBean<>(filter);
+        registrationBean.setEnabled(false);
+        return registrationBean;
+    }
+
+    private static String realmUrl(String authServerUrl, String realm) {
+        return authServerUrl.replaceAll("/+$", "") + "/realms/" + realm;
+    }
+}
@@ -0,0 +1,53 @@
+package ma.hero.clients.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import feign.RequestInterceptor;
+import feign.codec.Decoder;
+import feign.optionals.OptionalDecoder;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feign configuration of the SaleClient, registered in its own context by the @FeignClient annotation.
+ * <p>
+ * The sales service is asked for Smile, the binary JSON of Jackson, with JSON as second choice. Not a
+ * {@code @Configuration}: the component scan would otherwise apply it to every Feign client and make Smile a
+ * response format of client-service itself.
+ */
+public class SaleClientFeignConfiguration {
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * The default SaleClient decoder with Smile in front of the application converters.
+     */
+    @Bean
+    public Decoder feignDecoder(ObjectFactory<HttpMessageConverters> messageConverters, Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        MappingJackson2SmileHttpMessageConverter smile =
+                new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build());
+        ObjectFactory<HttpMessageConverters> converters = () -> {
+            List<HttpMessageConverter<?>> withSmile = new ArrayList<>();
+            withSmile.add(smile);
+            withSmile.addAll(messageConverters.getObject().getConverters());
+            return new HttpMessageConverters(false, withSmile);
+        };
+        return new OptionalDecoder(new ResponseEntityDecoder(new SpringDecoder(converters)));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "sales-client", name = "smile", havingValue = "true", matchIfMissing = true)
+    public RequestInterceptor smileAcceptInterceptor() {
+        return template -> template.header(HttpHeaders.ACCEPT, SMILE_VALUE + ", application/json;q=0.9");
+    }
+}
@@ -0,0 +1,24 @@
+package ma.hero.clients.config;
+
+import com.netflix.loadbalancer.IRule;
+import ma.hero.clients.api.feign.InstanceLatencyTracker;
+import ma.hero.clients.api.feign.PeakEwmaZoneAffinityRule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Ribbon configuration of the sales-service client, registered in its own context by {@link FeignClientConfiguration}.
+ * <p>
+ * Not a @Configuration: the component scan would otherwise apply it to every Ribbon client.
+ */
+public class SalesServiceRibbonConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "sales-client.load-balancer", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public IRule ribbonRule(InstanceLatencyTracker tracker,
+                            @Value("${sales-client.load-balancer.zone:${eureka.instance.metadata-map.zone:}}") String zone,
+                            @Value("${sales-client.load-balancer.cross-zone-factor:2}") double crossZoneFactor) {
+        return new PeakEwmaZoneAffinityRule(tracker, zone, crossZoneFactor);
+    }
+}
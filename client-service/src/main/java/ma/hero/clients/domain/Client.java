@@ -7,7 +7,11 @@ import java.io.Serializable;
  * Client Entity.
  */
 @Entity
-@Table(name = "client")
+@Table(name = "client", indexes = {
+        @Index(name = "idx_client_email", columnList = "email"),
+        @Index(name = "idx_client_first_name", columnList = "first_name"),
+        @Index(name = "idx_client_last_name", columnList = "last_name")
+})
 public class Client implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -23,6 +27,12 @@ public class Client implements Serializable {
     private String email;
     @Column(name = "address")
     private String address;
+    /**
+     * Optimistic lock, also the strong ETag of the client.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 
     public Client() {
     }
@@ -74,4 +84,12 @@ public class Client implements Serializable {
     public void setAddress(String address) {
         this.address = address;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
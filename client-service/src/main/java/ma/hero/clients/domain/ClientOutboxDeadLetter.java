@@ -0,0 +1,108 @@
+package ma.hero.clients.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A client event the consumer rejected for good (4xx), moved out of the outbox so that it does not block the events
+ * behind it, and kept with the error.
+ */
+@Entity
+@Table(name = "client_outbox_dead_letter")
+public class ClientOutboxDeadLetter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * The id of the outbox event.
+     */
+    @Id
+    private Long id;
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private ClientOutboxEvent.Type type;
+    @Column(name = "client_version")
+    private Long clientVersion;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+    @Column(name = "error", length = MAX_ERROR_LENGTH)
+    private String error;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "failed_at", nullable = false)
+    private Date failedAt;
+
+    public ClientOutboxDeadLetter() {
+    }
+
+    public ClientOutboxDeadLetter(ClientOutboxEvent event, String error) {
+        this.id = event.getId();
+        this.clientId = event.getClientId();
+        this.type = event.getType();
+        this.clientVersion = event.getClientVersion();
+        this.createdAt = event.getCreatedAt();
+        this.error = error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+        this.failedAt = new Date();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public ClientOutboxEvent.Type getType() {
+        return type;
+    }
+
+    public void setType(ClientOutboxEvent.Type type) {
+        this.type = type;
+    }
+
+    public Long getClientVersion() {
+        return clientVersion;
+    }
+
+    public void setClientVersion(Long clientVersion) {
+        this.clientVersion = clientVersion;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getFailedAt() {
+        return failedAt;
+    }
+
+    public void setFailedAt(Date failedAt) {
+        this.failedAt = failedAt;
+    }
+}
@@ -0,0 +1,87 @@
+package ma.hero.clients.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A client change waiting to be relayed to the sales service, written in the transaction of the change.
+ * The id gives the order of the changes and identifies the event for the consumers.
+ */
+@Entity
+@Table(name = "client_outbox")
+public class ClientOutboxEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private Type type;
+    /**
+     * Version of the client after the change, null when it is not known.
+     */
+    @Column(name = "client_version")
+    private Long clientVersion;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+
+    public ClientOutboxEvent() {
+    }
+
+    public ClientOutboxEvent(Long clientId, Type type, Long clientVersion) {
+        this.clientId = clientId;
+        this.type = type;
+        this.clientVersion = clientVersion;
+        this.createdAt = new Date();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getClientVersion() {
+        return clientVersion;
+    }
+
+    public void setClientVersion(Long clientVersion) {
+        this.clientVersion = clientVersion;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
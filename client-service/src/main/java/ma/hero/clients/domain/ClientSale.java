@@ -0,0 +1,119 @@
+package ma.hero.clients.domain;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A recent sale of a client, copied from the sales service by the sales projection.
+ */
+@Entity
+@Table(name = "client_sale", indexes = {
+        @Index(name = "idx_client_sale_client_date", columnList = "client_id, operation_date")
+})
+public class ClientSale implements Persistable<Long>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The id of the sale in the sales service.
+     */
+    @Id
+    @Column(name = "sale_id")
+    private Long saleId;
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+    @Column(name = "product_code")
+    private String productCode;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "operation_date")
+    private Date operationDate;
+    @Column(name = "quantity")
+    private Long quantity;
+    @Column(name = "amount")
+    private Double amount;
+    /**
+     * Inserted without the select of a merge, the id being assigned.
+     */
+    @Transient
+    private boolean created;
+
+    public ClientSale() {
+    }
+
+    public ClientSale(Long saleId, Long clientId, String productCode, Date operationDate, Long quantity, Double amount) {
+        this.saleId = saleId;
+        this.clientId = clientId;
+        this.productCode = productCode;
+        this.operationDate = operationDate;
+        this.quantity = quantity;
+        this.amount = amount;
+        this.created = true;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored() {
+        created = false;
+    }
+
+    @Override
+    public Long getId() {
+        return saleId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return created;
+    }
+
+    public Long getSaleId() {
+        return saleId;
+    }
+
+    public void setSaleId(Long saleId) {
+        this.saleId = saleId;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public void setProductCode(String productCode) {
+        this.productCode = productCode;
+    }
+
+    public Date getOperationDate() {
+        return operationDate;
+    }
+
+    public void setOperationDate(Date operationDate) {
+        this.operationDate = operationDate;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,87 @@
+package ma.hero.clients.domain;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * All-time sales totals of a client, summed by the sales projection.
+ */
+@Entity
+@Table(name = "client_sale_totals")
+public class ClientSaleTotals implements Persistable<Long>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "client_id")
+    private Long clientId;
+    @Column(name = "sale_count", nullable = false)
+    private long saleCount;
+    @Column(name = "quantity", nullable = false)
+    private long quantity;
+    @Column(name = "amount", nullable = false)
+    private double amount;
+    /**
+     * Inserted without the select of a merge, the id being assigned.
+     */
+    @Transient
+    private boolean created;
+
+    public ClientSaleTotals() {
+    }
+
+    public ClientSaleTotals(Long clientId) {
+        this.clientId = clientId;
+        this.created = true;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored() {
+        created = false;
+    }
+
+    @Override
+    public Long getId() {
+        return clientId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return created;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public long getSaleCount() {
+        return saleCount;
+    }
+
+    public void setSaleCount(long saleCount) {
+        this.saleCount = saleCount;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,47 @@
+package ma.hero.clients.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Position of the sales projection in the sale change log, saved in the transaction of each applied batch.
+ */
+@Entity
+@Table(name = "sale_projection_position")
+public class SaleProjectionState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+    /**
+     * The token of the change log after the last change applied.
+     */
+    @Column(name = "token", length = 255)
+    private String token;
+
+    public SaleProjectionState() {
+    }
+
+    public SaleProjectionState(String name, String token) {
+        this.name = name;
+        this.token = token;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+}
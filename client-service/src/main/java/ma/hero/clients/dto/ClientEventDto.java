@@ -0,0 +1,77 @@
+package ma.hero.clients.dto;
+
+import ma.hero.clients.domain.ClientOutboxEvent;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A client change as relayed to the sales service.
+ */
+public class ClientEventDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private Long clientId;
+    private ClientOutboxEvent.Type type;
+    private Long version;
+    private Date occurredAt;
+
+    public ClientEventDto() {
+    }
+
+    public ClientEventDto(ClientOutboxEvent event) {
+        this.id = event.getId();
+        this.clientId = event.getClientId();
+        this.type = event.getType();
+        this.version = event.getClientVersion();
+        this.occurredAt = event.getCreatedAt();
+    }
+
+    /**
+     * @return the id of the outbox event, increasing with the changes.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public ClientOutboxEvent.Type getType() {
+        return type;
+    }
+
+    public void setType(ClientOutboxEvent.Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the version of the client after the change, null when it is not known.
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Date getOccurredAt() {
+        return occurredAt;
+    }
+
+    public void setOccurredAt(Date occurredAt) {
+        this.occurredAt = occurredAt;
+    }
+}
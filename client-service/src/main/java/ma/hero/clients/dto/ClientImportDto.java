@@ -0,0 +1,89 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress, then summary, of a client import.
+ * The errors are listed up to client-import.max-errors, failed counts all of them.
+ */
+public class ClientImportDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String importId;
+    private String format;
+    private long rows;
+    private long imported;
+    private long failed;
+    private boolean done;
+    private List<ClientImportErrorDto> errors = new ArrayList<>();
+
+    public ClientImportDto() {
+    }
+
+    public ClientImportDto(String importId, String format) {
+        this.importId = importId;
+        this.format = format;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public void setImportId(String importId) {
+        this.importId = importId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the rows read so far, blank lines and the CSV header excepted.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+
+    public List<ClientImportErrorDto> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<ClientImportErrorDto> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,41 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+
+/**
+ * A row of a client import that could not be imported.
+ */
+public class ClientImportErrorDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long line;
+    private String message;
+
+    public ClientImportErrorDto() {
+    }
+
+    public ClientImportErrorDto(long line, String message) {
+        this.line = line;
+        this.message = message;
+    }
+
+    /**
+     * @return the line of the row in the imported file, from 1.
+     */
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,43 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of clients, each one holding only the requested fields, and the token of the next page.
+ */
+public class ClientPageDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<Map<String, Object>> clients;
+    private String next;
+
+    public ClientPageDto() {
+    }
+
+    public ClientPageDto(List<Map<String, Object>> clients, String next) {
+        this.clients = clients;
+        this.next = next;
+    }
+
+    public List<Map<String, Object>> getClients() {
+        return clients;
+    }
+
+    public void setClients(List<Map<String, Object>> clients) {
+        this.clients = clients;
+    }
+
+    /**
+     * @return the token of the next page, null on the last page.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
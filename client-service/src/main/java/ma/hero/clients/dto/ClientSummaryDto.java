@@ -0,0 +1,59 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import ma.hero.clients.domain.Client;
+
+/**
+ * A client with its recent sales and its sales totals.
+ * The parts that could not be fetched in time are null and listed in unavailable.
+ */
+public class ClientSummaryDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String RECENT_SALES = "recentSales";
+    public static final String TOTALS = "totals";
+
+    private Client client;
+    private List<SaleDto> recentSales;
+    private SaleTotalsDto totals;
+    private List<String> unavailable = new ArrayList<>();
+
+    public ClientSummaryDto() {
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public void setClient(Client client) {
+        this.client = client;
+    }
+
+    public List<SaleDto> getRecentSales() {
+        return recentSales;
+    }
+
+    public void setRecentSales(List<SaleDto> recentSales) {
+        this.recentSales = recentSales;
+    }
+
+    public SaleTotalsDto getTotals() {
+        return totals;
+    }
+
+    public void setTotals(SaleTotalsDto totals) {
+        this.totals = totals;
+    }
+
+    public List<String> getUnavailable() {
+        return unavailable;
+    }
+
+    public void setUnavailable(List<String> unavailable) {
+        this.unavailable = unavailable;
+    }
+}
@@ -0,0 +1,80 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * An entry of the sale change log of the sales service.
+ */
+public class SaleChangeDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    private Long seq;
+    private Type type;
+    private Long saleId;
+    private Date changedAt;
+    private SaleDto before;
+    private SaleDto after;
+
+    public SaleChangeDto() {
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getSaleId() {
+        return saleId;
+    }
+
+    public void setSaleId(Long saleId) {
+        this.saleId = saleId;
+    }
+
+    public Date getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(Date changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * @return the sale before the change, null for an insert.
+     */
+    public SaleDto getBefore() {
+        return before;
+    }
+
+    public void setBefore(SaleDto before) {
+        this.before = before;
+    }
+
+    /**
+     * @return the sale after the change, null for a delete.
+     */
+    public SaleDto getAfter() {
+        return after;
+    }
+
+    public void setAfter(SaleDto after) {
+        this.after = after;
+    }
+}
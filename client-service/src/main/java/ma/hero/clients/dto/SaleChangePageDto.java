@@ -0,0 +1,42 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of the sale change log of the sales service.
+ */
+public class SaleChangePageDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<SaleChangeDto> changes;
+    private String next;
+
+    public SaleChangePageDto() {
+    }
+
+    public SaleChangePageDto(List<SaleChangeDto> changes, String next) {
+        this.changes = changes;
+        this.next = next;
+    }
+
+    public List<SaleChangeDto> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<SaleChangeDto> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * @return the token of the position after the page.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
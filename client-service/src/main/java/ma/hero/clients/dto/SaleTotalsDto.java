@@ -0,0 +1,74 @@
+package ma.hero.clients.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * Sales totals of a client over a period, as computed by the sales service.
+ */
+public class SaleTotalsDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long clientId;
+    @JsonFormat(pattern = "dd-MM-yyyy")
+    private LocalDate from;
+    @JsonFormat(pattern = "dd-MM-yyyy")
+    private LocalDate to;
+    private long count;
+    private long quantity;
+    private double amount;
+
+    public SaleTotalsDto() {
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,13 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.ClientOutboxDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * Spring Data repository for the ClientOutboxDeadLetter entity.
+ */
+@Repository
+public interface ClientOutboxDeadLetterRepository extends JpaRepository<ClientOutboxDeadLetter, Long> {
+}
@@ -0,0 +1,39 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.ClientOutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * Spring Data repository for the ClientOutboxEvent entity.
+ */
+@Repository
+public interface ClientOutboxRepository extends JpaRepository<ClientOutboxEvent, Long> {
+
+    /**
+     * The oldest events not relayed yet, in the order of the changes.
+     */
+    List<ClientOutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+
+    /**
+     * One DELETED event per existing client of the ids, in one INSERT ... SELECT statement, to be run before the
+     * clients are deleted.
+     */
+    @Modifying
+    @Query(value = "insert into client_outbox (client_id, type, client_version, created_at) "
+            + "select id, 'DELETED', version, :now from client where id in :ids", nativeQuery = true)
+    int insertDeletedEvents(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    @Modifying
+    @Query("delete from ClientOutboxEvent e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -1,13 +1,40 @@
 package ma.hero.clients.repository;
 
 import ma.hero.clients.domain.Client;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 /**
  * Spring Data repository for the Client entity.
  */
 @Repository
-public interface ClientRepository extends JpaRepository<Client, Long> {
+public interface ClientRepository extends JpaRepository<Client, Long>, ClientRepositoryCustom {
+
+    List<Client> findByEmail(String email, Pageable pageable);
+
+    /**
+     * Clients whose first or last name starts with the prefix, which must have its LIKE wildcards escaped.
+     * The columns are compared as is so that their indexes are used, the case insensitive collation of the
+     * database doing the rest.
+     */
+    @Query("select c from Client c where c.firstName like concat(:prefix, '%') escape '\\' "
+            + "or c.lastName like concat(:prefix, '%') escape '\\' order by c.lastName, c.firstName, c.id")
+    List<Client> findByNamePrefix(@Param("prefix") String prefix, Pageable pageable);
+
+    List<Client> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * One DELETE ... WHERE id IN (...) statement, without loading the clients.
+     */
+    @Modifying
+    @Query("delete from Client c where c.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,32 @@
+package ma.hero.clients.repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries of the Client entity that Spring Data cannot derive.
+ */
+public interface ClientRepositoryCustom {
+
+    /**
+     * Get one page of clients by keyset: ordered by the sort attribute then the id, starting after the last client
+     * of the previous page. Only the given attributes, the id and the sort attribute are selected.
+     * @param attributes the names of the Client attributes to select.
+     * @param sort the attribute to order by, which should be indexed.
+     * @param afterValue the sort value of the last client of the previous page.
+     * @param afterId the id of the last client of the previous page, null for the first page.
+     * @param limit the maximum number of clients.
+     * @return the clients, as attribute values by name.
+     */
+    List<Map<String, Object>> findPage(List<String> attributes, String sort, Object afterValue, Long afterId, int limit);
+
+    /**
+     * Update only the given attributes of a client and increment its version, in one UPDATE statement.
+     * The persistence context is not synchronized.
+     * @param id the id of the client.
+     * @param expectedVersion the version the client must still have.
+     * @param changes the new values by attribute name, a null value clearing the column.
+     * @return the number of updated rows, 0 if the client does not exist or has another version.
+     */
+    int patch(Long id, Long expectedVersion, Map<String, Object> changes);
+}
@@ -0,0 +1,107 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.Client;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implementation of {@link ClientRepositoryCustom}, with the criteria API.
+ * <p>
+ * The pages are read as tuples of the selected columns: no Client entity is hydrated nor kept in the persistence
+ * context. A NULL sort value comes first, as both MySQL and H2 order them.
+ */
+public class ClientRepositoryImpl implements ClientRepositoryCustom {
+
+    private static final String ID = "id";
+
+    private static final String VERSION = "version";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Map<String, Object>> findPage(List<String> attributes, String sort, Object afterValue, Long afterId, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<Client> client = query.from(Client.class);
+
+        Set<String> selected = new LinkedHashSet<>(attributes);
+        selected.add(ID);
+        selected.add(sort);
+        List<Selection<?>> selections = new ArrayList<>();
+        selected.forEach(attribute -> selections.add(client.get(attribute).alias(attribute)));
+        query.multiselect(selections);
+
+        Path<Long> id = client.get(ID);
+        if (ID.equals(sort)) {
+            if (afterId != null) {
+                query.where(builder.greaterThan(id, afterId));
+            }
+            query.orderBy(builder.asc(id));
+        } else {
+            Path<Comparable> value = client.get(sort);
+            if (afterId != null) {
+                Predicate sameValueAfter = builder.greaterThan(id, afterId);
+                Predicate after = afterValue == null
+                        ? builder.or(builder.isNotNull(value), builder.and(builder.isNull(value), sameValueAfter))
+                        : builder.or(builder.greaterThan(value, (Comparable) afterValue),
+                                builder.and(builder.equal(value, afterValue), sameValueAfter));
+                query.where(after);
+            }
+            query.orderBy(builder.asc(value), builder.asc(id));
+        }
+
+        List<Map<String, Object>> page = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).setMaxResults(limit).getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TupleElement<?> element : tuple.getElements()) {
+                row.put(element.getAlias(), tuple.get(element));
+            }
+            page.add(row);
+        }
+        return page;
+    }
+
+    @Override
+    public int patch(Long id, Long expectedVersion, Map<String, Object> changes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Client> update = builder.createCriteriaUpdate(Client.class);
+        Root<Client> client = update.from(Client.class);
+        // bound parameters, so that the statement is the same whatever the values
+        changes.keySet().forEach(attribute -> assign(update, builder, client.get(attribute), attribute));
+        Path<Long> version = client.get(VERSION);
+        update.set(version, builder.sum(version, 1L));
+        update.where(builder.equal(client.get(ID), builder.parameter(Long.class, ID)),
+                builder.equal(version, builder.parameter(Long.class, VERSION)));
+
+        Query query = entityManager.createQuery(update);
+        changes.forEach(query::setParameter);
+        query.setParameter(ID, id);
+        query.setParameter(VERSION, expectedVersion);
+        return query.executeUpdate();
+    }
+
+    private static <Y> void assign(CriteriaUpdate<Client> update, CriteriaBuilder builder, Path<Y> column, String name) {
+        Expression<? extends Y> value = builder.parameter(column.getJavaType(), name);
+        update.set(column, value);
+    }
+}
@@ -0,0 +1,33 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.ClientSale;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+
+/**
+ * Spring Data repository for the ClientSale entity.
+ */
+@Repository
+public interface ClientSaleRepository extends JpaRepository<ClientSale, Long> {
+
+    /**
+     * The sales of a client since a date, served by the (client_id, operation_date) index.
+     */
+    List<ClientSale> findByClientIdAndOperationDateGreaterThanEqualOrderByOperationDateDescSaleIdDesc(Long clientId, Date from);
+
+    @Modifying
+    @Query("delete from ClientSale s where s.saleId in :saleIds")
+    int deleteBySaleIdIn(@Param("saleIds") Collection<Long> saleIds);
+
+    @Modifying
+    @Query("delete from ClientSale s where s.operationDate < :before")
+    int deleteByOperationDateBefore(@Param("before") Date before);
+}
@@ -0,0 +1,13 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.ClientSaleTotals;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * Spring Data repository for the ClientSaleTotals entity.
+ */
+@Repository
+public interface ClientSaleTotalsRepository extends JpaRepository<ClientSaleTotals, Long> {
+}
@@ -0,0 +1,13 @@
+package ma.hero.clients.repository;
+
+import ma.hero.clients.domain.SaleProjectionState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+
+/**
+ * Spring Data repository for the SaleProjectionState entity.
+ */
+@Repository
+public interface SaleProjectionStateRepository extends JpaRepository<SaleProjectionState, String> {
+}
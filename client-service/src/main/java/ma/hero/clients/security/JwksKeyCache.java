@@ -0,0 +1,152 @@
+package ma.hero.clients.security;
+
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.util.JWKSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Signing keys of the realm by key id, read from its JWKS endpoint.
+ * <p>
+ * The keys are loaded on first use and refreshed in the background every refresh-ms. A token signed with a key id we
+ * do not know yet, after a key rotation, triggers an immediate refresh, at most once every min-refresh-interval-ms so
+ * that forged key ids cannot flood the realm. When a refresh fails the known keys are kept.
+ * <p>
+ * The realm is only called from the refresher thread: a request needing a refresh joins the one in flight, if any,
+ * and waits for it at most wait-ms before going on with the known keys.
+ */
+public class JwksKeyCache implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyCache.class);
+
+    private final Supplier<JSONWebKeySet> source;
+
+    private final long minRefreshIntervalNanos;
+
+    private final long waitNanos;
+
+    private final ScheduledExecutorService refresher;
+
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+
+    private volatile boolean loaded;
+
+    private CompletableFuture<Void> refreshing;
+
+    private boolean attempted;
+
+    private long lastRefresh;
+
+    public JwksKeyCache(Supplier<JSONWebKeySet> source, long refreshMs, long minRefreshIntervalMs, long waitMs) {
+        this.source = source;
+        this.minRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minRefreshIntervalMs);
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMs);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwks-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refresher.scheduleWithFixedDelay(() -> startRefresh(true), refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the signing key, null if the realm does not have it or did not answer in time.
+     */
+    public PublicKey getKey(String keyId) {
+        if (!loaded) {
+            await(startRefresh(false));
+        }
+        PublicKey key = keys.get(keyId);
+        if (key == null && await(startRefresh(false))) {
+            // a new key after a rotation
+            key = keys.get(keyId);
+        }
+        return key;
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Start a refresh on the refresher thread, unless one is in flight already.
+     * @param scheduled true for the periodic refresh, which ignores the min refresh interval.
+     * @return the refresh in flight, null when a refresh is not allowed yet.
+     */
+    private synchronized CompletableFuture<Void> startRefresh(boolean scheduled) {
+        if (refreshing != null) {
+            return refreshing;
+        }
+        long now = System.nanoTime();
+        if (!scheduled && attempted && now - lastRefresh < minRefreshIntervalNanos) {
+            return null;
+        }
+        attempted = true;
+        lastRefresh = now;
+        CompletableFuture<Void> refresh;
+        try {
+            refresh = CompletableFuture.runAsync(this::refresh, refresher);
+        } catch (RejectedExecutionException e) {
+            // shut down
+            return null;
+        }
+        refreshing = refresh;
+        refresh.whenComplete((result, failure) -> refreshed(refresh));
+        return refresh;
+    }
+
+    private synchronized void refreshed(CompletableFuture<Void> refresh) {
+        if (refreshing == refresh) {
+            refreshing = null;
+        }
+    }
+
+    /**
+     * @return true when the refresh completed within wait-ms.
+     */
+    private boolean await(CompletableFuture<Void> refresh) {
+        if (refresh == null) {
+            return false;
+        }
+        try {
+            refresh.get(waitNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.debug("Realm signing keys not refreshed within {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void refresh() {
+        try {
+            Map<String, PublicKey> refreshed = JWKSUtils.getKeysForUse(source.get(), JWK.Use.SIG);
+            if (!refreshed.keySet().equals(keys.keySet())) {
+                log.info("Realm signing keys: {}", refreshed.keySet());
+            }
+            keys = refreshed;
+            loaded = true;
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh the realm signing keys, keeping {}: {}", keys.keySet(), e.toString());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ma.hero.clients.security;
+
+import org.keycloak.common.VerificationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Authenticates the bearer token requests with the {@link LocalJwtAuthenticator}, ahead of the Keycloak filter.
+ * <p>
+ * A request it could not authenticate goes on to the Keycloak filter unchanged, which then answers as before.
+ */
+public class LocalJwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalJwtAuthenticationFilter.class);
+
+    private static final String BEARER = "Bearer ";
+
+    private final LocalJwtAuthenticator authenticator;
+
+    public LocalJwtAuthenticationFilter(LocalJwtAuthenticator authenticator) {
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            try {
+                SecurityContextHolder.getContext().setAuthentication(authenticator.authenticate(authorization.substring(BEARER.length()).trim()));
+            } catch (VerificationException e) {
+                log.debug("Bearer token not verified locally: {}", e.getMessage());
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
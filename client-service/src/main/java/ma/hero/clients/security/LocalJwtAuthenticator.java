@@ -0,0 +1,137 @@
+package ma.hero.clients.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.representations.AccessToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the realm access tokens locally, with the cached realm keys, and remembers the verified ones.
+ * <p>
+ * A token is checked like the Keycloak adapter does: signature, issuer, type, subject and validity period. Its realm
+ * roles become ROLE_ authorities. The resulting Authentication is cached under the SHA-256 of the token until the
+ * token expires, so a client sending the same token again costs a hash and a lookup.
+ */
+public class LocalJwtAuthenticator {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final JwksKeyCache keyCache;
+
+    private final String realmUrl;
+
+    private final String principalAttribute;
+
+    private final Cache<String, VerifiedToken> verified;
+
+    public LocalJwtAuthenticator(JwksKeyCache keyCache, String realmUrl, String principalAttribute, long cacheSize, MeterRegistry meterRegistry) {
+        this.keyCache = keyCache;
+        this.realmUrl = realmUrl;
+        this.principalAttribute = principalAttribute;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new UntilTokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "verifiedTokens");
+    }
+
+    /**
+     * @return the authentication of the token.
+     * @throws VerificationException if the token is not a valid access token of the realm.
+     */
+    public Authentication authenticate(String token) throws VerificationException {
+        String hash = hash(token);
+        VerifiedToken cached = verified.getIfPresent(hash);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.authentication;
+        }
+        TokenVerifier<AccessToken> verifier = TokenVerifier.create(token, AccessToken.class).withDefaultChecks().realmUrl(realmUrl);
+        String keyId = verifier.getHeader().getKeyId();
+        PublicKey key = keyCache.getKey(keyId);
+        if (key == null) {
+            throw new VerificationException("Unknown signing key " + keyId);
+        }
+        AccessToken accessToken = verifier.publicKey(key).verify().getToken();
+        Authentication authentication = toAuthentication(accessToken);
+        if (accessToken.getExp() != null) {
+            verified.put(hash, new VerifiedToken(authentication, accessToken.getExp() * 1000L));
+        }
+        return authentication;
+    }
+
+    private Authentication toAuthentication(AccessToken accessToken) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if (accessToken.getRealmAccess() != null && accessToken.getRealmAccess().getRoles() != null) {
+            accessToken.getRealmAccess().getRoles().forEach(role -> authorities.add(new SimpleGrantedAuthority(ROLE_PREFIX + role)));
+        }
+        PreAuthenticatedAuthenticationToken authentication = new PreAuthenticatedAuthenticationToken(principalName(accessToken), null, authorities);
+        authentication.setDetails(accessToken);
+        return authentication;
+    }
+
+    private String principalName(AccessToken accessToken) {
+        if ("preferred_username".equals(principalAttribute) && accessToken.getPreferredUsername() != null) {
+            return accessToken.getPreferredUsername();
+        }
+        if ("email".equals(principalAttribute) && accessToken.getEmail() != null) {
+            return accessToken.getEmail();
+        }
+        return accessToken.getSubject();
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class VerifiedToken {
+
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        private VerifiedToken(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String hash, VerifiedToken token, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(token.expiresAt - System.currentTimeMillis(), 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String hash, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(hash, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String hash, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
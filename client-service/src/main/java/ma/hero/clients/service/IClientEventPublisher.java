@@ -0,0 +1,32 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.dto.ClientEventDto;
+
+import java.util.List;
+
+/**
+ * Where the outbox relay publishes the client changes, chosen with client-outbox.publisher.
+ */
+public interface IClientEventPublisher {
+
+    /**
+     * Publish a batch of events, in order. The events may be published again if the relay fails before it
+     * deletes them, the consumers must skip the ones they already applied.
+     * @param events the events, ordered by id.
+     * @throws RejectedEventsException if the consumer refused the batch for good; retrying it cannot succeed.
+     * @throws RuntimeException if the batch could not be published; it is retried as a whole.
+     */
+    void publish(List<ClientEventDto> events);
+
+    /**
+     * The consumer refused the events (a 4xx other than 408 and 429), not because it is unavailable.
+     */
+    class RejectedEventsException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RejectedEventsException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
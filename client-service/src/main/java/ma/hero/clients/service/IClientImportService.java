@@ -0,0 +1,31 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.dto.ClientImportDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface IClientImportService {
+
+    String NDJSON = "application/x-ndjson";
+    String CSV = "text/csv";
+
+    /**
+     * Import the clients of a stream, read row by row and inserted by batches.
+     * The rows that cannot be read or inserted are reported and skipped, the other ones are imported.
+     * @param importId the id under which the progress is reported.
+     * @param body the NDJSON or CSV rows, a CSV starting with its header.
+     * @param format {@link #NDJSON} or {@link #CSV}.
+     * @return the summary of the import.
+     * @throws IOException if the stream cannot be read; the batches already inserted stay.
+     * @throws IllegalArgumentException if the format is not supported or the import id is in use.
+     */
+    ClientImportDto importClients(String importId, InputStream body, String format) throws IOException;
+
+    /**
+     * Get the progress of an import, running or finished recently.
+     * @param importId the id of the import.
+     * @return the progress, null if unknown.
+     */
+    ClientImportDto getImport(String importId);
+}
@@ -0,0 +1,56 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Local read model of the sales of the clients: the sales of a recent window and the all-time totals, kept up to
+ * date from the sale change log of the sales service.
+ */
+public interface IClientSalesProjectionService {
+
+    /**
+     * @return true if the projection follows the change log, client-sales-projection.enabled being set.
+     */
+    boolean isEnabled();
+
+    /**
+     * Apply the next batch of the sale change log.
+     * @return the number of changes read.
+     */
+    int sync();
+
+    /**
+     * @return the watermark if the projection caught up with the change log recently enough to answer in place of the
+     * sales service, null otherwise: read once, it tells both whether to answer from the projection and up to when.
+     */
+    Date getFreshWatermark();
+
+    /**
+     * @return the time up to which every sale is in the projection, null if it never caught up.
+     */
+    Date getWatermark();
+
+    /**
+     * @return the first day of the sales window kept by the projection.
+     */
+    LocalDate getWindowStart();
+
+    /**
+     * Get the sales of a client since the start of the window, latest first.
+     * @param clientId the id of the client.
+     * @return the list of sales.
+     */
+    List<SaleDto> getRecentSales(Long clientId);
+
+    /**
+     * Get the all-time sales totals of a client.
+     * @param clientId the id of the client.
+     * @return the totals, zero for a client without sales.
+     */
+    SaleTotalsDto getClientTotals(Long clientId);
+}
@@ -0,0 +1,39 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.domain.Client;
+
+import java.util.List;
+import java.util.Set;
+
+public interface IClientSearchService {
+
+    /**
+     * Search the clients by exact email, when the query contains an @, or else by first or last name prefix.
+     * Both are case and accent insensitive.
+     * @param query the email or the beginning of a name.
+     * @param limit the maximum number of clients returned, capped by client-search.max-limit.
+     * @return the matching clients, ordered by the matched name.
+     */
+    List<Client> search(String query, int limit);
+
+    /**
+     * Add a created or updated client to the search index.
+     * @param client the persisted entity.
+     */
+    void index(Client client);
+
+    /**
+     * Apply a patch to the indexed copy of a client.
+     * @param id the id of the patched entity.
+     * @param version the version of the entity after the patch.
+     * @param changes the new values of the fields.
+     * @param fields the names of the patched fields.
+     */
+    void patch(Long id, Long version, Client changes, Set<String> fields);
+
+    /**
+     * Remove a deleted client from the search index.
+     * @param id the id of the entity.
+     */
+    void remove(Long id);
+}
@@ -1,8 +1,11 @@
 package ma.hero.clients.service;
 
 import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientPageDto;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface IClientService {
 
@@ -26,16 +29,47 @@ public interface IClientService {
      */
     List<Client> getAllClients();
 
+    /**
+     * Get one page of clients, by keyset on the sort field then the id.
+     * @param fields the fields to return, all of them when null or empty.
+     * @param sort the field to order by: id, lastName or email.
+     * @param pageToken the next token of the previous page, null for the first page.
+     * @param limit the maximum number of clients, client-list.default-limit when not positive.
+     * @return the clients and the token of the next page.
+     * @throws IllegalArgumentException if a field, the sort or the token is not valid.
+     */
+    ClientPageDto getClients(List<String> fields, String sort, String pageToken, int limit);
+
     /**
      * Update a client.
-     * @param client the entity to update.
-     * @return the updated entity.
+     * @param client the entity to update; when its version is set it must be the current one.
+     * @return the updated entity, null if it does not exist.
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the version is not the current one.
      */
     Client updateClient(Client client);
 
+    /**
+     * Update some fields of a client, with one version-checked UPDATE of these columns only and no read.
+     * @param id the id of the client.
+     * @param version the version the client must have.
+     * @param changes the new values of the fields.
+     * @param fields the names of the fields to update: firstName, lastName, email or address.
+     * @return false if the client does not exist.
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the client has another version.
+     * @throws IllegalArgumentException if a field cannot be patched or the version is missing.
+     */
+    boolean patchClient(Long id, Long version, Client changes, Set<String> fields);
+
     /**
      * Delete the client by id.
      * @param id the id of the entity.
      */
     void deleteClient(Long id);
+
+    /**
+     * Delete clients by id, by chunks of one DELETE statement and one transaction each.
+     * @param ids the ids of the entities, unknown ones are ignored.
+     * @return the number of clients deleted.
+     */
+    long deleteClients(Collection<Long> ids);
 }
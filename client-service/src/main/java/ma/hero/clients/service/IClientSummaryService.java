@@ -0,0 +1,17 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.dto.ClientSummaryDto;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface IClientSummaryService {
+
+    /**
+     * Get a client with its recent sales and totals, the three lookups running concurrently.
+     * The sales parts that fail or time out are left empty and listed as unavailable.
+     * @param id the id of the client.
+     * @return the future summary, completed with null when the client does not exist,
+     * or exceptionally when the client itself could not be read.
+     */
+    CompletableFuture<ClientSummaryDto> getClientSummary(Long id);
+}
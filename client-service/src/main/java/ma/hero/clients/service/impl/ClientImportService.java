@@ -0,0 +1,349 @@
+package ma.hero.clients.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientImportDto;
+import ma.hero.clients.dto.ClientImportErrorDto;
+import ma.hero.clients.service.IClientImportService;
+import ma.hero.clients.service.IClientSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service Implementation importing clients in bulk.
+ * <p>
+ * The body is read line by line, so only the current batch is held in memory. Each batch is inserted with one JDBC
+ * batch in its own transaction, the IDENTITY ids ruling out the Hibernate batching; with rewriteBatchedStatements
+ * the MySQL driver sends it as a single multi-row insert. When a batch fails its rows are inserted one by one to
+ * find the failing ones. The imported clients are added to the search index with their generated ids, and their
+ * CREATED events to the outbox in the transaction of their batch.
+ */
+@Service
+public class ClientImportService implements IClientImportService {
+
+    private static final String INSERT = "insert into client (first_name, last_name, email, address, version) values (?, ?, ?, ?, 0)";
+
+    private static final String INSERT_EVENT = "insert into client_outbox (client_id, type, client_version, created_at) values (?, 'CREATED', 0, ?)";
+
+    private static final String[] CSV_COLUMNS = {"firstname", "lastname", "email", "address"};
+
+    private final Logger log = LoggerFactory.getLogger(ClientImportService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectReader clientReader;
+
+    private final IClientSearchService clientSearchService;
+
+    private final int batchSize;
+
+    private final int maxErrors;
+
+    private final Cache<String, ClientImportDto> imports;
+
+    public ClientImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                               IClientSearchService clientSearchService,
+                               @Value("${client-import.batch-size:1000}") int batchSize,
+                               @Value("${client-import.max-errors:1000}") int maxErrors,
+                               @Value("${client-import.retention-minutes:60}") long retentionMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clientReader = objectMapper.readerFor(Client.class);
+        this.clientSearchService = clientSearchService;
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+        this.imports = Caffeine.newBuilder().expireAfterWrite(retentionMinutes, TimeUnit.MINUTES).build();
+    }
+
+    @Override
+    public ClientImportDto importClients(String importId, InputStream body, String format) throws IOException {
+        boolean csv = CSV.equals(format);
+        if (!csv && !NDJSON.equals(format)) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        ClientImportDto progress = new ClientImportDto(importId, format);
+        if (imports.asMap().putIfAbsent(importId, progress) != null) {
+            throw new IllegalArgumentException("Import " + importId + " already exists");
+        }
+        log.debug("Request to import Clients : {}", importId);
+        long start = System.currentTimeMillis();
+        List<Row> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            int[] columns = null;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (csv && columns == null) {
+                    columns = csvColumns(line);
+                    continue;
+                }
+                synchronized (progress) {
+                    progress.setRows(progress.getRows() + 1);
+                }
+                try {
+                    batch.add(new Row(lineNumber, csv ? fromCsv(columns, line) : fromJson(line)));
+                } catch (IllegalArgumentException e) {
+                    failed(progress, lineNumber, e.getMessage());
+                }
+                if (batch.size() == batchSize) {
+                    insert(batch, progress);
+                    batch.clear();
+                }
+            }
+            insert(batch, progress);
+        } finally {
+            synchronized (progress) {
+                progress.setDone(true);
+            }
+        }
+        ClientImportDto summary = getImport(importId);
+        log.info("Import {}: {} clients imported, {} rows failed in {} ms", importId, summary.getImported(), summary.getFailed(),
+                System.currentTimeMillis() - start);
+        return summary;
+    }
+
+    @Override
+    public ClientImportDto getImport(String importId) {
+        ClientImportDto progress = imports.getIfPresent(importId);
+        if (progress == null) {
+            return null;
+        }
+        synchronized (progress) {
+            ClientImportDto snapshot = new ClientImportDto(progress.getImportId(), progress.getFormat());
+            snapshot.setRows(progress.getRows());
+            snapshot.setImported(progress.getImported());
+            snapshot.setFailed(progress.getFailed());
+            snapshot.setDone(progress.isDone());
+            snapshot.setErrors(new ArrayList<>(progress.getErrors()));
+            return snapshot;
+        }
+    }
+
+    private void insert(List<Row> batch, ClientImportDto progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            inserted(batch, transactionTemplate.execute(status -> insertBatch(batch)), progress);
+        } catch (DataAccessException e) {
+            log.debug("Batch of {} clients rejected, inserting them one by one: {}", batch.size(), e.getMostSpecificCause().toString());
+            for (Row row : batch) {
+                List<Row> single = Collections.singletonList(row);
+                try {
+                    inserted(single, transactionTemplate.execute(status -> insertBatch(single)), progress);
+                } catch (DataAccessException rowError) {
+                    failed(progress, row.line, rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private List<Long> insertBatch(List<Row> rows) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                for (Row row : rows) {
+                    statement.setString(1, row.client.getFirstName());
+                    statement.setString(2, row.client.getLastName());
+                    statement.setString(3, row.client.getEmail());
+                    statement.setString(4, row.client.getAddress());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Long> ids = new ArrayList<>(rows.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                // the outbox event of every client or none of the clients: rolled back, the rows go one by one
+                if (ids.size() != rows.size()) {
+                    throw new IncorrectResultSizeDataAccessException("Generated ids of the imported clients", rows.size(), ids.size());
+                }
+                insertEvents(connection, ids);
+                return ids;
+            }
+        });
+    }
+
+    /**
+     * The outbox events of the imported clients, in the transaction of their batch.
+     */
+    private static void insertEvents(Connection connection, List<Long> ids) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_EVENT)) {
+            for (Long id : ids) {
+                statement.setLong(1, id);
+                statement.setTimestamp(2, now);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Count the committed rows and index them.
+     */
+    private void inserted(List<Row> rows, List<Long> ids, ClientImportDto progress) {
+        synchronized (progress) {
+            progress.setImported(progress.getImported() + rows.size());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            Client client = rows.get(i).client;
+            client.setId(ids.get(i));
+            client.setVersion(0L);
+            clientSearchService.index(client);
+        }
+    }
+
+    private void failed(ClientImportDto progress, long line, String message) {
+        synchronized (progress) {
+            progress.setFailed(progress.getFailed() + 1);
+            if (progress.getErrors().size() < maxErrors) {
+                progress.getErrors().add(new ClientImportErrorDto(line, message));
+            }
+        }
+    }
+
+    private Client fromJson(String line) {
+        Client client;
+        try {
+            client = clientReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (client == null) {
+            throw new IllegalArgumentException("Not a client");
+        }
+        return checked(new Client(client.getFirstName(), client.getLastName(), client.getEmail(), client.getAddress()));
+    }
+
+    /**
+     * @return the client field of each CSV column, by its index in {@link #CSV_COLUMNS}, -1 for the ignored ones.
+     */
+    private static int[] csvColumns(String header) {
+        List<String> names = csvValues(header);
+        int[] columns = new int[names.size()];
+        boolean known = false;
+        for (int i = 0; i < columns.length; i++) {
+            String name = names.get(i).replace("_", "").replace("-", "").trim().toLowerCase(Locale.ROOT);
+            columns[i] = -1;
+            for (int field = 0; field < CSV_COLUMNS.length; field++) {
+                if (CSV_COLUMNS[field].equals(name)) {
+                    columns[i] = field;
+                    known = true;
+                }
+            }
+        }
+        if (!known) {
+            throw new IllegalArgumentException("The CSV header has none of the columns firstName, lastName, email, address");
+        }
+        return columns;
+    }
+
+    private static Client fromCsv(int[] columns, String line) {
+        List<String> values = csvValues(line);
+        if (values.size() != columns.length) {
+            throw new IllegalArgumentException(values.size() + " values for " + columns.length + " columns");
+        }
+        String[] fields = new String[CSV_COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] >= 0 && !values.get(i).isEmpty()) {
+                fields[columns[i]] = values.get(i);
+            }
+        }
+        return checked(new Client(fields[0], fields[1], fields[2], fields[3]));
+    }
+
+    /**
+     * Split a CSV line, the values being possibly quoted with "" for a quote inside. A quoted value cannot span lines.
+     */
+    static List<String> csvValues(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value");
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+
+    private static Client checked(Client client) {
+        if (isBlank(client.getFirstName()) && isBlank(client.getLastName()) && isBlank(client.getEmail())) {
+            throw new IllegalArgumentException("A client needs a name or an email");
+        }
+        return client;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static final class Row {
+
+        private final long line;
+        private final Client client;
+
+        private Row(long line, Client client) {
+            this.line = line;
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package ma.hero.clients.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.clients.domain.ClientOutboxDeadLetter;
+import ma.hero.clients.domain.ClientOutboxEvent;
+import ma.hero.clients.dto.ClientEventDto;
+import ma.hero.clients.repository.ClientOutboxDeadLetterRepository;
+import ma.hero.clients.repository.ClientOutboxRepository;
+import ma.hero.clients.service.IClientEventPublisher;
+import ma.hero.clients.service.IClientEventPublisher.RejectedEventsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Relays the client outbox to the event publisher, in batches.
+ * <p>
+ * The events are read in id order, published, then deleted: an event is published at least once, and a batch
+ * failing to publish is retried as a whole before any later event, which keeps the order of the changes of each
+ * client. The consumers skip the events they already applied by their id.
+ * <p>
+ * A batch the consumer rejects for good (a 4xx) is published again one event at a time: the rejected events are
+ * moved to the client_outbox_dead_letter table instead of being retried forever, the others are relayed in order.
+ */
+@Service
+public class ClientOutboxRelay {
+
+    private final Logger log = LoggerFactory.getLogger(ClientOutboxRelay.class);
+
+    private final ClientOutboxRepository outboxRepository;
+
+    private final ClientOutboxDeadLetterRepository deadLetterRepository;
+
+    private final IClientEventPublisher publisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter relayed;
+
+    private final Counter deadLettered;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final long pollIntervalMs;
+
+    private final long retryDelayMs;
+
+    /**
+     * Age of the oldest event read by the last poll, 0 when the outbox was empty.
+     */
+    private volatile long lagMs;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    public ClientOutboxRelay(ClientOutboxRepository outboxRepository, ClientOutboxDeadLetterRepository deadLetterRepository,
+                             IClientEventPublisher publisher, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                             @Value("${client-outbox.relay.enabled:true}") boolean enabled,
+                             @Value("${client-outbox.relay.batch-size:500}") int batchSize,
+                             @Value("${client-outbox.relay.poll-interval-ms:200}") long pollIntervalMs,
+                             @Value("${client-outbox.relay.retry-delay-ms:5000}") long retryDelayMs) {
+        this.outboxRepository = outboxRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retryDelayMs = retryDelayMs;
+        this.relayed = Counter.builder("client.outbox.relayed").description("Client events published from the outbox")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("client.outbox.dead-lettered")
+                .description("Client events rejected by the consumer, moved to the dead letter table").register(meterRegistry);
+        Gauge.builder("client.outbox.lag", this, relay -> relay.lagMs / 1000.0).baseUnit("seconds")
+                .description("Age of the oldest client event not published yet").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (enabled && thread == null) {
+            running = true;
+            thread = new Thread(this::relay, "client-outbox-relay");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread relay;
+        synchronized (this) {
+            relay = thread;
+        }
+        if (relay != null) {
+            relay.join(10_000L);
+        }
+    }
+
+    /**
+     * Publish and delete the oldest batch of the outbox.
+     * @return the number of events published.
+     */
+    public int relayBatch() {
+        List<ClientOutboxEvent> events = outboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+        lagMs = events.isEmpty() ? 0L : Math.max(System.currentTimeMillis() - events.get(0).getCreatedAt().getTime(), 0L);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        try {
+            publisher.publish(events.stream().map(ClientEventDto::new).collect(Collectors.toList()));
+        } catch (RejectedEventsException e) {
+            return relayOneByOne(events);
+        }
+        List<Long> ids = events.stream().map(ClientOutboxEvent::getId).collect(Collectors.toList());
+        transactionTemplate.executeWithoutResult(status -> outboxRepository.deleteByIdIn(ids));
+        relayed.increment(events.size());
+        return events.size();
+    }
+
+    /**
+     * Publish the events of a rejected batch one by one, dead-lettering the rejected ones. Any other failure stops
+     * there, the events left being retried in order.
+     * @return the number of events handled, published or dead-lettered.
+     */
+    private int relayOneByOne(List<ClientOutboxEvent> events) {
+        int handled = 0;
+        for (ClientOutboxEvent event : events) {
+            List<Long> id = Collections.singletonList(event.getId());
+            try {
+                publisher.publish(Collections.singletonList(new ClientEventDto(event)));
+                transactionTemplate.executeWithoutResult(status -> outboxRepository.deleteByIdIn(id));
+                relayed.increment();
+            } catch (RejectedEventsException e) {
+                log.error("Client event {} of client {} rejected, moved to the dead letter table: {}", event.getId(),
+                        event.getClientId(), e.getMessage());
+                transactionTemplate.executeWithoutResult(status -> {
+                    deadLetterRepository.save(new ClientOutboxDeadLetter(event, e.getMessage()));
+                    outboxRepository.deleteByIdIn(id);
+                });
+                deadLettered.increment();
+            }
+            handled++;
+        }
+        return handled;
+    }
+
+    /**
+     * @return the age in milliseconds of the oldest event read by the last poll.
+     */
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    private void relay() {
+        log.info("Relaying the client outbox");
+        while (running) {
+            try {
+                if (relayBatch() < batchSize) {
+                    TimeUnit.MILLISECONDS.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // nothing was deleted: the same batch is published again
+                log.warn("Could not relay the client outbox, retrying in {} ms: {}", retryDelayMs, e.toString());
+                sleep(retryDelayMs);
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package ma.hero.clients.service.impl;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.clients.api.feign.SaleFeedClient;
+import ma.hero.clients.domain.ClientSale;
+import ma.hero.clients.domain.ClientSaleTotals;
+import ma.hero.clients.domain.SaleProjectionState;
+import ma.hero.clients.dto.SaleChangeDto;
+import ma.hero.clients.dto.SaleChangePageDto;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.repository.ClientSaleRepository;
+import ma.hero.clients.repository.ClientSaleTotalsRepository;
+import ma.hero.clients.repository.SaleProjectionStateRepository;
+import ma.hero.clients.service.IClientSalesProjectionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation of the local sales read model.
+ * <p>
+ * A daemon thread reads the sale change log after the last applied token and applies each batch in one transaction
+ * with the new token: the before image of a change is taken off the totals of its client and the after image added,
+ * and the rows of the changed sales are replaced by their last image in the window, one select of the totals, one
+ * delete and one JDBC batch per table. When a batch is incomplete the log is caught up and the watermark moves to the
+ * time the batch was asked for. The projection is rebuilt from the beginning of the log when it has no position yet
+ * or when the log was compacted past its token. The rows older than the window are pruned periodically.
+ * Off unless client-sales-projection.enabled is set.
+ */
+@Service
+public class ClientSalesProjection implements IClientSalesProjectionService {
+
+    static final String STATE = "sale-changes";
+
+    private final Logger log = LoggerFactory.getLogger(ClientSalesProjection.class);
+
+    private final SaleFeedClient saleFeedClient;
+
+    private final ClientSaleRepository saleRepository;
+
+    private final ClientSaleTotalsRepository totalsRepository;
+
+    private final SaleProjectionStateRepository stateRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final int recentDays;
+
+    private final long maxLagMs;
+
+    private final long pollIntervalMs;
+
+    private final long retryDelayMs;
+
+    private final long pruneIntervalMs;
+
+    private volatile long watermark;
+
+    private volatile boolean running;
+
+    private long lastPrune;
+
+    private Thread thread;
+
+    public ClientSalesProjection(SaleFeedClient saleFeedClient, ClientSaleRepository saleRepository,
+                                 ClientSaleTotalsRepository totalsRepository, SaleProjectionStateRepository stateRepository,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                 @Value("${client-sales-projection.enabled:false}") boolean enabled,
+                                 @Value("${client-sales-projection.batch-size:1000}") int batchSize,
+                                 @Value("${client-sales-projection.recent-days:90}") int recentDays,
+                                 @Value("${client-sales-projection.max-lag-ms:5000}") long maxLagMs,
+                                 @Value("${client-sales-projection.poll-interval-ms:500}") long pollIntervalMs,
+                                 @Value("${client-sales-projection.retry-delay-ms:5000}") long retryDelayMs,
+                                 @Value("${client-sales-projection.prune-interval-ms:3600000}") long pruneIntervalMs) {
+        this.saleFeedClient = saleFeedClient;
+        this.saleRepository = saleRepository;
+        this.totalsRepository = totalsRepository;
+        this.stateRepository = stateRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.recentDays = recentDays;
+        this.maxLagMs = maxLagMs;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retryDelayMs = retryDelayMs;
+        this.pruneIntervalMs = pruneIntervalMs;
+        Gauge.builder("client.sales.projection.lag", this,
+                projection -> projection.watermark == 0 ? Double.NaN : projection.lagMs() / 1000.0).baseUnit("seconds")
+                .description("Time since the sales projection was last caught up with the sale change log").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (enabled && thread == null) {
+            running = true;
+            thread = new Thread(this::follow, "client-sales-projection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread follower;
+        synchronized (this) {
+            follower = thread;
+        }
+        if (follower != null) {
+            follower.join(10_000L);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public int sync() {
+        long asked = System.currentTimeMillis();
+        SaleProjectionState state = stateRepository.findById(STATE).orElse(null);
+        if (state == null) {
+            reset();
+            state = new SaleProjectionState(STATE, null);
+        }
+        SaleChangePageDto page;
+        try {
+            page = saleFeedClient.getChanges(state.getToken(), batchSize);
+        } catch (FeignException.Gone e) {
+            log.warn("The sale change log was compacted past the sales projection, rebuilding it");
+            reset();
+            return 0;
+        }
+        List<SaleChangeDto> changes = page.getChanges();
+        if (!changes.isEmpty()) {
+            Date windowStart = toDate(getWindowStart());
+            transactionTemplate.executeWithoutResult(status -> apply(changes, page.getNext(), windowStart));
+        }
+        if (changes.size() < batchSize) {
+            watermark = asked;
+        }
+        return changes.size();
+    }
+
+    @Override
+    public Date getFreshWatermark() {
+        // a rebuild resets the watermark concurrently: read once
+        long caughtUp = watermark;
+        return caughtUp > 0 && System.currentTimeMillis() - caughtUp <= maxLagMs ? new Date(caughtUp) : null;
+    }
+
+    @Override
+    public Date getWatermark() {
+        long caughtUp = watermark;
+        return caughtUp == 0 ? null : new Date(caughtUp);
+    }
+
+    @Override
+    public LocalDate getWindowStart() {
+        return LocalDate.now(ZoneOffset.UTC).minusDays(recentDays);
+    }
+
+    @Override
+    public List<SaleDto> getRecentSales(Long clientId) {
+        return saleRepository.findByClientIdAndOperationDateGreaterThanEqualOrderByOperationDateDescSaleIdDesc(clientId,
+                toDate(getWindowStart())).stream().map(ClientSalesProjection::toDto).collect(Collectors.toList());
+    }
+
+    @Override
+    public SaleTotalsDto getClientTotals(Long clientId) {
+        SaleTotalsDto dto = new SaleTotalsDto();
+        dto.setClientId(clientId);
+        totalsRepository.findById(clientId).ifPresent(totals -> {
+            dto.setCount(totals.getSaleCount());
+            dto.setQuantity(totals.getQuantity());
+            dto.setAmount(totals.getAmount());
+        });
+        return dto;
+    }
+
+    private void apply(List<SaleChangeDto> changes, String next, Date windowStart) {
+        Set<Long> clientIds = new HashSet<>();
+        for (SaleChangeDto change : changes) {
+            addClientId(clientIds, change.getBefore());
+            addClientId(clientIds, change.getAfter());
+        }
+        Map<Long, ClientSaleTotals> totals = new HashMap<>();
+        totalsRepository.findAllById(clientIds).forEach(clientTotals -> totals.put(clientTotals.getClientId(), clientTotals));
+        Map<Long, ClientSaleTotals> changed = new LinkedHashMap<>();
+        // the last image of each changed sale in the window, null if it left the projection
+        Map<Long, ClientSale> recent = new LinkedHashMap<>();
+        Set<Long> replaced = new HashSet<>();
+        for (SaleChangeDto change : changes) {
+            addToTotals(totals, changed, change.getBefore(), -1);
+            addToTotals(totals, changed, change.getAfter(), 1);
+            if (change.getBefore() != null) {
+                replaced.add(change.getSaleId());
+            }
+            SaleDto sale = change.getAfter();
+            boolean inWindow = sale != null && sale.getClientId() != null && sale.getOperationDate() != null
+                    && !sale.getOperationDate().before(windowStart);
+            recent.put(change.getSaleId(), inWindow ? new ClientSale(change.getSaleId(), sale.getClientId(), sale.getProductCode(),
+                    sale.getOperationDate(), sale.getQuantity(), sale.getAmount()) : null);
+        }
+        if (!replaced.isEmpty()) {
+            saleRepository.deleteBySaleIdIn(replaced);
+        }
+        saleRepository.saveAll(recent.values().stream().filter(Objects::nonNull).collect(Collectors.toList()));
+        totalsRepository.saveAll(changed.values());
+        stateRepository.save(new SaleProjectionState(STATE, next));
+    }
+
+    /**
+     * Empty the projection, to read the change log again from the beginning.
+     */
+    private void reset() {
+        watermark = 0;
+        transactionTemplate.executeWithoutResult(status -> {
+            saleRepository.deleteAllInBatch();
+            totalsRepository.deleteAllInBatch();
+            stateRepository.save(new SaleProjectionState(STATE, null));
+        });
+    }
+
+    private static void addClientId(Set<Long> clientIds, SaleDto sale) {
+        if (sale != null && sale.getClientId() != null) {
+            clientIds.add(sale.getClientId());
+        }
+    }
+
+    private static void addToTotals(Map<Long, ClientSaleTotals> totals, Map<Long, ClientSaleTotals> changed, SaleDto sale, int sign) {
+        if (sale == null || sale.getClientId() == null) {
+            return;
+        }
+        ClientSaleTotals clientTotals = totals.computeIfAbsent(sale.getClientId(), ClientSaleTotals::new);
+        clientTotals.setSaleCount(clientTotals.getSaleCount() + sign);
+        clientTotals.setQuantity(clientTotals.getQuantity() + sign * (sale.getQuantity() == null ? 0L : sale.getQuantity()));
+        clientTotals.setAmount(clientTotals.getAmount() + sign * (sale.getAmount() == null ? 0D : sale.getAmount()));
+        changed.put(clientTotals.getClientId(), clientTotals);
+    }
+
+    private void follow() {
+        log.info("Following the sale change log");
+        while (running) {
+            try {
+                if (sync() < batchSize) {
+                    prune();
+                    TimeUnit.MILLISECONDS.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // the token did not move: the same batch is read again
+                log.warn("Could not sync the sales projection, retrying in {} ms: {}", retryDelayMs, e.toString());
+                sleep(retryDelayMs);
+            }
+        }
+    }
+
+    private void prune() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune >= pruneIntervalMs) {
+            lastPrune = now;
+            Date windowStart = toDate(getWindowStart());
+            int pruned = transactionTemplate.execute(status -> saleRepository.deleteByOperationDateBefore(windowStart));
+            log.debug("{} sales older than {} pruned from the projection", pruned, windowStart);
+        }
+    }
+
+    private long lagMs() {
+        return watermark == 0 ? 0L : Math.max(System.currentTimeMillis() - watermark, 0L);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private static SaleDto toDto(ClientSale sale) {
+        SaleDto dto = new SaleDto();
+        dto.setId(sale.getSaleId());
+        dto.setClientId(sale.getClientId());
+        dto.setProductCode(sale.getProductCode());
+        dto.setOperationDate(sale.getOperationDate());
+        dto.setQuantity(sale.getQuantity());
+        dto.setAmount(sale.getAmount());
+        return dto;
+    }
+}
@@ -0,0 +1,303 @@
+package ma.hero.clients.service.impl;
+
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.repository.ClientRepository;
+import ma.hero.clients.service.IClientSearchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Service Implementation searching the clients in memory.
+ * <p>
+ * Every client is kept as a copy, with its normalized email and first and last names in sorted maps: an email is
+ * found by an exact lookup and a name prefix by a range scan, both in O(log n) whatever the number of clients. The
+ * keys end with the client id so that homonyms do not collide. The index is loaded in the background when the
+ * application starts and kept in sync by {@link ClientService} after each commit; until it is loaded, or with
+ * client-search.in-memory=false, the search is run against the indexed email and name columns.
+ */
+@Service
+public class ClientSearchService implements IClientSearchService {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private final Logger log = LoggerFactory.getLogger(ClientSearchService.class);
+
+    private final ClientRepository clientRepository;
+
+    private final boolean inMemory;
+
+    private final int loadBatchSize;
+
+    private final int maxLimit;
+
+    private final ConcurrentMap<Long, Client> clients = new ConcurrentHashMap<>();
+
+    private final ConcurrentNavigableMap<String, Long> emails = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentNavigableMap<String, Long> names = new ConcurrentSkipListMap<>();
+
+    /**
+     * Clients deleted or patched while the index is loading: the loader may have read them before the change, they
+     * are skipped and read again at the end.
+     */
+    private final Set<Long> changedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loaded;
+
+    public ClientSearchService(ClientRepository clientRepository,
+                               @Value("${client-search.in-memory:true}") boolean inMemory,
+                               @Value("${client-search.load-batch-size:5000}") int loadBatchSize,
+                               @Value("${client-search.max-limit:100}") int maxLimit) {
+        this.clientRepository = clientRepository;
+        this.inMemory = inMemory;
+        this.loadBatchSize = loadBatchSize;
+        this.maxLimit = maxLimit;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!inMemory) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "client-search-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Load all the clients in the index, by batches in id order.
+     */
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            Long lastId = 0L;
+            List<Client> batch;
+            do {
+                batch = clientRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, loadBatchSize));
+                for (Client client : batch) {
+                    indexLoaded(client);
+                    lastId = client.getId();
+                }
+            } while (batch.size() == loadBatchSize);
+            Set<Long> changed;
+            while (!(changed = takeChangedWhileLoading()).isEmpty()) {
+                clientRepository.findAllById(changed).forEach(this::indexLoaded);
+            }
+            log.info("Client search index loaded: {} clients in {} ms", clients.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            changedWhileLoading.clear();
+            log.warn("Could not load the client search index, searching the database instead", e);
+        }
+    }
+
+    @Override
+    public List<Client> search(String query, int limit) {
+        String key = normalize(query);
+        int max = Math.max(1, Math.min(limit, maxLimit));
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (!loaded) {
+            return searchDatabase(query.trim(), key.indexOf('@') >= 0, max);
+        }
+        if (key.indexOf('@') >= 0) {
+            return lookup(emails.subMap(key + SEPARATOR, key + (char) (SEPARATOR + 1)), max);
+        }
+        return lookup(names.subMap(key, key + Character.MAX_VALUE), max);
+    }
+
+    /**
+     * Index a client, unless a newer version was indexed already: the after-commit calls of two updates of a client
+     * may come in any order.
+     */
+    @Override
+    public synchronized void index(Client client) {
+        if (!inMemory || client.getId() == null) {
+            return;
+        }
+        Client previous = clients.get(client.getId());
+        if (previous != null && previous.getVersion() != null && client.getVersion() != null
+                && previous.getVersion() > client.getVersion()) {
+            return;
+        }
+        if (previous != null) {
+            unindex(previous);
+        }
+        Client snapshot = copy(client);
+        clients.put(snapshot.getId(), snapshot);
+        put(emails, snapshot.getEmail(), snapshot.getId());
+        put(names, snapshot.getFirstName(), snapshot.getId());
+        put(names, snapshot.getLastName(), snapshot.getId());
+    }
+
+    @Override
+    public synchronized void remove(Long id) {
+        if (!inMemory) {
+            return;
+        }
+        if (!loaded) {
+            changedWhileLoading.add(id);
+        }
+        Client previous = clients.remove(id);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    /**
+     * Apply a patch to the indexed copy of a client when it is the version the patch was made on. Otherwise the
+     * after-commit call of an earlier change has not indexed it yet, and the client is read again instead.
+     */
+    @Override
+    public void patch(Long id, Long version, Client changes, Set<String> fields) {
+        if (inMemory && !patchIndexed(id, version, changes, fields)) {
+            clientRepository.findById(id).ifPresent(this::index);
+        }
+    }
+
+    /**
+     * @return false if the indexed copy is missing or older than the version the patch was made on.
+     */
+    private synchronized boolean patchIndexed(Long id, Long version, Client changes, Set<String> fields) {
+        if (!loaded) {
+            changedWhileLoading.add(id);
+        }
+        Client current = clients.get(id);
+        if (current == null || current.getVersion() == null || current.getVersion() < version - 1) {
+            return false;
+        }
+        if (current.getVersion() >= version) {
+            // the patched version or a later one is indexed already
+            return true;
+        }
+        Client patched = copy(current);
+        if (fields.contains("firstName")) {
+            patched.setFirstName(changes.getFirstName());
+        }
+        if (fields.contains("lastName")) {
+            patched.setLastName(changes.getLastName());
+        }
+        if (fields.contains("email")) {
+            patched.setEmail(changes.getEmail());
+        }
+        if (fields.contains("address")) {
+            patched.setAddress(changes.getAddress());
+        }
+        patched.setVersion(version);
+        index(patched);
+        return true;
+    }
+
+    /**
+     * @return the clients changed since the last call, none once the index is loaded.
+     */
+    private synchronized Set<Long> takeChangedWhileLoading() {
+        if (changedWhileLoading.isEmpty()) {
+            loaded = true;
+            return Collections.emptySet();
+        }
+        Set<Long> changed = new HashSet<>(changedWhileLoading);
+        changedWhileLoading.removeAll(changed);
+        return changed;
+    }
+
+    /**
+     * Index a client read by the loader, unless a newer version was indexed or it was changed meanwhile.
+     */
+    private synchronized void indexLoaded(Client client) {
+        if (changedWhileLoading.contains(client.getId())) {
+            return;
+        }
+        Client current = clients.get(client.getId());
+        if (current != null && current.getVersion() != null && client.getVersion() != null
+                && current.getVersion() >= client.getVersion()) {
+            return;
+        }
+        index(client);
+    }
+
+    private List<Client> lookup(Map<String, Long> matches, int limit) {
+        Set<Long> ids = new LinkedHashSet<>();
+        List<Client> found = new ArrayList<>(Math.min(limit, 16));
+        for (Long id : matches.values()) {
+            if (found.size() == limit) {
+                break;
+            }
+            Client client = clients.get(id);
+            // a client matching by both names is returned once
+            if (client != null && ids.add(id)) {
+                found.add(copy(client));
+            }
+        }
+        return found;
+    }
+
+    private List<Client> searchDatabase(String query, boolean email, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        if (email) {
+            return clientRepository.findByEmail(query, page);
+        }
+        String prefix = query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return clientRepository.findByNamePrefix(prefix, page);
+    }
+
+    private void unindex(Client client) {
+        remove(emails, client.getEmail(), client.getId());
+        remove(names, client.getFirstName(), client.getId());
+        remove(names, client.getLastName(), client.getId());
+    }
+
+    private static void put(Map<String, Long> index, String value, Long id) {
+        String key = normalize(value);
+        if (!key.isEmpty()) {
+            index.put(key + SEPARATOR + id, id);
+        }
+    }
+
+    private static void remove(Map<String, Long> index, String value, Long id) {
+        String key = normalize(value);
+        if (!key.isEmpty()) {
+            index.remove(key + SEPARATOR + id);
+        }
+    }
+
+    /**
+     * Lower case, without accents nor surrounding spaces.
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+        return ACCENTS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static Client copy(Client client) {
+        Client copy = new Client(client.getFirstName(), client.getLastName(), client.getEmail(), client.getAddress());
+        copy.setId(client.getId());
+        copy.setVersion(client.getVersion());
+        return copy;
+    }
+}
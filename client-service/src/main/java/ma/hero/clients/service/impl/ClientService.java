@@ -1,14 +1,36 @@
 package ma.hero.clients.service.impl;
 
+import ma.hero.clients.repository.ClientOutboxRepository;
 import ma.hero.clients.repository.ClientRepository;
 import ma.hero.clients.domain.Client;
+import ma.hero.clients.domain.ClientOutboxEvent;
+import ma.hero.clients.dto.ClientPageDto;
+import ma.hero.clients.service.IClientSearchService;
 import ma.hero.clients.service.IClientService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Service Implementation for managing {@link Client}.
@@ -21,8 +43,42 @@ public class ClientService implements IClientService {
 
     private final ClientRepository clientRepository;
 
-    public ClientService(ClientRepository clientRepository) {
+    /**
+     * The fields a page of clients can return.
+     */
+    private static final List<String> FIELDS = Arrays.asList("id", "firstName", "lastName", "email", "address", "version");
+
+    /**
+     * The fields a page of clients can be sorted by, each backed by an index ending with the id.
+     */
+    private static final List<String> SORTS = Arrays.asList("id", "lastName", "email");
+
+    private static final String TOKEN_SEPARATOR = "\n";
+
+    private final IClientSearchService clientSearchService;
+
+    private final ClientOutboxRepository outboxRepository;
+
+    private final int defaultLimit;
+
+    private final int maxLimit;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int deleteChunkSize;
+
+    public ClientService(ClientRepository clientRepository, IClientSearchService clientSearchService,
+                         ClientOutboxRepository outboxRepository, PlatformTransactionManager transactionManager,
+                         @Value("${client-list.default-limit:50}") int defaultLimit,
+                         @Value("${client-list.max-limit:500}") int maxLimit,
+                         @Value("${client-delete.chunk-size:500}") int deleteChunkSize) {
         this.clientRepository = clientRepository;
+        this.clientSearchService = clientSearchService;
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.deleteChunkSize = deleteChunkSize;
     }
 
     /**
@@ -33,7 +89,10 @@ public class ClientService implements IClientService {
     @Override
     public Client createClient(Client client) {
         log.debug("Request to save Client : {}", client);
-        return clientRepository.save(client);
+        Client saved = clientRepository.save(client);
+        outbox(ClientOutboxEvent.Type.CREATED, saved.getId(), saved.getVersion());
+        afterCommit(() -> clientSearchService.index(saved));
+        return saved;
     }
 
     /**
@@ -53,18 +112,106 @@ public class ClientService implements IClientService {
         return clientRepository.findAll();
     }
 
+    /**
+     * Get one page of clients.
+     * One more client than the limit is read to know whether a next page exists; the token of the next page holds
+     * the sort value and the id of the last client returned.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ClientPageDto getClients(List<String> fields, String sort, String pageToken, int limit) {
+        log.debug("Request to get a page of Clients sorted by {}", sort);
+        List<String> requested = fields == null || fields.isEmpty() ? FIELDS : fields;
+        for (String field : requested) {
+            if (!FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+        if (!SORTS.contains(sort)) {
+            throw new IllegalArgumentException("Cannot sort by " + sort);
+        }
+        int size = limit <= 0 ? defaultLimit : Math.min(limit, maxLimit);
+
+        Long afterId = null;
+        String afterValue = null;
+        if (pageToken != null && !pageToken.isEmpty()) {
+            String[] token = decodeToken(pageToken);
+            if (!sort.equals(token[0])) {
+                throw new IllegalArgumentException("Page token of another sort " + token[0]);
+            }
+            afterId = Long.valueOf(token[1]);
+            afterValue = token.length > 2 ? token[2] : null;
+        }
+
+        List<Map<String, Object>> clients = clientRepository.findPage(requested, sort, afterValue, afterId, size + 1);
+        String next = null;
+        if (clients.size() > size) {
+            clients = clients.subList(0, size);
+            Map<String, Object> last = clients.get(size - 1);
+            next = encodeToken(sort, last.get("id"), last.get(sort));
+        }
+        // the id and the sort value are read for the keyset only
+        clients.forEach(client -> client.keySet().retainAll(requested));
+        return new ClientPageDto(clients, next);
+    }
+
     /**
      * Update a client.
+     * The changes are copied on the current entity, so a client sent without its version is still updated.
      * @param client the entity to update.
      * @return the updated entity.
      */
     @Override
     public Client updateClient(Client client) {
         log.debug("Request to update Client : {}", client);
-        if (!clientRepository.existsById(client.getId())) {
+        Client existing = clientRepository.findById(client.getId()).orElse(null);
+        if (existing == null) {
             return null;
         }
-        return clientRepository.save(client);
+        if (client.getVersion() != null && !client.getVersion().equals(existing.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Client.class, client.getId());
+        }
+        existing.setFirstName(client.getFirstName());
+        existing.setLastName(client.getLastName());
+        existing.setEmail(client.getEmail());
+        existing.setAddress(client.getAddress());
+        // flushed for the new version of the event
+        clientRepository.flush();
+        outbox(ClientOutboxEvent.Type.UPDATED, existing.getId(), existing.getVersion());
+        // indexed once committed, with its new version
+        afterCommit(() -> clientSearchService.index(existing));
+        return existing;
+    }
+
+    /**
+     * Update some fields of a client.
+     * The affected row count of the conditional UPDATE tells the outcome; the client is looked up only when no row
+     * was updated with an expected version, to tell a conflict from a missing client.
+     * @param id the id of the client.
+     * @param version the version the client must have, null to patch whatever the version.
+     * @param changes the new values of the fields.
+     * @param fields the names of the fields to update.
+     * @return false if the client does not exist.
+     */
+    @Override
+    public boolean patchClient(Long id, Long version, Client changes, Set<String> fields) {
+        log.debug("Request to patch Client {} : {}", id, fields);
+        if (version == null) {
+            throw new IllegalArgumentException("The version of the client is required");
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, patchedValue(changes, field));
+        }
+        if (clientRepository.patch(id, version, values) == 0) {
+            if (clientRepository.existsById(id)) {
+                throw new ObjectOptimisticLockingFailureException(Client.class, id);
+            }
+            return false;
+        }
+        outbox(ClientOutboxEvent.Type.UPDATED, id, version + 1);
+        afterCommit(() -> clientSearchService.patch(id, version + 1, changes, fields));
+        return true;
     }
 
     /**
@@ -74,6 +221,88 @@ public class ClientService implements IClientService {
     @Override
     public void deleteClient(Long id) {
         log.debug("Request to delete Client : {}", id);
-        clientRepository.deleteById(id);
+        Client existing = clientRepository.findById(id).orElseThrow(() -> new EmptyResultDataAccessException(
+                String.format("No %s entity with id %s exists!", Client.class, id), 1));
+        clientRepository.delete(existing);
+        outbox(ClientOutboxEvent.Type.DELETED, id, existing.getVersion());
+        afterCommit(() -> clientSearchService.remove(id));
+    }
+
+    /**
+     * Delete clients by id, by chunks of the configured size, each chunk in its own transaction so that row locks
+     * are held for one chunk only.
+     * @param ids the ids of the entities, unknown ones are ignored.
+     * @return the number of clients deleted.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long deleteClients(Collection<Long> ids) {
+        log.debug("Request to delete {} Clients", ids.size());
+        // sorted, so that concurrent bulk deletes lock the rows in the same order
+        List<Long> sorted = new ArrayList<>(new TreeSet<>(ids));
+        long deleted = 0;
+        for (int from = 0; from < sorted.size(); from += deleteChunkSize) {
+            List<Long> chunk = sorted.subList(from, Math.min(from + deleteChunkSize, sorted.size()));
+            deleted += transactionTemplate.execute(status -> {
+                // the events of the clients that exist, before they are deleted
+                outboxRepository.insertDeletedEvents(chunk, new Date());
+                int count = clientRepository.deleteByIdIn(chunk);
+                afterCommit(() -> chunk.forEach(clientSearchService::remove));
+                return count;
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Write the event of a change in the outbox, in the transaction of the change.
+     */
+    private void outbox(ClientOutboxEvent.Type type, Long clientId, Long version) {
+        outboxRepository.save(new ClientOutboxEvent(clientId, type, version));
+    }
+
+    private static Object patchedValue(Client changes, String field) {
+        switch (field) {
+            case "firstName":
+                return changes.getFirstName();
+            case "lastName":
+                return changes.getLastName();
+            case "email":
+                return changes.getEmail();
+            case "address":
+                return changes.getAddress();
+            default:
+                throw new IllegalArgumentException("The field " + field + " cannot be patched");
+        }
+    }
+
+    private static String encodeToken(String sort, Object id, Object value) {
+        String token = sort + TOKEN_SEPARATOR + id + ("id".equals(sort) || value == null ? "" : TOKEN_SEPARATOR + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeToken(String pageToken) {
+        String[] token = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8).split(TOKEN_SEPARATOR, 3);
+        if (token.length < 2) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        return token;
+    }
+
+    /**
+     * Run the action once the current transaction is committed, so that the search index never shows a rolled back
+     * change.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
@@ -0,0 +1,165 @@
+package ma.hero.clients.service.impl;
+
+import ma.hero.clients.api.feign.SaleClient;
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientSummaryDto;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.service.IClientService;
+import ma.hero.clients.service.IClientSummaryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation building the client summary.
+ * <p>
+ * The client lookup and the two sales service calls run on a dedicated bounded pool, each with its own timeout.
+ * A full pool rejects the call instead of queuing it without limit; a rejected or late sales call only makes the
+ * summary partial.
+ */
+@Service
+public class ClientSummaryService implements IClientSummaryService, DisposableBean {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private final Logger log = LoggerFactory.getLogger(ClientSummaryService.class);
+
+    private final IClientService clientService;
+
+    private final SaleClient saleClient;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final long clientTimeoutMs;
+
+    private final long salesTimeoutMs;
+
+    private final int recentDays;
+
+    private final int recentLimit;
+
+    public ClientSummaryService(IClientService clientService, SaleClient saleClient,
+                                @Value("${client-summary.threads:16}") int threads,
+                                @Value("${client-summary.queue-capacity:256}") int queueCapacity,
+                                @Value("${client-summary.client-timeout-ms:500}") long clientTimeoutMs,
+                                @Value("${client-summary.sales-timeout-ms:1000}") long salesTimeoutMs,
+                                @Value("${client-summary.recent-days:30}") int recentDays,
+                                @Value("${client-summary.recent-limit:20}") int recentLimit) {
+        this.clientService = clientService;
+        this.saleClient = saleClient;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("client-summary"), new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("client-summary-timer"));
+        this.clientTimeoutMs = clientTimeoutMs;
+        this.salesTimeoutMs = salesTimeoutMs;
+        this.recentDays = recentDays;
+        this.recentLimit = recentLimit;
+    }
+
+    @Override
+    public CompletableFuture<ClientSummaryDto> getClientSummary(Long id) {
+        log.debug("Request to get the summary of Client : {}", id);
+        String from = DAY_FORMAT.format(LocalDate.now(ZoneOffset.UTC).minusDays(recentDays));
+        CompletableFuture<Client> client = call(() -> clientService.getClient(id), clientTimeoutMs, "client");
+        CompletableFuture<List<SaleDto>> recentSales = call(() -> saleClient.getClientSalesSince(id, from), salesTimeoutMs,
+                ClientSummaryDto.RECENT_SALES);
+        CompletableFuture<SaleTotalsDto> totals = call(() -> saleClient.getClientTotals(id), salesTimeoutMs, ClientSummaryDto.TOTALS);
+
+        return CompletableFuture.allOf(client, recentSales, totals).handle((ignored, failure) -> {
+            // the client is required, the sales parts are optional
+            Client found = client.join();
+            if (found == null) {
+                return null;
+            }
+            ClientSummaryDto summary = new ClientSummaryDto();
+            summary.setClient(found);
+            if (isAvailable(recentSales, id, ClientSummaryDto.RECENT_SALES)) {
+                summary.setRecentSales(latest(recentSales.join()));
+            } else {
+                summary.getUnavailable().add(ClientSummaryDto.RECENT_SALES);
+            }
+            if (isAvailable(totals, id, ClientSummaryDto.TOTALS)) {
+                summary.setTotals(totals.join());
+            } else {
+                summary.getUnavailable().add(ClientSummaryDto.TOTALS);
+            }
+            return summary;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> supplier, long timeoutMs, String dependency) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        CompletableFuture<T> result = future;
+        ScheduledFuture<?> timeout = timer.schedule(() -> result.completeExceptionally(
+                new TimeoutException(dependency + " did not answer within " + timeoutMs + " ms")), timeoutMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, failure) -> timeout.cancel(false));
+        return result;
+    }
+
+    private boolean isAvailable(CompletableFuture<?> future, Long id, String dependency) {
+        if (!future.isCompletedExceptionally()) {
+            return true;
+        }
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            log.warn("{} of client {} unavailable: {}", dependency, id, e.getCause() == null ? e : e.getCause().toString());
+        }
+        return false;
+    }
+
+    private List<SaleDto> latest(List<SaleDto> sales) {
+        return sales.stream()
+                .sorted(Comparator.comparing(SaleDto::getOperationDate, Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(recentLimit)
+                .collect(Collectors.toList());
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package ma.hero.clients.service.impl;
+
+import feign.FeignException;
+import ma.hero.clients.api.feign.ClientEventClient;
+import ma.hero.clients.dto.ClientEventDto;
+import ma.hero.clients.service.IClientEventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Publishes the client changes to the bulk endpoint of the sales service.
+ */
+@Service
+@ConditionalOnProperty(prefix = "client-outbox", name = "publisher", havingValue = "http", matchIfMissing = true)
+public class HttpClientEventPublisher implements IClientEventPublisher {
+
+    private final Logger log = LoggerFactory.getLogger(HttpClientEventPublisher.class);
+
+    private final ClientEventClient clientEventClient;
+
+    public HttpClientEventPublisher(ClientEventClient clientEventClient) {
+        this.clientEventClient = clientEventClient;
+    }
+
+    @Override
+    public void publish(List<ClientEventDto> events) {
+        int applied;
+        try {
+            applied = clientEventClient.postClientEvents(events);
+        } catch (FeignException e) {
+            if (isRejection(e.status())) {
+                throw new RejectedEventsException("The sales service rejected the events: " + e.getMessage(), e);
+            }
+            throw e;
+        }
+        log.debug("{} client events published, {} applied by the sales service", events.size(), applied);
+    }
+
+    /**
+     * A client error, except a timeout or a rate limit which a later retry can get through.
+     */
+    private static boolean isRejection(int status) {
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+}
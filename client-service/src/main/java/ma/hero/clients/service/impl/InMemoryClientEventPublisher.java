@@ -0,0 +1,44 @@
+package ma.hero.clients.service.impl;
+
+import ma.hero.clients.dto.ClientEventDto;
+import ma.hero.clients.service.IClientEventPublisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * In-process stand-in of a broker: the events are kept in a bounded queue until a local consumer drains them.
+ * A full queue fails the publication, so the relay keeps the events in the outbox and retries later.
+ */
+@Service
+@ConditionalOnProperty(prefix = "client-outbox", name = "publisher", havingValue = "in-memory")
+public class InMemoryClientEventPublisher implements IClientEventPublisher {
+
+    private final BlockingQueue<ClientEventDto> queue;
+
+    public InMemoryClientEventPublisher(@Value("${client-outbox.in-memory.capacity:10000}") int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public synchronized void publish(List<ClientEventDto> events) {
+        if (queue.remainingCapacity() < events.size()) {
+            throw new IllegalStateException("No room for " + events.size() + " client events");
+        }
+        queue.addAll(events);
+    }
+
+    /**
+     * @return the published events not drained yet, in order, at most max of them.
+     */
+    public List<ClientEventDto> drain(int max) {
+        List<ClientEventDto> events = new ArrayList<>();
+        queue.drainTo(events, max);
+        return events;
+    }
+}
@@ -2,7 +2,15 @@ package ma.hero.clients.api;
 
 import com.google.gson.Gson;
 import ma.hero.clients.config.WithMockOAuth2Context;
+import ma.hero.clients.api.feign.SaleClient;
 import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientPageDto;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.ClientImportDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.service.IClientImportService;
+import ma.hero.clients.service.IClientSalesProjectionService;
+import ma.hero.clients.service.IClientSearchService;
 import ma.hero.clients.service.impl.ClientService;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -15,6 +23,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -23,13 +32,25 @@ import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -46,6 +67,14 @@ public class ClientControllerTest {
     private ClientController controller;
     @MockBean
     private ClientService service;
+    @MockBean
+    private SaleClient saleClient;
+    @MockBean
+    private IClientSearchService searchService;
+    @MockBean
+    private IClientImportService importService;
+    @MockBean
+    private IClientSalesProjectionService salesProjection;
 
     private final Gson gson = new Gson();
 
@@ -57,11 +86,56 @@ public class ClientControllerTest {
     @Test
     @WithMockOAuth2Context(authorities = "user")
     public void testGetClients() throws Exception {
+        Map<String, Object> client1 = new LinkedHashMap<>();
+        client1.put("id", 1L);
+        client1.put("email", "test1@test.ma");
+        Map<String, Object> client2 = new LinkedHashMap<>();
+        client2.put("id", 2L);
+        client2.put("email", "test2@test.ma");
+        when(service.getClients(Arrays.asList("id", "email"), "id", null, 2))
+                .thenReturn(new ClientPageDto(Arrays.asList(client1, client2), "next"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client").param("fields", "id,email").param("limit", "2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$", hasSize(2))).andExpect(jsonPath("$[1].email").value("test2@test.ma"))
+                .andExpect(header().string("X-Next-Page-Token", "next"));
+    }
+
+    @Test
+    @WithMockOAuth2Context(authorities = "user")
+    public void testGetClientsBadRequest() throws Exception {
+        when(service.getClients(any(), eq("address"), any(), eq(0))).thenThrow(new IllegalArgumentException("Cannot sort by address"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client").param("sort", "address").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockOAuth2Context(authorities = "user")
+    public void testSearchClients() throws Exception {
         Client client1 = new Client("Test1", "Test1", "test1@test.ma", "Address 1");
-        Client client2 = new Client("Test2", "Test2", "test2@test.ma", "Address 2");
-        when(service.getAllClients()).thenReturn(Stream.of(client1, client2).collect(Collectors.toList()));
+        when(searchService.search("tes", 5)).thenReturn(Collections.singletonList(client1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/search").param("q", "tes").param("limit", "5").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/search").param("q", " ").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testImportClients() throws Exception {
+        ClientImportDto summary = new ClientImportDto("import-1", IClientImportService.CSV);
+        summary.setImported(2);
+        summary.setDone(true);
+        when(importService.importClients(eq("import-1"), any(), eq(IClientImportService.CSV))).thenReturn(summary);
+        when(importService.getImport("import-1")).thenReturn(summary);
 
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/client").accept(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$", hasSize(2))).andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/client/import").param("importId", "import-1")
+                .contentType("text/csv;charset=UTF-8").content("email\na@test.ma\nb@test.ma\n").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.imported").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/import/import-1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.done").value(true));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/import/import-2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
     }
 
     @Test
@@ -76,6 +150,78 @@ public class ClientControllerTest {
         JSONAssert.assertEquals(gson.toJson(client1), result.getResponse().getContentAsString(), false);
     }
 
+    @Test
+    public void testGetClientNotModified() throws Exception {
+        Client client1 = new Client("Test1", "Test1", "test1@test.ma","Address 1");
+        client1.setId(1L);
+        client1.setVersion(2L);
+        when(service.getClient(1L)).thenReturn(client1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(header().string("ETag", "\"1-2\""));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1").accept(MediaType.APPLICATION_JSON).header("If-None-Match", "\"1-2\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void testGetClientsSales() throws Exception {
+        SaleDto sale = new SaleDto();
+        sale.setId(5L);
+        sale.setClientId(1L);
+        Map<Long, List<SaleDto>> sales = new LinkedHashMap<>();
+        sales.put(1L, Collections.singletonList(sale));
+        sales.put(2L, Collections.emptyList());
+        when(saleClient.getClientsSales(any())).thenReturn(sales);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/sales").param("ids", "1,2,1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.1", hasSize(1))).andExpect(jsonPath("$.2", hasSize(0)));
+        verify(saleClient).getClientsSales(eq(new LinkedHashSet<>(Arrays.asList(1L, 2L))));
+    }
+
+    @Test
+    public void testGetClientSalesWithoutProjection() throws Exception {
+        SaleDto sale = new SaleDto();
+        sale.setId(5L);
+        sale.setClientId(1L);
+        when(salesProjection.isEnabled()).thenReturn(false);
+        when(saleClient.getClientSales(1L)).thenReturn(Arrays.asList(sale, sale));
+
+        // every sale of the client, not only the window of the projection
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1/sales").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().doesNotExist(ClientController.SALES_WATERMARK_HEADER));
+        verify(saleClient, never()).getClientSalesSince(any(), any());
+        verify(salesProjection, never()).getFreshWatermark();
+    }
+
+    @Test
+    public void testGetClientSalesFromProjection() throws Exception {
+        SaleDto sale = new SaleDto();
+        sale.setId(5L);
+        sale.setClientId(1L);
+        SaleTotalsDto totals = new SaleTotalsDto();
+        totals.setCount(4L);
+        when(salesProjection.isEnabled()).thenReturn(true);
+        when(salesProjection.getWindowStart()).thenReturn(LocalDate.of(2021, 3, 1));
+        when(salesProjection.getRecentSales(1L)).thenReturn(Collections.singletonList(sale));
+        when(salesProjection.getClientTotals(1L)).thenReturn(totals);
+
+        when(salesProjection.getFreshWatermark()).thenReturn(new Date(1614600000000L));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1/sales").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string(ClientController.SALES_WATERMARK_HEADER, "2021-03-01T12:00:00Z"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1/sales/totals").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.count").value(4));
+        verify(saleClient, never()).getClientSalesSince(any(), any());
+
+        // behind: the sales service is asked for the same window
+        when(salesProjection.getFreshWatermark()).thenReturn(null);
+        when(saleClient.getClientSalesSince(1L, "01-03-2021")).thenReturn(Arrays.asList(sale, sale));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/client/1/sales").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().doesNotExist(ClientController.SALES_WATERMARK_HEADER));
+    }
+
     @Test
     public void testCreateClient() throws Exception {
         Client client1 = new Client("Test1", "Test1", "test1@test.ma","Address 1");
@@ -102,6 +248,32 @@ public class ClientControllerTest {
 
     }
 
+    @Test
+    public void testPatchClient() throws Exception {
+        when(service.patchClient(eq(1L), eq(2L), any(Client.class), eq(Collections.singleton("email")))).thenReturn(true);
+        when(service.patchClient(eq(1L), eq(1L), any(Client.class), any())).thenThrow(new ObjectOptimisticLockingFailureException(Client.class, 1L));
+        when(service.patchClient(eq(1L), any(), any(Client.class), eq(Collections.singleton("password"))))
+                .thenThrow(new IllegalArgumentException("The field password cannot be patched"));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/client/1").header("If-Match", "\"1-2\"").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\": \"new@test.ma\"}"))
+                .andExpect(status().isNoContent()).andExpect(header().string("ETag", "\"1-3\""));
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/client/1").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\": \"new@test.ma\", \"version\": 1}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/client/2").header("If-Match", "\"2-0\"").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\": \"new@test.ma\"}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/client/1").header("If-Match", "\"1-2\"").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"password\": \"secret\"}"))
+                .andExpect(status().isBadRequest());
+        // no blind update
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/client/1").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\": \"new@test.ma\"}"))
+                .andExpect(status().isPreconditionRequired());
+        verify(service, never()).patchClient(eq(1L), isNull(), any(Client.class), any());
+    }
+
     @Test
     public void testDeleteClient() throws Exception {
         doNothing().when(service).deleteClient(1L);
@@ -110,4 +282,14 @@ public class ClientControllerTest {
         mockMvc.perform(requestBuilder).andExpect(status().isOk()).andReturn();
     }
 
+    @Test
+    public void testDeleteClients() throws Exception {
+        when(service.deleteClients(Arrays.asList(1L, 2L, 3L))).thenReturn(2L);
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/client").param("ids", "1,2,3").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().string("2"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/client").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
 }
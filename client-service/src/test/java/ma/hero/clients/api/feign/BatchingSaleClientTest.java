@@ -0,0 +1,182 @@
+package ma.hero.clients.api.feign;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchingSaleClientTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(64);
+
+    private BatchingSaleClient batchingClient;
+
+    @After
+    public void shutdown() {
+        callers.shutdownNow();
+        if (batchingClient != null) {
+            batchingClient.destroy();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallsAreBatched() {
+        FakeSaleClient delegate = new FakeSaleClient();
+        batchingClient = new BatchingSaleClient(delegate, meterRegistry, true, 20, 64, 4, 16, 5000L);
+
+        List<CompletableFuture<List<SaleDto>>> results = new ArrayList<>();
+        for (long id = 1; id <= 64; id++) {
+            long clientId = id;
+            results.add(CompletableFuture.supplyAsync(() -> batchingClient.getClientSales(clientId), callers));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            List<SaleDto> sales = results.get(i).join();
+            assertEquals(1, sales.size());
+            assertEquals(Long.valueOf(i + 1L), sales.get(0).getClientId());
+        }
+        assertTrue("64 concurrent calls must not make 64 requests", delegate.requests.get() < 8);
+        assertEquals(64.0, meterRegistry.get("sales.client.batch.size").summary().totalAmount(), 0.001);
+    }
+
+    @Test
+    public void testSingleCallAfterWindow() {
+        FakeSaleClient delegate = new FakeSaleClient();
+        batchingClient = new BatchingSaleClient(delegate, meterRegistry, true, 1, 64, 4, 16, 5000L);
+
+        assertEquals(Long.valueOf(7L), batchingClient.getClientSales(7L).get(0).getClientId());
+        assertEquals(1, delegate.singleRequests.get());
+    }
+
+    @Test
+    public void testFailureReachesEveryCaller() {
+        FakeSaleClient delegate = new FakeSaleClient();
+        delegate.failure = new IllegalStateException("sales-service is down");
+        batchingClient = new BatchingSaleClient(delegate, meterRegistry, true, 1, 2, 4, 16, 5000L);
+
+        CompletableFuture<List<SaleDto>> first = CompletableFuture.supplyAsync(() -> batchingClient.getClientSales(1L), callers);
+        try {
+            batchingClient.getClientSales(2L);
+            fail("The delegate failure must be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("sales-service is down", e.getMessage());
+        }
+        try {
+            first.join();
+            fail("The delegate failure must be rethrown");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testCallerDoesNotWaitPastTheTimeout() {
+        FakeSaleClient delegate = new FakeSaleClient();
+        delegate.delayMs = 2000L;
+        batchingClient = new BatchingSaleClient(delegate, meterRegistry, true, 1, 64, 4, 16, 100L);
+
+        long start = System.nanoTime();
+        try {
+            batchingClient.getClientSales(1L);
+            fail("A caller must not wait past the timeout");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+    }
+
+    @Test
+    public void testFullDispatchQueueRejects() throws InterruptedException {
+        FakeSaleClient delegate = new FakeSaleClient();
+        delegate.delayMs = 1000L;
+        // one dispatch thread and one queued batch: single-id batches fill them at once
+        batchingClient = new BatchingSaleClient(delegate, meterRegistry, true, 1, 1, 1, 1, 5000L);
+
+        CompletableFuture<List<SaleDto>> running = CompletableFuture.supplyAsync(() -> batchingClient.getClientSales(1L), callers);
+        while (delegate.requests.get() == 0) {
+            Thread.sleep(5L);
+        }
+        CompletableFuture<List<SaleDto>> queued = CompletableFuture.supplyAsync(() -> batchingClient.getClientSales(2L), callers);
+        Thread.sleep(200L);
+        try {
+            batchingClient.getClientSales(3L);
+            fail("A batch beyond the dispatch queue must be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, running.join().size());
+        assertEquals(1, queued.join().size());
+    }
+
+    private static final class FakeSaleClient implements SaleClient {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger singleRequests = new AtomicInteger();
+        private volatile RuntimeException failure;
+        private volatile long delayMs;
+
+        @Override
+        public List<SaleDto> getClientSales(Long clientId) {
+            requests.incrementAndGet();
+            singleRequests.incrementAndGet();
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return Collections.singletonList(sale(clientId));
+        }
+
+        @Override
+        public Map<Long, List<SaleDto>> getClientsSales(Collection<Long> clientIds) {
+            requests.incrementAndGet();
+            if (failure != null) {
+                throw failure;
+            }
+            Map<Long, List<SaleDto>> sales = new LinkedHashMap<>();
+            clientIds.forEach(clientId -> sales.put(clientId, Collections.singletonList(sale(clientId))));
+            return sales;
+        }
+
+        @Override
+        public List<SaleDto> getClientSalesSince(Long clientId, String from) {
+            return getClientSales(clientId);
+        }
+
+        @Override
+        public SaleTotalsDto getClientTotals(Long clientId) {
+            return new SaleTotalsDto();
+        }
+
+        private static SaleDto sale(Long clientId) {
+            SaleDto sale = new SaleDto();
+            sale.setClientId(clientId);
+            return sale;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ma.hero.clients.api.feign;
+
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.sun.net.httpserver.HttpServer;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simulation of the load balancing over local sales-service stubs with injected latency.
+ */
+public class PeakEwmaZoneAffinityRuleTest {
+
+    private final List<HttpServer> stubs = new ArrayList<>();
+
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+
+    private final InstanceLatencyTracker tracker = new InstanceLatencyTracker(10000L);
+
+    private final Client client = new LatencyRecordingClient(new Client.Default(null, null), tracker);
+
+    private ExecutorService callers;
+
+    @Before
+    public void startCallers() {
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void stopStubs() {
+        callers.shutdownNow();
+        stubs.forEach(stub -> stub.stop(0));
+    }
+
+    @Test
+    public void testSlowInstanceIsAvoided() throws Exception {
+        Server fast1 = stub(2, "zone-a");
+        Server fast2 = stub(2, "zone-a");
+        Server slow = stub(60, "zone-a");
+        BaseLoadBalancer loadBalancer = loadBalancer(new PeakEwmaZoneAffinityRule(tracker, null, 2), fast1, fast2, slow);
+
+        run(loadBalancer, 400);
+
+        // a few probes only, round robin would have sent it a third of the requests
+        assertTrue(hits(slow) + " requests to the slow instance", hits(slow) < 400 / 10);
+        assertEquals(400, hits(fast1) + hits(fast2) + hits(slow));
+    }
+
+    @Test
+    public void testOwnZoneIsPreferred() throws Exception {
+        Server local = stub(5, "zone-a");
+        Server remote = stub(5, "zone-b");
+        BaseLoadBalancer loadBalancer = loadBalancer(new PeakEwmaZoneAffinityRule(tracker, "zone-a", 2), local, remote);
+
+        run(loadBalancer, 200);
+
+        assertTrue(hits(remote) + " requests to the other zone", hits(remote) < hits(local));
+    }
+
+    @Test
+    public void testOtherZoneWhenOwnZoneIsDownOrSlow() throws Exception {
+        Server local = stub(80, "zone-a");
+        Server remote = stub(2, "zone-b");
+        BaseLoadBalancer loadBalancer = loadBalancer(new PeakEwmaZoneAffinityRule(tracker, "zone-a", 2), local, remote);
+
+        run(loadBalancer, 200);
+        assertTrue(hits(local) + " requests to the slow zone", hits(local) < 200 / 10);
+
+        loadBalancer.markServerDown(remote);
+        hits.clear();
+        run(loadBalancer, 10);
+        assertEquals(10, hits(local));
+    }
+
+    @Test
+    public void testHedgeAvoidsTheFirstInstance() throws Exception {
+        Server first = stub(2, "zone-a");
+        Server other = stub(60, "zone-a");
+        BaseLoadBalancer loadBalancer = loadBalancer(new PeakEwmaZoneAffinityRule(tracker, "zone-a", 2), first, other);
+        run(loadBalancer, 50);
+
+        HedgedAttempt hedge = new HedgedAttempt(first.getHostPort());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(other, hedge.run(() -> loadBalancer.chooseServer(null)));
+        }
+
+        // the first instance is still used when it is the only one
+        loadBalancer.markServerDown(other);
+        assertEquals(first, hedge.run(() -> loadBalancer.chooseServer(null)));
+    }
+
+    @Test
+    public void testCancelledAttemptIsAbortedOnceSent() {
+        AtomicInteger aborts = new AtomicInteger();
+        HedgedAttempt attempt = new HedgedAttempt(null);
+        attempt.cancel();
+        attempt.run(() -> {
+            HedgedAttempt.onAbort(aborts::incrementAndGet);
+            return null;
+        });
+        assertEquals(1, aborts.get());
+
+        HedgedAttempt running = new HedgedAttempt(null);
+        running.run(() -> {
+            HedgedAttempt.onAbort(aborts::incrementAndGet);
+            running.cancel();
+            return null;
+        });
+        assertEquals(2, aborts.get());
+    }
+
+    private void run(BaseLoadBalancer loadBalancer, int requests) throws Exception {
+        List<Future<?>> calls = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            calls.add(callers.submit(() -> {
+                Server server = loadBalancer.chooseServer(null);
+                String url = "http://" + server.getHostPort() + "/api/sale/client/1";
+                Request request = Request.create(Request.HttpMethod.GET, url, Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+                try (Response response = client.execute(request, new Request.Options())) {
+                    assertEquals(200, response.status());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> call : calls) {
+            call.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private BaseLoadBalancer loadBalancer(PeakEwmaZoneAffinityRule rule, Server... servers) {
+        BaseLoadBalancer loadBalancer = new BaseLoadBalancer();
+        loadBalancer.setRule(rule);
+        loadBalancer.addServers(Arrays.asList(servers));
+        return loadBalancer;
+    }
+
+    private int hits(Server server) {
+        AtomicInteger count = hits.get(server.getHostPort());
+        return count == null ? 0 : count.get();
+    }
+
+    private Server stub(long latencyMs, String zone) throws IOException {
+        HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        String hostPort = "localhost:" + stub.getAddress().getPort();
+        stub.createContext("/", exchange -> {
+            hits.computeIfAbsent(hostPort, key -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.start();
+        stubs.add(stub);
+        Server server = new Server("localhost", stub.getAddress().getPort());
+        server.setZone(zone);
+        server.setAlive(true);
+        return server;
+    }
+}
@@ -0,0 +1,204 @@
+package ma.hero.clients.api.feign;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import feign.Feign;
+import feign.codec.Decoder;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.hero.clients.dto.SaleDto;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * ResilientSaleClient in front of a real Feign client calling a local stub of the sales service.
+ */
+public class ResilientSaleClientTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile int status = 200;
+
+    private volatile long delayFirstMs;
+
+    private volatile CountDownLatch blockClient;
+
+    private HttpServer server;
+
+    private SaleClient feignClient;
+
+    private ResilientSaleClient resilientClient;
+
+    @Before
+    public void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/sale/client/", this::handle);
+        server.createContext("/api/sale/clients", this::handleClients);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        Decoder decoder = new ResponseEntityDecoder(new SpringDecoder(() -> new HttpMessageConverters(new MappingJackson2HttpMessageConverter())));
+        feignClient = Feign.builder()
+                .contract(new SpringMvcContract())
+                .decoder(decoder)
+                .target(SaleClient.class, "http://localhost:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void stopStub() {
+        if (resilientClient != null) {
+            resilientClient.destroy();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testSlowCallIsHedged() {
+        resilientClient = client(circuitBreaker(100), bulkhead(10), true);
+        delayFirstMs = 2000L;
+
+        long start = System.nanoTime();
+        List<SaleDto> sales = resilientClient.getClientSales(1L);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500L);
+        assertEquals(1, sales.size());
+        assertFalse(ResilientSaleClient.isDegraded(sales));
+        assertEquals(2, requests.get());
+        assertEquals(1.0, meterRegistry.get("sales.client.hedge.requests").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get("sales.client.hedge.wins").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testOpenCircuitAnswersFromCache() {
+        resilientClient = client(circuitBreaker(4), bulkhead(10), false);
+        assertFalse(ResilientSaleClient.isDegraded(resilientClient.getClientSales(1L)));
+
+        status = 500;
+        for (int i = 0; i < 4; i++) {
+            List<SaleDto> sales = resilientClient.getClientSales(1L);
+            assertTrue(ResilientSaleClient.isDegraded(sales));
+            assertEquals(1, sales.size());
+        }
+        int sent = requests.get();
+
+        // the circuit is open: no more calls reach the sales service
+        List<SaleDto> sales = resilientClient.getClientSales(1L);
+        assertTrue(ResilientSaleClient.isDegraded(sales));
+        assertEquals(1, sales.size());
+        assertTrue(resilientClient.getClientSales(2L).isEmpty());
+        assertEquals(sent, requests.get());
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state").tag("state", "open").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testFullBulkheadDoesNotWait() throws Exception {
+        resilientClient = client(circuitBreaker(100), bulkhead(1), false);
+        blockClient = new CountDownLatch(1);
+        CompletableFuture<List<SaleDto>> blocked = CompletableFuture.supplyAsync(() -> resilientClient.getClientSales(1L));
+        while (requests.get() == 0) {
+            Thread.sleep(5L);
+        }
+
+        List<SaleDto> sales = resilientClient.getClientSales(2L);
+        assertTrue(ResilientSaleClient.isDegraded(sales));
+        assertTrue(sales.isEmpty());
+
+        blockClient.countDown();
+        assertFalse(ResilientSaleClient.isDegraded(blocked.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testClientIdsAreSplitAcrossCalls() {
+        resilientClient = client(circuitBreaker(100), bulkhead(10), false);
+
+        Map<Long, List<SaleDto>> sales = resilientClient.getClientsSales(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+        assertFalse(ResilientSaleClient.isDegraded(sales));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), new ArrayList<>(sales.keySet()));
+        assertEquals(3, requests.get());
+    }
+
+    private ResilientSaleClient client(CircuitBreakerConfig circuitBreaker, BulkheadConfig bulkhead, boolean hedging) {
+        return new ResilientSaleClient(feignClient, meterRegistry, true, circuitBreaker, bulkhead, hedging, 100L, 20L, 100, 2);
+    }
+
+    private static CircuitBreakerConfig circuitBreaker(int window) {
+        return CircuitBreakerConfig.custom().slidingWindowSize(window).minimumNumberOfCalls(window)
+                .waitDurationInOpenState(Duration.ofMinutes(1)).build();
+    }
+
+    private static BulkheadConfig bulkhead(int maxConcurrentCalls) {
+        return BulkheadConfig.custom().maxConcurrentCalls(maxConcurrentCalls).maxWaitDuration(Duration.ZERO).build();
+    }
+
+    private void handleClients(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        // ids=1&ids=2 or ids=1,2
+        String ids = Arrays.stream(exchange.getRequestURI().getQuery().split("&"))
+                .map(parameter -> parameter.substring(parameter.indexOf('=') + 1))
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(id -> "\"" + id + "\":[]")
+                .collect(Collectors.joining(","));
+        byte[] body = ("{" + ids + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int request = requests.incrementAndGet();
+        try {
+            if (request == 1 && delayFirstMs > 0) {
+                Thread.sleep(delayFirstMs);
+            }
+            CountDownLatch latch = blockClient;
+            if (latch != null && exchange.getRequestURI().getPath().endsWith("/1")) {
+                latch.await(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String clientId = exchange.getRequestURI().getPath().replaceAll(".*/", "");
+        byte[] body = ("[{\"id\":" + request + ",\"clientId\":" + clientId + ",\"productCode\":\"P1\",\"quantity\":1,\"amount\":10.0}]")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
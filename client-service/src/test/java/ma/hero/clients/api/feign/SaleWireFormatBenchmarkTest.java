@@ -0,0 +1,129 @@
+package ma.hero.clients.api.feign;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import feign.Request;
+import feign.Response;
+import feign.codec.Decoder;
+import ma.hero.clients.config.SaleClientFeignConfiguration;
+import ma.hero.clients.dto.SaleDto;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes on the wire and decode cost of a 1k-sale response, JSON against Smile, through the SaleClient decoder.
+ * Run with the benchmark profile only.
+ */
+public class SaleWireFormatBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SaleWireFormatBenchmarkTest.class);
+
+    private static final int SALES = 1000;
+
+    private static final int WARMUP = 200;
+
+    private static final int ROUNDS = 300;
+
+    private Decoder decoder;
+
+    private Type salesType;
+
+    private List<SaleDto> sales;
+
+    @Before
+    public void createSales() throws NoSuchMethodException {
+        decoder = new SaleClientFeignConfiguration().feignDecoder(HttpMessageConverters::new, Jackson2ObjectMapperBuilder.json());
+        salesType = SaleClient.class.getMethod("getClientSales", Long.class).getGenericReturnType();
+        sales = new ArrayList<>(SALES);
+        for (int i = 0; i < SALES; i++) {
+            SaleDto sale = new SaleDto();
+            sale.setId(100000L + i);
+            sale.setClientId(1L + i % 50);
+            sale.setProductCode("Code" + i % 200);
+            sale.setOperationDate(new Date(1600000000000L + i * 3600000L));
+            sale.setQuantity(1L + i % 10);
+            sale.setAmount(9.99D * (1 + i % 10));
+            sales.add(sale);
+        }
+    }
+
+    @Test
+    public void testSmileIsSmallerAndDecodesToTheSameSales() throws IOException {
+        byte[] json = new ObjectMapper().writeValueAsBytes(sales);
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        byte[] smile = new ObjectMapper(smileFactory).writeValueAsBytes(sales);
+
+        long jsonNanos = decodeNanos(json, MediaType.APPLICATION_JSON_VALUE);
+        long smileNanos = decodeNanos(smile, SaleClientFeignConfiguration.SMILE_VALUE);
+        log.info("{} sales: json {} bytes ({} gzipped), {} us to decode; smile {} bytes ({} gzipped), {} us to decode",
+                SALES, json.length, gzip(json).length, TimeUnit.NANOSECONDS.toMicros(jsonNanos),
+                smile.length, gzip(smile).length, TimeUnit.NANOSECONDS.toMicros(smileNanos));
+
+        assertTrue(smile.length < json.length);
+        List<SaleDto> fromJson = decode(json, MediaType.APPLICATION_JSON_VALUE);
+        List<SaleDto> fromSmile = decode(smile, SaleClientFeignConfiguration.SMILE_VALUE);
+        assertEquals(SALES, fromSmile.size());
+        for (int i = 0; i < SALES; i++) {
+            assertEquals(fromJson.get(i).getId(), fromSmile.get(i).getId());
+            assertEquals(fromJson.get(i).getProductCode(), fromSmile.get(i).getProductCode());
+            assertEquals(fromJson.get(i).getOperationDate(), fromSmile.get(i).getOperationDate());
+            assertEquals(fromJson.get(i).getAmount(), fromSmile.get(i).getAmount());
+        }
+    }
+
+    /**
+     * Mean time to decode the body, after a warm up.
+     */
+    private long decodeNanos(byte[] body, String contentType) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            decode(body, contentType);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            decode(body, contentType);
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SaleDto> decode(byte[] body, String contentType) throws IOException {
+        Request request = Request.create(Request.HttpMethod.GET, "http://sales-service/api/sale/client/1", Collections.emptyMap(),
+                null, StandardCharsets.UTF_8, null);
+        Response response = Response.builder()
+                .status(200)
+                .reason("OK")
+                .headers(Collections.singletonMap("Content-Type", Collections.singletonList(contentType)))
+                .body(body)
+                .request(request)
+                .build();
+        return (List<SaleDto>) decoder.decode(response, salesType);
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+}
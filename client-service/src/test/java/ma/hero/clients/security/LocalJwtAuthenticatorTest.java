@@ -0,0 +1,185 @@
+package ma.hero.clients.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.common.VerificationException;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKBuilder;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.JsonSerialization;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local verification of tokens signed by a stand-in of the realm.
+ */
+public class LocalJwtAuthenticatorTest {
+
+    private static final String REALM_URL = "http://localhost:8180/auth/realms/atelier";
+
+    private final AtomicInteger keyRequests = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private volatile JSONWebKeySet realmKeys;
+
+    private JwksKeyCache keyCache;
+
+    private LocalJwtAuthenticator authenticator;
+
+    @Before
+    public void createAuthenticator() {
+        keyCache = new JwksKeyCache(() -> {
+            keyRequests.incrementAndGet();
+            return realmKeys;
+        }, 60000L, 0L, 5000L);
+        authenticator = new LocalJwtAuthenticator(keyCache, REALM_URL, "preferred_username", 100L, meterRegistry);
+    }
+
+    @After
+    public void stopKeyCache() {
+        keyCache.destroy();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testValidTokenIsAuthenticatedAndCached() throws Exception {
+        KeyPair keyPair = keyPair();
+        realmKeys = keySet("key-1", keyPair);
+        String token = token("key-1", keyPair, REALM_URL, 300);
+
+        Authentication authentication = authenticator.authenticate(token);
+        assertEquals("john", authentication.getName());
+        assertTrue(authentication.isAuthenticated());
+        assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_user")));
+
+        assertSame(authentication, authenticator.authenticate(token));
+        assertEquals(1, keyRequests.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "verifiedTokens").tag("result", "hit").functionCounter().count(), 0.0);
+    }
+
+    @Test
+    public void testExpiredOrForeignTokenIsRejected() throws Exception {
+        KeyPair keyPair = keyPair();
+        realmKeys = keySet("key-1", keyPair);
+
+        assertRejected(token("key-1", keyPair, REALM_URL, -60));
+        assertRejected(token("key-1", keyPair, "http://localhost:8180/auth/realms/other", 300));
+        // signed with a key the realm does not publish under that id
+        assertRejected(token("key-1", keyPair(), REALM_URL, 300));
+    }
+
+    @Test
+    public void testRotatedKeyIsLoaded() throws Exception {
+        KeyPair oldKeyPair = keyPair();
+        realmKeys = keySet("key-1", oldKeyPair);
+        assertEquals("john", authenticator.authenticate(token("key-1", oldKeyPair, REALM_URL, 300)).getName());
+
+        KeyPair newKeyPair = keyPair();
+        realmKeys = keySet("key-2", newKeyPair);
+        assertEquals("john", authenticator.authenticate(token("key-2", newKeyPair, REALM_URL, 300)).getName());
+        assertEquals(2, keyRequests.get());
+    }
+
+    @Test
+    public void testSlowRealmIsCalledOnceAndDoesNotHoldRequests() throws Exception {
+        KeyPair keyPair = keyPair();
+        realmKeys = keySet("key-1", keyPair);
+        CountDownLatch realmAnswers = new CountDownLatch(1);
+        JwksKeyCache slowKeyCache = new JwksKeyCache(() -> {
+            keyRequests.incrementAndGet();
+            try {
+                realmAnswers.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return realmKeys;
+        }, 60000L, 0L, 100L);
+        try {
+            long start = System.nanoTime();
+            assertNull(slowKeyCache.getKey("key-1"));
+            assertNull(slowKeyCache.getKey("key-1"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            assertEquals(1, keyRequests.get());
+
+            realmAnswers.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (slowKeyCache.getKey("key-1") == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotNull(slowKeyCache.getKey("key-1"));
+        } finally {
+            slowKeyCache.destroy();
+        }
+    }
+
+    @Test
+    public void testFilterAuthenticatesTheRequest() throws Exception {
+        KeyPair keyPair = keyPair();
+        realmKeys = keySet("key-1", keyPair);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/client");
+        request.addHeader("Authorization", "Bearer " + token("key-1", keyPair, REALM_URL, 300));
+
+        new LocalJwtAuthenticationFilter(authenticator).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        assertEquals("john", authentication.getName());
+    }
+
+    private void assertRejected(String token) {
+        try {
+            authenticator.authenticate(token);
+            fail("Token accepted");
+        } catch (VerificationException expected) {
+            // rejected
+        }
+    }
+
+    private static String token(String keyId, KeyPair keyPair, String issuer, int expiresInSeconds) {
+        AccessToken accessToken = new AccessToken();
+        accessToken.id("token-" + System.nanoTime());
+        accessToken.issuer(issuer);
+        accessToken.subject("0b8f1c3e-user");
+        accessToken.type("Bearer");
+        accessToken.setPreferredUsername("john");
+        accessToken.issuedNow();
+        accessToken.exp((long) (System.currentTimeMillis() / 1000L + expiresInSeconds));
+        accessToken.setRealmAccess(new AccessToken.Access().addRole("user"));
+        return new JWSBuilder().kid(keyId).jsonContent(accessToken).rsa256(keyPair.getPrivate());
+    }
+
+    /**
+     * The key set as the certs endpoint of the realm serves it, read back from its JSON.
+     */
+    private static JSONWebKeySet keySet(String keyId, KeyPair keyPair) throws IOException {
+        JSONWebKeySet keySet = new JSONWebKeySet();
+        JWK jwk = JWKBuilder.create().kid(keyId).algorithm("RS256").rsa(keyPair.getPublic());
+        keySet.setKeys(new JWK[]{jwk});
+        return JsonSerialization.readValue(JsonSerialization.writeValueAsString(keySet), JSONWebKeySet.class);
+    }
+
+    private static KeyPair keyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
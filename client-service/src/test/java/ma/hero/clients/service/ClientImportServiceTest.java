@@ -0,0 +1,128 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.ClientServiceApplication;
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientImportDto;
+import ma.hero.clients.repository.ClientOutboxRepository;
+import ma.hero.clients.repository.ClientRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {ClientServiceApplication.class}, properties = "client-import.batch-size=100")
+@ActiveProfiles("test")
+public class ClientImportServiceTest {
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private IClientImportService clientImportService;
+
+    @Autowired
+    private IClientSearchService clientSearchService;
+
+    @Autowired
+    private ClientOutboxRepository outboxRepository;
+
+    @After
+    public void deleteClients() {
+        clientRepository.deleteAll();
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    public void testImportNdjsonWithBadRows() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 250; i++) {
+            if (i == 10) {
+                body.append("{\"firstName\": \"Broken\n");
+            } else if (i == 20) {
+                body.append("{\"address\": \"Address only\"}\n");
+            } else if (i == 150) {
+                // too long for the column: the whole batch is retried row by row
+                body.append("{\"firstName\": \"Long\", \"email\": \"").append(repeat('x', 300)).append("@test.ma\"}\n");
+            } else {
+                body.append("{\"id\": 99999, \"firstName\": \"Import").append(i).append("\", \"lastName\": \"Ndjson\", \"email\": \"import")
+                        .append(i).append("@test.ma\"}\n");
+            }
+        }
+
+        ClientImportDto summary = clientImportService.importClients("ndjson-import", stream(body.toString()), IClientImportService.NDJSON);
+
+        assertTrue(summary.isDone());
+        assertEquals(250, summary.getRows());
+        assertEquals(247, summary.getImported());
+        assertEquals(3, summary.getFailed());
+        assertEquals(10, summary.getErrors().get(0).getLine());
+        assertEquals(20, summary.getErrors().get(1).getLine());
+        assertEquals(150, summary.getErrors().get(2).getLine());
+        assertEquals(247, clientRepository.count());
+        // one CREATED event per imported client, none for the failed rows
+        assertEquals(247, outboxRepository.count());
+
+        List<Client> found = clientSearchService.search("import249@test.ma", 10);
+        assertEquals(1, found.size());
+        assertEquals("Import249", found.get(0).getFirstName());
+        assertNotEquals(Long.valueOf(99999L), found.get(0).getId());
+        assertEquals(found.get(0).getId(), clientRepository.findByEmail("import249@test.ma", null).get(0).getId());
+    }
+
+    @Test
+    public void testImportCsv() throws Exception {
+        String body = "email,first_name,last_name,address\n"
+                + "csv1@test.ma,Amine,Benali,\"12, rue \"\"Atlas\"\"\"\n"
+                + "\n"
+                + "csv2@test.ma,Karim\n"
+                + "csv3@test.ma,Leila,Alami,\n";
+
+        ClientImportDto summary = clientImportService.importClients("csv-import", stream(body), IClientImportService.CSV);
+
+        assertEquals(3, summary.getRows());
+        assertEquals(2, summary.getImported());
+        assertEquals(4, summary.getErrors().get(0).getLine());
+        Client client = clientRepository.findByEmail("csv1@test.ma", null).get(0);
+        assertEquals("12, rue \"Atlas\"", client.getAddress());
+        assertNull(clientRepository.findByEmail("csv3@test.ma", null).get(0).getAddress());
+    }
+
+    @Test
+    public void testImportProgressIsKept() throws Exception {
+        clientImportService.importClients("kept-import", stream("{\"email\": \"kept@test.ma\"}\n"), IClientImportService.NDJSON);
+
+        ClientImportDto progress = clientImportService.getImport("kept-import");
+        assertTrue(progress.isDone());
+        assertEquals(1, progress.getImported());
+        assertNull(clientImportService.getImport("unknown-import"));
+        try {
+            clientImportService.importClients("kept-import", stream(""), IClientImportService.NDJSON);
+            fail("An import id cannot be reused");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(1, clientRepository.count());
+        }
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            value.append(c);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package ma.hero.clients.service;
+
+import feign.FeignException;
+import ma.hero.clients.ClientServiceApplication;
+import ma.hero.clients.api.feign.SaleFeedClient;
+import ma.hero.clients.dto.SaleChangeDto;
+import ma.hero.clients.dto.SaleChangePageDto;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.repository.ClientSaleRepository;
+import ma.hero.clients.repository.ClientSaleTotalsRepository;
+import ma.hero.clients.repository.SaleProjectionStateRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {ClientServiceApplication.class}, properties = {"client-sales-projection.batch-size=3",
+        "client-sales-projection.recent-days=30"})
+@ActiveProfiles("test")
+public class ClientSalesProjectionTest {
+
+    @MockBean
+    private SaleFeedClient saleFeedClient;
+
+    @Autowired
+    private IClientSalesProjectionService salesProjection;
+
+    @Autowired
+    private ClientSaleRepository saleRepository;
+
+    @Autowired
+    private ClientSaleTotalsRepository totalsRepository;
+
+    @Autowired
+    private SaleProjectionStateRepository stateRepository;
+
+    @After
+    public void deleteProjection() {
+        saleRepository.deleteAll();
+        totalsRepository.deleteAll();
+        stateRepository.deleteAll();
+    }
+
+    @Test
+    public void testProjectionFollowsTheChangeLog() {
+        Date recent = daysAgo(2);
+        Date old = daysAgo(100);
+        when(saleFeedClient.getChanges(null, 3)).thenReturn(page("t1", change(1L, null, sale(7L, old, 2L, 10.0D)),
+                change(2L, null, sale(7L, recent, 1L, 5.0D)), change(3L, null, sale(8L, recent, 1L, 1.0D))));
+        // sale 2 moved to client 8, sale 3 deleted
+        when(saleFeedClient.getChanges("t1", 3)).thenReturn(page("t2", change(2L, sale(7L, recent, 1L, 5.0D),
+                sale(8L, daysAgo(1), 4L, 20.0D)), change(3L, sale(8L, recent, 1L, 1.0D), null)));
+        when(saleFeedClient.getChanges("t2", 3)).thenReturn(page("t2"));
+        assertNull(salesProjection.getFreshWatermark());
+        assertNull(salesProjection.getWatermark());
+
+        // a full batch: more may follow, no watermark yet
+        assertEquals(3, salesProjection.sync());
+        assertNull(salesProjection.getFreshWatermark());
+        assertEquals(Collections.singletonList(2L), ids(salesProjection.getRecentSales(7L)));
+        assertEquals(2L, salesProjection.getClientTotals(7L).getCount());
+        long beforeCatchUp = System.currentTimeMillis();
+        assertEquals(2, salesProjection.sync());
+        assertTrue(salesProjection.getFreshWatermark().getTime() >= beforeCatchUp);
+        assertEquals(salesProjection.getWatermark(), salesProjection.getFreshWatermark());
+        assertEquals(0, salesProjection.sync());
+
+        // the recent window, latest first, and the all-time totals
+        assertTrue(salesProjection.getRecentSales(7L).isEmpty());
+        assertEquals(Collections.singletonList(2L), ids(salesProjection.getRecentSales(8L)));
+        assertEquals(Long.valueOf(4L), salesProjection.getRecentSales(8L).get(0).getQuantity());
+        SaleTotalsDto totals = salesProjection.getClientTotals(7L);
+        assertEquals(1L, totals.getCount());
+        assertEquals(2L, totals.getQuantity());
+        assertEquals(10.0D, totals.getAmount(), 0.001D);
+        totals = salesProjection.getClientTotals(8L);
+        assertEquals(1L, totals.getCount());
+        assertEquals(4L, totals.getQuantity());
+        assertEquals(20.0D, totals.getAmount(), 0.001D);
+        assertEquals(1L, saleRepository.count());
+
+        // compacted past the token: rebuilt from the beginning of the log
+        when(saleFeedClient.getChanges("t2", 3)).thenThrow(mock(FeignException.Gone.class));
+        assertEquals(0, salesProjection.sync());
+        assertNull(salesProjection.getFreshWatermark());
+        assertEquals(0L, salesProjection.getClientTotals(8L).getCount());
+        assertEquals(3, salesProjection.sync());
+        assertEquals(2L, salesProjection.getClientTotals(7L).getCount());
+        assertEquals(1L, salesProjection.getClientTotals(8L).getCount());
+    }
+
+    private static List<Long> ids(List<SaleDto> sales) {
+        return sales.stream().map(SaleDto::getId).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static Date daysAgo(int days) {
+        return Date.from(LocalDate.now(ZoneOffset.UTC).minusDays(days).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private static SaleChangePageDto page(String next, SaleChangeDto... changes) {
+        return new SaleChangePageDto(Arrays.asList(changes), next);
+    }
+
+    private static SaleChangeDto change(Long saleId, SaleDto before, SaleDto after) {
+        SaleChangeDto change = new SaleChangeDto();
+        change.setSaleId(saleId);
+        change.setType(before == null ? SaleChangeDto.Type.INSERT : after == null ? SaleChangeDto.Type.DELETE : SaleChangeDto.Type.UPDATE);
+        change.setBefore(before);
+        change.setAfter(after);
+        return change;
+    }
+
+    private static SaleDto sale(Long clientId, Date operationDate, Long quantity, Double amount) {
+        SaleDto sale = new SaleDto();
+        sale.setClientId(clientId);
+        sale.setProductCode("Code" + clientId);
+        sale.setOperationDate(operationDate);
+        sale.setQuantity(quantity);
+        sale.setAmount(amount);
+        return sale;
+    }
+}
@@ -0,0 +1,199 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.repository.ClientRepository;
+import ma.hero.clients.service.impl.ClientSearchService;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ClientSearchServiceTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSearchServiceTest.class);
+
+    private static final String[] FIRST_NAMES = {"Adam", "Amine", "Fatima", "Hamza", "Imane", "Karim", "Leila", "Mehdi", "Nadia", "Youssef"};
+
+    private ClientRepository clientRepository;
+
+    private ClientSearchService searchService;
+
+    @Before
+    public void createService() {
+        clientRepository = mock(ClientRepository.class);
+        searchService = new ClientSearchService(clientRepository, true, 1000, 100);
+    }
+
+    @Test
+    public void testSearchByEmailAndNamePrefix() {
+        load(client(1L, "Amine", "Benali", "amine@test.ma"), client(2L, "Amina", "Chraibi", "Amina@Test.ma"),
+                client(3L, "Karim", "Amrani", "karim@test.ma"), client(4L, "Élodie", "Martin", "elodie@test.ma"));
+
+        assertEquals(Collections.singletonList(2L), ids(searchService.search("amina@test.MA", 10)));
+        // prefix of a first or a last name, case and accent insensitive
+        assertEquals(Arrays.asList(2L, 1L, 3L), ids(searchService.search("AM", 10)));
+        assertEquals(Arrays.asList(2L, 1L), ids(searchService.search("Am", 2)));
+        assertEquals(Collections.singletonList(4L), ids(searchService.search("elo", 10)));
+        assertTrue(searchService.search("Zineb", 10).isEmpty());
+        verify(clientRepository, never()).findByNamePrefix(any(), any());
+    }
+
+    @Test
+    public void testIndexFollowsUpdatesAndDeletes() {
+        load(client(1L, "Amine", "Benali", "amine@test.ma"));
+
+        Client renamed = client(1L, "Karim", "Benali", "karim@test.ma");
+        renamed.setVersion(1L);
+        searchService.index(renamed);
+        assertTrue(searchService.search("ami", 10).isEmpty());
+        assertTrue(searchService.search("amine@test.ma", 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("kar", 10)));
+        assertEquals("karim@test.ma", searchService.search("karim@test.ma", 10).get(0).getEmail());
+
+        searchService.index(client(2L, "Karima", "Alaoui", "karima@test.ma"));
+        assertEquals(Arrays.asList(1L, 2L), ids(searchService.search("kar", 10)));
+
+        searchService.remove(1L);
+        assertEquals(Collections.singletonList(2L), ids(searchService.search("kar", 10)));
+        assertTrue(searchService.search("benali", 10).isEmpty());
+        assertEquals(Collections.singletonList(2L), ids(searchService.search("alaoui", 10)));
+    }
+
+    @Test
+    public void testOlderVersionIsNotIndexed() {
+        load(client(1L, "Amine", "Benali", "amine@test.ma"));
+        Client second = client(1L, "Amine", "Tazi", "amine@test.ma");
+        second.setVersion(2L);
+        Client first = client(1L, "Amine", "Idrissi", "amine@test.ma");
+        first.setVersion(1L);
+
+        // the after-commit call of the second update came first
+        searchService.index(second);
+        searchService.index(first);
+
+        assertTrue(searchService.search("idrissi", 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("tazi", 10)));
+    }
+
+    @Test
+    public void testDatabaseUntilLoaded() {
+        Client client = client(1L, "Amine", "Benali", "amine@test.ma");
+        when(clientRepository.findByNamePrefix(eq("50\\%"), any(Pageable.class))).thenReturn(Collections.singletonList(client));
+
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("50%", 10)));
+        verify(clientRepository).findByNamePrefix(eq("50\\%"), any(Pageable.class));
+    }
+
+    @Test
+    public void testDeletedWhileLoadingIsNotIndexed() {
+        searchService.remove(2L);
+        load(client(1L, "Amine", "Benali", "amine@test.ma"), client(2L, "Amina", "Chraibi", "amina@test.ma"));
+
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("amin", 10)));
+    }
+
+    @Test
+    public void testPatchedWhileLoadingIsReadAgain() {
+        Client changes = new Client();
+        changes.setLastName("Tazi");
+        searchService.patch(1L, 1L, changes, Collections.singleton("lastName"));
+        Client patched = client(1L, "Amine", "Tazi", "amine@test.ma");
+        patched.setVersion(1L);
+        when(clientRepository.findAllById(Collections.singleton(1L))).thenReturn(Collections.singletonList(patched));
+
+        load(client(1L, "Amine", "Benali", "amine@test.ma"));
+
+        assertTrue(searchService.search("benali", 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("tazi", 10)));
+
+        changes.setLastName("Idrissi");
+        searchService.patch(1L, 2L, changes, Collections.singleton("lastName"));
+        assertTrue(searchService.search("tazi", 10).isEmpty());
+        assertEquals("amine@test.ma", searchService.search("idrissi", 10).get(0).getEmail());
+    }
+
+    @Test
+    public void testPatchOnAnOlderCopyReadsTheClientAgain() {
+        load(client(1L, "Amine", "Benali", "amine@test.ma"));
+        Client updated = client(1L, "Karim", "Benali", "amine@test.ma");
+        updated.setVersion(1L);
+        Client patched = client(1L, "Karim", "Tazi", "amine@test.ma");
+        patched.setVersion(2L);
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(patched));
+
+        // the after-commit call of the patch came before the one of the update it was made on
+        Client changes = new Client();
+        changes.setLastName("Tazi");
+        searchService.patch(1L, 2L, changes, Collections.singleton("lastName"));
+        searchService.index(updated);
+
+        assertTrue(searchService.search("benali", 10).isEmpty());
+        assertTrue(searchService.search("amine", 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("tazi", 10)));
+        assertEquals(Collections.singletonList(1L), ids(searchService.search("karim", 10)));
+    }
+
+    @Test
+    public void testPrefixSearchOverManyClients() {
+        int count = 100000;
+        List<Client> clients = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            clients.add(client(id, FIRST_NAMES[(int) (id % FIRST_NAMES.length)] + id % 997, "Name" + id, "client" + id + "@test.ma"));
+        }
+        when(clientRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(clients).thenReturn(Collections.emptyList());
+        searchService = new ClientSearchService(clientRepository, true, count, 100);
+        searchService.load();
+        clients.clear();
+
+        String[] queries = {"hamza12", "name4242", "client77777@test.ma", "leila9", "y"};
+        for (int i = 0; i < 5000; i++) {
+            searchService.search(queries[i % queries.length], 20);
+        }
+        int rounds = 10000;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            assertFalse(searchService.search(queries[i % queries.length], 20).isEmpty());
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / rounds;
+        log.info("{} clients: {} us per search", count, micros);
+        assertTrue(micros + " us per search", micros < 1000);
+        assertEquals(20, searchService.search("y", 20).size());
+        assertEquals(Long.valueOf(77777L), searchService.search("client77777@test.ma", 20).get(0).getId());
+    }
+
+    private void load(Client... clients) {
+        when(clientRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class))).thenReturn(Arrays.asList(clients));
+        searchService.load();
+    }
+
+    private static List<Long> ids(List<Client> clients) {
+        List<Long> ids = new ArrayList<>();
+        clients.forEach(client -> ids.add(client.getId()));
+        return ids;
+    }
+
+    private static Client client(Long id, String firstName, String lastName, String email) {
+        Client client = new Client(firstName, lastName, email, "Address " + id);
+        client.setId(id);
+        client.setVersion(0L);
+        return client;
+    }
+}
@@ -1,8 +1,19 @@
 package ma.hero.clients.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.hero.clients.repository.ClientOutboxDeadLetterRepository;
+import ma.hero.clients.repository.ClientOutboxRepository;
 import ma.hero.clients.repository.ClientRepository;
 import ma.hero.clients.ClientServiceApplication;
 import ma.hero.clients.domain.Client;
+import ma.hero.clients.domain.ClientOutboxEvent;
+import ma.hero.clients.dto.ClientEventDto;
+import ma.hero.clients.dto.ClientPageDto;
+import ma.hero.clients.service.IClientEventPublisher.RejectedEventsException;
+import ma.hero.clients.service.impl.ClientOutboxRelay;
+import ma.hero.clients.service.impl.InMemoryClientEventPublisher;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -11,9 +22,15 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -21,7 +38,8 @@ import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = { ClientServiceApplication.class})
+@SpringBootTest(classes = { ClientServiceApplication.class}, properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+        "client-delete.chunk-size=2"})
 @ActiveProfiles("test")
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class ClientServiceTest {
@@ -32,6 +50,27 @@ public class ClientServiceTest {
     @Autowired
     private IClientService clientService;
 
+    @Autowired
+    private IClientSearchService clientSearchService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ClientOutboxRepository outboxRepository;
+
+    @Autowired
+    private ClientOutboxDeadLetterRepository deadLetterRepository;
+
+    @Autowired
+    private ClientOutboxRelay outboxRelay;
+
+    @Autowired
+    private InMemoryClientEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     private Long randomId;
 
     @Before
@@ -43,6 +82,9 @@ public class ClientServiceTest {
     @After
     public void deleteClients() {
         clientRepository.deleteAll();
+        outboxRepository.deleteAll();
+        deadLetterRepository.deleteAll();
+        eventPublisher.drain(Integer.MAX_VALUE);
     }
 
     @Test
@@ -51,6 +93,35 @@ public class ClientServiceTest {
         assertThat(clients, hasSize(1));
     }
 
+    @Test
+    public void testGetClientsByPages() throws Exception {
+        clientRepository.save(new Client("Test2", "Bennani", "test2@test.ma", "Address 2"));
+        clientRepository.save(new Client("Test3", "Alami", "test3@test.ma", "Address 3"));
+        clientRepository.save(new Client("Test4", "Bennani", "test4@test.ma", "Address 4"));
+        clientRepository.save(new Client("Test5", null, "test5@test.ma", "Address 5"));
+
+        List<String> emails = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ClientPageDto page = clientService.getClients(Arrays.asList("email"), "lastName", token, 2);
+            page.getClients().forEach(client -> {
+                assertEquals(Collections.singleton("email"), client.keySet());
+                emails.add((String) client.get("email"));
+            });
+            token = page.getNext();
+            pages++;
+        } while (token != null);
+
+        assertEquals(3, pages);
+        assertEquals(Arrays.asList("test5@test.ma", "test3@test.ma", "test2@test.ma", "test4@test.ma", "test1@test.ma"), emails);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetClientsUnknownField() throws Exception {
+        clientService.getClients(Arrays.asList("id", "password"), "id", null, 10);
+    }
+
     @Test
     public void testGetClient() throws Exception {
         Client per = clientService.getClient(randomId);
@@ -72,10 +143,155 @@ public class ClientServiceTest {
         assertEquals(client.getFirstName(), randomClient3.getFirstName());
     }
 
+    @Test
+    public void testUpdateClientVersion() throws Exception {
+        Client change = new Client("Test4", "Test4", "test4@test.ma", "Address 4");
+        change.setId(randomId);
+        Client updated = clientService.updateClient(change);
+        assertEquals(Long.valueOf(1L), updated.getVersion());
+
+        change.setVersion(0L);
+        try {
+            clientService.updateClient(change);
+            fail("A stale version must be rejected");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            assertEquals(Long.valueOf(1L), clientService.getClient(randomId).getVersion());
+        }
+    }
+
+    @Test
+    public void testSearchClient() throws Exception {
+        Client created = clientService.createClient(new Client("Search5", "Test5", "search5@test.ma", "Address 5"));
+        assertEquals(created.getId(), clientSearchService.search("search5@test.ma", 10).get(0).getId());
+        assertEquals(created.getId(), clientSearchService.search("Search", 10).get(0).getId());
+
+        clientService.deleteClient(created.getId());
+        assertTrue(clientSearchService.search("search5@test.ma", 10).isEmpty());
+    }
+
+    @Test
+    public void testPatchClient() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Client changes = new Client();
+        changes.setEmail("patched@test.ma");
+
+        statistics.clear();
+        assertTrue(clientService.patchClient(randomId, 0L, changes, Collections.singleton("email")));
+        // the conditional update and its outbox event, then the read of the client for the search index, which does
+        // not hold it since it was saved through the repository
+        assertEquals(3L, statistics.getPrepareStatementCount());
+
+        Client patched = clientService.getClient(randomId);
+        assertEquals("patched@test.ma", patched.getEmail());
+        assertEquals("Test1", patched.getFirstName());
+        assertEquals(Long.valueOf(1L), patched.getVersion());
+
+        try {
+            clientService.patchClient(randomId, 0L, changes, Collections.singleton("email"));
+            fail("A stale version must be rejected");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            assertEquals(Long.valueOf(1L), clientService.getClient(randomId).getVersion());
+        }
+        statistics.clear();
+        assertFalse(clientService.patchClient(-1L, 0L, changes, Collections.singleton("email")));
+        // the update, then the lookup telling a missing client from a stale version
+        assertEquals(2L, statistics.getPrepareStatementCount());
+    }
+
     @Test
     public void testDeleteClient() throws Exception {
         clientService.deleteClient(randomId);
         assertNull(clientService.getClient(randomId));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testDeleteClients() throws Exception {
+        Client second = clientService.createClient(new Client("Bulk6", "Test6", "bulk6@test.ma", "Address 6"));
+        Client third = clientService.createClient(new Client("Bulk7", "Test7", "bulk7@test.ma", "Address 7"));
+        Client kept = clientService.createClient(new Client("Bulk8", "Test8", "bulk8@test.ma", "Address 8"));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        // chunks of 2 clients, unknown ids are ignored
+        assertEquals(3L, clientService.deleteClients(Arrays.asList(third.getId(), -1L, randomId, second.getId())));
+        // per chunk one INSERT ... SELECT of the outbox events and one DELETE, no client loaded
+        assertEquals(4L, statistics.getPrepareStatementCount());
+        assertEquals(0L, statistics.getEntityLoadCount());
+
+        assertEquals(1L, clientRepository.count());
+        assertNotNull(clientService.getClient(kept.getId()));
+        assertTrue(clientSearchService.search("bulk6@test.ma", 10).isEmpty());
+        assertEquals(1, clientSearchService.search("bulk8@test.ma", 10).size());
+        // the CREATED events of the 3 created clients, the DELETED events of the 3 deleted ones
+        assertEquals(6L, outboxRepository.count());
+    }
+
+    @Test
+    public void testOutboxRelay() throws Exception {
+        Client created = clientService.createClient(new Client("Outbox9", "Test9", "outbox9@test.ma", "Address 9"));
+        Client change = new Client("Outbox9", "Test9", "changed9@test.ma", "Address 9");
+        change.setId(created.getId());
+        clientService.updateClient(change);
+        change.setVersion(0L);
+        try {
+            clientService.updateClient(change);
+            fail("A stale version must be rejected");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // rolled back with its event
+        }
+        clientService.deleteClient(created.getId());
+        assertEquals(3L, outboxRepository.count());
+
+        // a failed publication leaves the batch in the outbox
+        ClientOutboxRelay failing = new ClientOutboxRelay(outboxRepository, deadLetterRepository, events -> {
+            throw new IllegalStateException("Broker down");
+        }, transactionManager, new SimpleMeterRegistry(), false, 500, 200L, 5000L);
+        try {
+            failing.relayBatch();
+            fail("The publication failure must be reported");
+        } catch (IllegalStateException e) {
+            assertEquals(3L, outboxRepository.count());
+            assertTrue(failing.getLagMs() >= 0L);
+        }
+
+        assertEquals(3, outboxRelay.relayBatch());
+        assertEquals(0L, outboxRepository.count());
+        assertEquals(0, outboxRelay.relayBatch());
+        List<ClientEventDto> events = eventPublisher.drain(10);
+        assertEquals(3, events.size());
+        assertEquals(ClientOutboxEvent.Type.CREATED, events.get(0).getType());
+        assertEquals(ClientOutboxEvent.Type.UPDATED, events.get(1).getType());
+        assertEquals(ClientOutboxEvent.Type.DELETED, events.get(2).getType());
+        assertEquals(Long.valueOf(0L), events.get(0).getVersion());
+        assertEquals(Long.valueOf(1L), events.get(1).getVersion());
+        assertTrue(events.get(0).getId() < events.get(1).getId() && events.get(1).getId() < events.get(2).getId());
+        events.forEach(event -> assertEquals(created.getId(), event.getClientId()));
+    }
+
+    @Test
+    public void testRejectedOutboxEventIsDeadLettered() {
+        Client created = clientService.createClient(new Client("Outbox10", "Test10", "outbox10@test.ma", "Address 10"));
+        Client change = new Client("Outbox10", "Test10", "changed10@test.ma", "Address 10");
+        change.setId(created.getId());
+        clientService.updateClient(change);
+        clientService.deleteClient(created.getId());
+
+        // the consumer refuses the UPDATED event for good
+        List<ClientEventDto> published = new ArrayList<>();
+        ClientOutboxRelay relay = new ClientOutboxRelay(outboxRepository, deadLetterRepository, events -> {
+            if (events.stream().anyMatch(event -> event.getType() == ClientOutboxEvent.Type.UPDATED)) {
+                throw new RejectedEventsException("400 Bad Request", null);
+            }
+            published.addAll(events);
+        }, transactionManager, new SimpleMeterRegistry(), false, 500, 200L, 5000L);
+
+        assertEquals(3, relay.relayBatch());
+        assertEquals(0L, outboxRepository.count());
+        assertEquals(2, published.size());
+        assertEquals(ClientOutboxEvent.Type.CREATED, published.get(0).getType());
+        assertEquals(ClientOutboxEvent.Type.DELETED, published.get(1).getType());
+        assertEquals(1L, deadLetterRepository.count());
+        assertEquals(ClientOutboxEvent.Type.UPDATED, deadLetterRepository.findAll().get(0).getType());
+        assertEquals("400 Bad Request", deadLetterRepository.findAll().get(0).getError());
+    }
+}
@@ -0,0 +1,99 @@
+package ma.hero.clients.service;
+
+import ma.hero.clients.api.feign.SaleClient;
+import ma.hero.clients.domain.Client;
+import ma.hero.clients.dto.ClientSummaryDto;
+import ma.hero.clients.dto.SaleDto;
+import ma.hero.clients.dto.SaleTotalsDto;
+import ma.hero.clients.service.impl.ClientSummaryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientSummaryServiceTest {
+
+    private IClientService clientService;
+
+    private SaleClient saleClient;
+
+    private ClientSummaryService summaryService;
+
+    @Before
+    public void createService() {
+        clientService = mock(IClientService.class);
+        saleClient = mock(SaleClient.class);
+        summaryService = new ClientSummaryService(clientService, saleClient, 4, 16, 200L, 200L, 30, 2);
+        Client client = new Client("Test1", "Test1", "test1@test.ma", "Address 1");
+        client.setId(1L);
+        when(clientService.getClient(1L)).thenReturn(client);
+    }
+
+    @After
+    public void stopService() {
+        summaryService.destroy();
+    }
+
+    @Test
+    public void testSummaryKeepsLatestSales() throws Exception {
+        when(saleClient.getClientSalesSince(eq(1L), anyString())).thenReturn(Arrays.asList(sale(1L, 1000L), sale(2L, 3000L), sale(3L, 2000L)));
+        when(saleClient.getClientTotals(1L)).thenReturn(new SaleTotalsDto());
+
+        ClientSummaryDto summary = summaryService.getClientSummary(1L).get(1, TimeUnit.SECONDS);
+
+        assertEquals(Long.valueOf(1L), summary.getClient().getId());
+        assertEquals(2, summary.getRecentSales().size());
+        assertEquals(Long.valueOf(2L), summary.getRecentSales().get(0).getId());
+        assertEquals(Long.valueOf(3L), summary.getRecentSales().get(1).getId());
+        assertNotNull(summary.getTotals());
+        assertTrue(summary.getUnavailable().isEmpty());
+    }
+
+    @Test
+    public void testSlowSalesServiceGivesPartialSummary() throws Exception {
+        when(saleClient.getClientSalesSince(eq(1L), anyString())).thenThrow(new IllegalStateException("sales-service down"));
+        when(saleClient.getClientTotals(1L)).thenAnswer(invocation -> {
+            Thread.sleep(2000L);
+            return new SaleTotalsDto();
+        });
+
+        long start = System.nanoTime();
+        ClientSummaryDto summary = summaryService.getClientSummary(1L).get(1, TimeUnit.SECONDS);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000L);
+        assertNotNull(summary.getClient());
+        assertNull(summary.getRecentSales());
+        assertNull(summary.getTotals());
+        assertEquals(Arrays.asList(ClientSummaryDto.RECENT_SALES, ClientSummaryDto.TOTALS), summary.getUnavailable());
+    }
+
+    @Test
+    public void testUnknownClient() throws Exception {
+        when(saleClient.getClientSalesSince(anyLong(), anyString())).thenReturn(Arrays.asList());
+        assertNull(summaryService.getClientSummary(2L).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = CompletionException.class)
+    public void testFailedClientLookup() {
+        when(clientService.getClient(3L)).thenThrow(new IllegalStateException("database down"));
+        summaryService.getClientSummary(3L).join();
+    }
+
+    private static SaleDto sale(Long id, long time) {
+        SaleDto sale = new SaleDto();
+        sale.setId(id);
+        sale.setOperationDate(new Date(time));
+        return sale;
+    }
+}
@@ -0,0 +1,57 @@
+package ma.hero.sales.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+import ma.hero.sales.dto.SaleAggregate;
+
+/**
+ * Count, quantity and amount sums grouped by a long key, in primitive arrays.
+ */
+final class LongGroups {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final LongIntHashMap slots = new LongIntHashMap(INITIAL_CAPACITY);
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private long[] quantities = new long[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private int size;
+
+    void add(long key, long quantity, double amount) {
+        int slot = slots.get(key);
+        if (slot == LongIntHashMap.MISSING) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            slot = size++;
+            keys[slot] = key;
+            slots.put(key, slot);
+        }
+        counts[slot]++;
+        quantities[slot] += quantity;
+        amounts[slot] += amount;
+    }
+
+    /**
+     * @return one aggregate per key, ordered by key.
+     */
+    List<SaleAggregate> toAggregates(LongFunction<String> keyFormat) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        List<SaleAggregate> result = new ArrayList<>(size);
+        for (int slot : order) {
+            result.add(new SaleAggregate(keyFormat.apply(keys[slot]), counts[slot], quantities[slot], amounts[slot]));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+package ma.hero.sales.analytics;
+
+import java.time.LocalDate;
+
+/**
+ * Row filter of a {@link SaleColumnStore} scan. Every criterion is optional.
+ */
+public final class SaleColumnFilter {
+
+    private final int minDay;
+    private final int maxDay;
+    private final boolean byClient;
+    private final long clientId;
+    private final String productCode;
+
+    private SaleColumnFilter(LocalDate from, LocalDate to, Long clientId, String productCode) {
+        this.minDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        this.maxDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        this.byClient = clientId != null;
+        this.clientId = clientId == null ? 0L : clientId;
+        this.productCode = productCode;
+    }
+
+    /**
+     * @param from the first day, inclusive, null for no lower bound.
+     * @param to the last day, inclusive, null for no upper bound.
+     * @param clientId the client of the sales, null for all clients.
+     * @param productCode the product of the sales, null for all products.
+     */
+    public static SaleColumnFilter of(LocalDate from, LocalDate to, Long clientId, String productCode) {
+        return new SaleColumnFilter(from, to, clientId, productCode);
+    }
+
+    int getMinDay() {
+        return minDay;
+    }
+
+    int getMaxDay() {
+        return maxDay;
+    }
+
+    boolean isByClient() {
+        return byClient;
+    }
+
+    long getClientId() {
+        return clientId;
+    }
+
+    String getProductCode() {
+        return productCode;
+    }
+}
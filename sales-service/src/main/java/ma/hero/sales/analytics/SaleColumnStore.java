@@ -0,0 +1,349 @@
+package ma.hero.sales.analytics;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Column oriented, primitive array copy of the sale table.
+ * <p>
+ * Each sale is a row index into parallel arrays (amount, quantity, epoch day, client id, dictionary encoded product code).
+ * Updates tombstone the old row and append a new one; tombstones are compacted once they reach a quarter of the rows.
+ * Scans take the read lock and do not allocate per row.
+ */
+public class SaleColumnStore {
+
+    public enum Metric {
+        COUNT, QUANTITY, AMOUNT
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    private static final long NO_CLIENT = Long.MIN_VALUE;
+    private static final int NO_PRODUCT = -1;
+    private static final int ANY_PRODUCT = -2;
+    private static final int UNKNOWN_PRODUCT = -3;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern(DateUtils.DATE_PATTERN);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private long[] quantities = new long[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] clientIds = new long[INITIAL_CAPACITY];
+    private int[] products = new int[INITIAL_CAPACITY];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+
+    private final LongIntHashMap rowsById = new LongIntHashMap(INITIAL_CAPACITY);
+    private final Map<String, Integer> productDictionary = new HashMap<>();
+    private final List<String> productCodes = new ArrayList<>();
+
+    /**
+     * Ids deleted while the initial load is running, so that the loader does not resurrect them.
+     */
+    private LongIntHashMap deletedWhileLoading;
+
+    // ------------------------------------------------------------------ writes
+
+    /**
+     * Mark the beginning of the initial load.
+     */
+    public void startLoading() {
+        lock.writeLock().lock();
+        try {
+            deletedWhileLoading = new LongIntHashMap(INITIAL_CAPACITY);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mark the end of the initial load.
+     */
+    public void finishLoading() {
+        lock.writeLock().lock();
+        try {
+            deletedWhileLoading = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a sale read by the initial load, unless a write already added or deleted it meanwhile.
+     */
+    public void load(Sale sale) {
+        lock.writeLock().lock();
+        try {
+            long id = sale.getId();
+            if (!rowsById.containsKey(id) && (deletedWhileLoading == null || !deletedWhileLoading.containsKey(id))) {
+                append(sale);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add or replace a sale.
+     */
+    public void put(Sale sale) {
+        lock.writeLock().lock();
+        try {
+            tombstone(sale.getId());
+            append(sale);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a sale.
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            tombstone(id);
+            if (deletedWhileLoading != null) {
+                deletedWhileLoading.put(id, 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of live sales.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(Sale sale) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        int row = size++;
+        ids[row] = sale.getId();
+        amounts[row] = sale.getAmount() == null ? 0D : sale.getAmount();
+        quantities[row] = sale.getQuantity() == null ? 0L : sale.getQuantity();
+        days[row] = sale.getOperationDate() == null ? NO_DAY : (int) DateUtils.toLocalDate(sale.getOperationDate()).toEpochDay();
+        clientIds[row] = sale.getClientId() == null ? NO_CLIENT : sale.getClientId();
+        products[row] = encode(sale.getProductCode());
+        rowsById.put(sale.getId(), row);
+    }
+
+    private void tombstone(long id) {
+        int row = rowsById.remove(id);
+        if (row != LongIntHashMap.MISSING) {
+            deleted.set(row);
+            deletedCount++;
+            if (deletedCount > INITIAL_CAPACITY && deletedCount * 4 > size) {
+                compact();
+            }
+        }
+    }
+
+    private int encode(String productCode) {
+        if (productCode == null) {
+            return NO_PRODUCT;
+        }
+        Integer code = productDictionary.get(productCode);
+        if (code == null) {
+            code = productCodes.size();
+            productCodes.add(productCode);
+            productDictionary.put(productCode, code);
+        }
+        return code;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        days = Arrays.copyOf(days, capacity);
+        clientIds = Arrays.copyOf(clientIds, capacity);
+        products = Arrays.copyOf(products, capacity);
+    }
+
+    private void compact() {
+        int live = 0;
+        for (int row = deleted.nextClearBit(0); row < size; row = deleted.nextClearBit(row + 1)) {
+            ids[live] = ids[row];
+            amounts[live] = amounts[row];
+            quantities[live] = quantities[row];
+            days[live] = days[row];
+            clientIds[live] = clientIds[row];
+            products[live] = products[row];
+            rowsById.put(ids[live], live);
+            live++;
+        }
+        size = live;
+        deletedCount = 0;
+        deleted.clear();
+    }
+
+    // ------------------------------------------------------------------ scans
+
+    /**
+     * Sum the sales matching the filter.
+     */
+    public SaleAggregate totals(SaleColumnFilter filter) {
+        lock.readLock().lock();
+        try {
+            long count = 0L;
+            long quantity = 0L;
+            double amount = 0D;
+            int product = productFilter(filter);
+            if (product != UNKNOWN_PRODUCT) {
+                for (int row = deleted.nextClearBit(0); row < size; row = deleted.nextClearBit(row + 1)) {
+                    if (matches(row, filter, product)) {
+                        count++;
+                        quantity += quantities[row];
+                        amount += amounts[row];
+                    }
+                }
+            }
+            return new SaleAggregate(null, count, quantity, amount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sum the sales matching the filter per product code, ordered by product code.
+     */
+    public List<SaleAggregate> groupByProduct(SaleColumnFilter filter) {
+        lock.readLock().lock();
+        try {
+            int dictionarySize = productCodes.size();
+            long[] counts = new long[dictionarySize];
+            long[] sumQuantities = new long[dictionarySize];
+            double[] sumAmounts = new double[dictionarySize];
+            int product = productFilter(filter);
+            if (product != UNKNOWN_PRODUCT) {
+                for (int row = deleted.nextClearBit(0); row < size; row = deleted.nextClearBit(row + 1)) {
+                    int code = products[row];
+                    if (code != NO_PRODUCT && matches(row, filter, product)) {
+                        counts[code]++;
+                        sumQuantities[code] += quantities[row];
+                        sumAmounts[code] += amounts[row];
+                    }
+                }
+            }
+            List<SaleAggregate> result = new ArrayList<>();
+            for (int code = 0; code < dictionarySize; code++) {
+                if (counts[code] > 0) {
+                    result.add(new SaleAggregate(productCodes.get(code), counts[code], sumQuantities[code], sumAmounts[code]));
+                }
+            }
+            result.sort(Comparator.comparing(SaleAggregate::getKey));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sum the sales matching the filter per client, ordered by client id.
+     */
+    public List<SaleAggregate> groupByClient(SaleColumnFilter filter) {
+        lock.readLock().lock();
+        try {
+            LongGroups groups = new LongGroups();
+            int product = productFilter(filter);
+            if (product != UNKNOWN_PRODUCT) {
+                for (int row = deleted.nextClearBit(0); row < size; row = deleted.nextClearBit(row + 1)) {
+                    if (clientIds[row] != NO_CLIENT && matches(row, filter, product)) {
+                        groups.add(clientIds[row], quantities[row], amounts[row]);
+                    }
+                }
+            }
+            return groups.toAggregates(String::valueOf);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sum the sales matching the filter per day, ordered by day.
+     */
+    public List<SaleAggregate> groupByDay(SaleColumnFilter filter) {
+        lock.readLock().lock();
+        try {
+            LongGroups groups = new LongGroups();
+            int product = productFilter(filter);
+            if (product != UNKNOWN_PRODUCT) {
+                for (int row = deleted.nextClearBit(0); row < size; row = deleted.nextClearBit(row + 1)) {
+                    if (days[row] != NO_DAY && matches(row, filter, product)) {
+                        groups.add(days[row], quantities[row], amounts[row]);
+                    }
+                }
+            }
+            return groups.toAggregates(day -> DAY_FORMAT.format(LocalDate.ofEpochDay(day)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The first {@code limit} aggregates, by decreasing metric.
+     */
+    public static List<SaleAggregate> top(List<SaleAggregate> aggregates, Metric metric, int limit) {
+        Comparator<SaleAggregate> comparator;
+        switch (metric) {
+        case COUNT:
+            comparator = Comparator.comparingLong(SaleAggregate::getCount);
+            break;
+        case QUANTITY:
+            comparator = Comparator.comparingLong(SaleAggregate::getQuantity);
+            break;
+        default:
+            comparator = Comparator.comparingDouble(SaleAggregate::getAmount);
+        }
+        List<SaleAggregate> sorted = new ArrayList<>(aggregates);
+        sorted.sort(comparator.reversed());
+        return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, limit)) : sorted;
+    }
+
+    /**
+     * @return the dictionary code to match, ANY_PRODUCT or UNKNOWN_PRODUCT.
+     */
+    private int productFilter(SaleColumnFilter filter) {
+        if (filter.getProductCode() == null) {
+            return ANY_PRODUCT;
+        }
+        Integer code = productDictionary.get(filter.getProductCode());
+        return code == null ? UNKNOWN_PRODUCT : code;
+    }
+
+    private boolean matches(int row, SaleColumnFilter filter, int product) {
+        int day = days[row];
+        if (day < filter.getMinDay() || day > filter.getMaxDay()) {
+            return false;
+        }
+        if (filter.isByClient() && clientIds[row] != filter.getClientId()) {
+            return false;
+        }
+        return product == ANY_PRODUCT || products[row] == product;
+    }
+}
@@ -0,0 +1,31 @@
+package ma.hero.sales.api;
+
+/**
+ * Strong ETags of the versioned resources: "id-version", the id and the version of the entity.
+ */
+final class EntityTag {
+
+    private EntityTag() {
+    }
+
+    static String of(Object id, Long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * @return the version of an ETag, checking that it is the ETag of the given entity.
+     * @throws IllegalArgumentException if it is not.
+     */
+    static Long versionOf(String eTag, Object id, String entity) {
+        String value = eTag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        value = value.replace("\"", "");
+        int separator = value.lastIndexOf('-');
+        if (separator < 0 || !value.substring(0, separator).equals(String.valueOf(id))) {
+            throw new IllegalArgumentException("If-Match is not an ETag of the " + entity + " " + id);
+        }
+        return Long.valueOf(value.substring(separator + 1));
+    }
+}
@@ -0,0 +1,93 @@
+package ma.hero.sales.api;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import ma.hero.sales.analytics.SaleColumnStore.Metric;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.service.ISaleAnalyticsService;
+import ma.hero.sales.service.ISaleAnalyticsService.Dimension;
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Sale analytics controller, answered from the in-memory column store.
+ **/
+@RestController
+@RequestMapping("/api/sale/analytics")
+@ConditionalOnProperty(prefix = "sales.analytics", name = "enabled", havingValue = "true")
+public class SaleAnalyticsController {
+
+    @Autowired
+    private ISaleAnalyticsService analyticsService;
+
+    // ------------------- Filtered totals -----------------------------------------
+    @GetMapping(value = "/totals")
+    public ResponseEntity<SaleAggregate> getTotals(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to,
+            @RequestParam(value = "clientId", required = false) Long clientId,
+            @RequestParam(value = "productCode", required = false) String productCode) {
+        checkReady();
+        return new ResponseEntity<>(analyticsService.getTotals(from, to, clientId, productCode), HttpStatus.OK);
+    }
+
+    // ------------------- Group by product ----------------------------------------
+    @GetMapping(value = "/products")
+    public ResponseEntity<List<SaleAggregate>> getTotalsByProduct(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to,
+            @RequestParam(value = "clientId", required = false) Long clientId) {
+        checkReady();
+        return new ResponseEntity<>(analyticsService.getTotalsByProduct(from, to, clientId), HttpStatus.OK);
+    }
+
+    // ------------------- Group by client -----------------------------------------
+    @GetMapping(value = "/clients")
+    public ResponseEntity<List<SaleAggregate>> getTotalsByClient(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to,
+            @RequestParam(value = "productCode", required = false) String productCode) {
+        checkReady();
+        return new ResponseEntity<>(analyticsService.getTotalsByClient(from, to, productCode), HttpStatus.OK);
+    }
+
+    // ------------------- Group by day --------------------------------------------
+    @GetMapping(value = "/days")
+    public ResponseEntity<List<SaleAggregate>> getTotalsByDay(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to,
+            @RequestParam(value = "clientId", required = false) Long clientId,
+            @RequestParam(value = "productCode", required = false) String productCode) {
+        checkReady();
+        return new ResponseEntity<>(analyticsService.getTotalsByDay(from, to, clientId, productCode), HttpStatus.OK);
+    }
+
+    // ------------------- Top N products or clients -------------------------------
+    @GetMapping(value = "/top")
+    public ResponseEntity<List<SaleAggregate>> getTop(
+            @RequestParam(value = "by", defaultValue = "PRODUCT") Dimension by,
+            @RequestParam(value = "metric", defaultValue = "AMOUNT") Metric metric,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        checkReady();
+        return new ResponseEntity<>(analyticsService.getTop(by, metric, Math.max(1, limit), from, to), HttpStatus.OK);
+    }
+
+    private void checkReady() {
+        if (!analyticsService.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The sale analytics store is still loading");
+        }
+    }
+}
@@ -1,16 +1,59 @@
 package ma.hero.sales.api;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.ClientEventDto;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.ProductSaleView;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.dto.SaleBatchResult;
+import ma.hero.sales.dto.SaleChangePage;
+import ma.hero.sales.dto.SalePage;
+import ma.hero.sales.dto.SaleTotals;
+import ma.hero.sales.journal.SaleJournal;
+import ma.hero.sales.service.IClientEventService;
+import ma.hero.sales.service.ISaleChangeService;
+import ma.hero.sales.service.ISaleExportService;
+import ma.hero.sales.service.ISaleExportService.Format;
+import ma.hero.sales.service.ISaleRollupService;
 import ma.hero.sales.service.ISaleService;
+import ma.hero.sales.service.ISaleService.DeleteInterruptedException;
+import ma.hero.sales.service.impl.SaleGroupCommitter;
+import ma.hero.sales.service.impl.SaleGroupCommitter.CommitOutcomeUnknownException;
+import ma.hero.sales.util.DateUtils;
 
 /**
  * Sale controller.
@@ -19,46 +62,325 @@ import ma.hero.sales.service.ISaleService;
 @RequestMapping("/api/sale")
 public class SaleController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    static final String JOURNAL_SEQUENCE_HEADER = "X-Journal-Sequence";
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
     @Autowired
     private ISaleService saleService;
 
+    @Autowired
+    private ISaleRollupService saleRollupService;
+
+    @Autowired
+    private ISaleExportService saleExportService;
+
+    @Autowired
+    private IClientEventService clientEventService;
+
+    @Autowired
+    private ISaleChangeService saleChangeService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private SaleJournal saleJournal;
+
+    @Autowired(required = false)
+    private SaleGroupCommitter saleGroupCommitter;
+
+    @Value("${sales.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${sales.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${sales.batch.chunk-size:1000}")
+    private int batchChunkSize;
+
+    @Value("${sales.bulk.max-clients:1000}")
+    private int maxBulkClients;
+
     private static final Logger log = LoggerFactory.getLogger(SaleController.class);
 
-    // -------------------get All Sales-------------------------------------------
+    // -------------------get All Sales (keyset paginated)------------------------
     @GetMapping
-    public ResponseEntity<List<Sale>> findAll() {
-        log.info("Returning sale list from database.");
-        List<Sale> sales = saleService.getAllSales();
-        return new ResponseEntity<>(sales, HttpStatus.OK);
+    public ResponseEntity<SalePage> findAll(@RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        log.info("Returning a sale page from database.");
+        int pageSize = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        // one extra row tells whether a next page exists
+        List<Sale> sales = saleService.getSalesPage(PageCursor.decode(cursor), pageSize + 1);
+        String nextCursor = null;
+        if (sales.size() > pageSize) {
+            sales = sales.subList(0, pageSize);
+            nextCursor = PageCursor.encode(sales.get(pageSize - 1).getId());
+        }
+        return new ResponseEntity<>(new SalePage(sales, nextCursor), HttpStatus.OK);
+    }
+
+    // -------------------Sale changes since a token (delta sync)----------------
+    @GetMapping(value = "/changes")
+    public ResponseEntity<SaleChangePage> getChanges(@RequestParam(value = "since", required = false) String since,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        // the caller keeps the next token, an incomplete page means it is caught up
+        int size = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        SaleChangePage page;
+        try {
+            page = saleChangeService.getChanges(since, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid token : " + since);
+        }
+        if (page == null) {
+            // compacted past the token: the changes must be read again from the beginning
+            return new ResponseEntity<>(HttpStatus.GONE);
+        }
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    // -------------------Stream All Sales (NDJSON)-------------------------------
+    @GetMapping(value = "/stream", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        log.info("Streaming sale list from database.");
+        ObjectWriter writer = objectMapper.writerFor(Sale.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                saleService.streamAllSales(sale -> {
+                    try {
+                        writer.writeValue(generator, sale);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
+    // -------------------Export Sales (CSV or NDJSON, optionally gzipped)--------
+    @GetMapping(value = "/export")
+    public ResponseEntity<StreamingResponseBody> exportSales(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip) {
+        Format exportFormat;
+        try {
+            exportFormat = Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format);
+        }
+        log.info("Exporting sales from {} to {} as {}.", from, to, exportFormat);
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                    saleExportService.exportSales(exportFormat, from, to, gzipOut);
+                }
+            } else {
+                saleExportService.exportSales(exportFormat, from, to, out);
+            }
+        };
+        String fileName = exportFormat == Format.CSV ? "sales.csv" : "sales.ndjson";
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat == Format.CSV ? TEXT_CSV : MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     // -------------------Retrieve Single Sale------------------------------------
     @GetMapping(value = "/{id}")
-    public ResponseEntity<Sale> getSale(@PathVariable("id") long id) {
+    public ResponseEntity<Sale> getSale(@PathVariable("id") long id, WebRequest request) {
         Sale sale = saleService.getSale(id);
+        if (sale != null && request.checkNotModified(saleETag(sale))) {
+            return null;
+        }
         return new ResponseEntity<>(sale, HttpStatus.OK);
     }
 
     // -------------------Retrieve Sales By ClientId------------------------------------
     @GetMapping(value = "/client/{id}")
-    public ResponseEntity<List<Sale>> getSalesByClient(@PathVariable("id") long id) {
+    public ResponseEntity<List<Sale>> getSalesByClient(@PathVariable("id") long id, WebRequest request) {
+        // the change counter is checked first, a 304 does not load the sales
+        if (request.checkNotModified(clientSalesETag(id, saleService.getClientSalesVersion(id)))) {
+            return null;
+        }
         List<Sale> sales = saleService.getSalesByClient((id));
         return new ResponseEntity<>(sales, HttpStatus.OK);
     }
 
+    // -------------------Retrieve Sales of several Clients----------------------
+    @GetMapping(value = "/clients")
+    public ResponseEntity<Map<Long, List<Sale>>> getSalesByClients(@RequestParam("ids") List<Long> ids) {
+        if (ids.size() > maxBulkClients) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + maxBulkClients + " client ids per request");
+        }
+        return new ResponseEntity<>(saleService.getSalesByClients(ids), HttpStatus.OK);
+    }
+
+    // -------------------Retrieve Sales By ClientId over a period----------------
+    @GetMapping(value = "/client/{id}/range")
+    public ResponseEntity<List<ClientSaleView>> getClientSalesBetween(@PathVariable("id") long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        return new ResponseEntity<>(saleService.getClientSalesBetween(id, from, to), HttpStatus.OK);
+    }
+
+    // -------------------Retrieve Sales By Product over a period-----------------
+    @GetMapping(value = "/product/{code}")
+    public ResponseEntity<List<ProductSaleView>> getProductSalesBetween(@PathVariable("code") String code,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        return new ResponseEntity<>(saleService.getProductSalesBetween(code, from, to), HttpStatus.OK);
+    }
+
+    // -------------------Retrieve Client Totals (from the rollup)----------------
+    @GetMapping(value = "/client/{id}/totals")
+    public ResponseEntity<SaleTotals> getClientTotals(@PathVariable("id") long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        return new ResponseEntity<>(saleRollupService.getClientTotals(id, from, to), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/client/{id}/totals/daily")
+    public ResponseEntity<List<SaleAggregate>> getClientDailyTotals(@PathVariable("id") long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        return new ResponseEntity<>(saleRollupService.getClientDailyTotals(id, from, to), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/client/{id}/totals/products")
+    public ResponseEntity<List<SaleAggregate>> getClientProductTotals(@PathVariable("id") long id,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate to) {
+        return new ResponseEntity<>(saleRollupService.getClientProductTotals(id, from, to), HttpStatus.OK);
+    }
+
+    // -------------------Rebuild the Rollup--------------------------------------
+    @PostMapping(value = "/rollup/rebuild")
+    public ResponseEntity<Long> rebuildRollup() {
+        log.info("Rebuilding the sale rollup from database.");
+        return new ResponseEntity<>(saleRollupService.rebuild(), HttpStatus.OK);
+    }
+
     // -------------------Create a Sale-------------------------------------------
     @PostMapping
     public ResponseEntity<Sale> createSale(@RequestBody Sale sale) {
+        if (saleJournal != null) {
+            // acknowledged once journaled, the id is assigned when the drainer inserts it
+            long sequence = saleJournal.append(sale);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).header(JOURNAL_SEQUENCE_HEADER, String.valueOf(sequence)).body(sale);
+        }
+        if (saleGroupCommitter != null) {
+            try {
+                return new ResponseEntity<>(saleGroupCommitter.create(sale), HttpStatus.CREATED);
+            } catch (RejectedExecutionException e) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+            } catch (CommitOutcomeUnknownException e) {
+                // not a 503: the sale may have been saved, so a blind retry could insert it twice
+                throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e);
+            }
+        }
         sale = saleService.createSale(sale);
         return new ResponseEntity<>(sale, HttpStatus.CREATED);
     }
 
+    // -------------------Create Sales in bulk (JSON array or NDJSON)-------------
+    @PostMapping(value = "/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<List<SaleBatchResult>> createSales(InputStream body) throws IOException {
+        log.info("Creating sales in bulk.");
+        List<SaleBatchResult> results = new ArrayList<>();
+        // a root level array is unwrapped by the iterator, so both formats are read the same way
+        try (MappingIterator<Sale> sales = objectMapper.readerFor(Sale.class).readValues(body)) {
+            List<Sale> chunk = new ArrayList<>(batchChunkSize);
+            while (true) {
+                try {
+                    if (!sales.hasNextValue()) {
+                        break;
+                    }
+                    chunk.add(sales.nextValue());
+                } catch (IOException e) {
+                    SaleBatchResult result = new SaleBatchResult(results.size(), chunk.size());
+                    result.setError("Unreadable sale after " + chunk.size() + " sales of this chunk : " + e.getMessage());
+                    results.add(result);
+                    return new ResponseEntity<>(results, HttpStatus.BAD_REQUEST);
+                }
+                if (chunk.size() == batchChunkSize) {
+                    results.add(createChunk(results.size(), chunk));
+                    chunk = new ArrayList<>(batchChunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                results.add(createChunk(results.size(), chunk));
+            }
+        }
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
+    private SaleBatchResult createChunk(int index, List<Sale> chunk) {
+        SaleBatchResult result = new SaleBatchResult(index, chunk.size());
+        long start = System.nanoTime();
+        try {
+            List<Sale> created = saleService.createSales(chunk);
+            result.setCreated(created.size());
+            result.setFirstId(created.get(0).getId());
+            result.setLastId(created.get(created.size() - 1).getId());
+        } catch (RuntimeException e) {
+            log.warn("Chunk {} of the sale batch failed", index, e);
+            result.setError(e.getMessage());
+        }
+        result.setDurationMs((System.nanoTime() - start) / 1_000_000L);
+        return result;
+    }
+
     // ----- Update an existing Sale ----- //
     @PutMapping
     public ResponseEntity<Sale> updateSale(@RequestBody Sale sale) {
         log.info("Update a sale from database.");
-        saleService.updateSale(sale);
-        return new ResponseEntity<>(sale, HttpStatus.OK);
+        Sale updated;
+        try {
+            updated = saleService.updateSale(sale);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The sale was modified by another request", e);
+        }
+        if (updated == null) {
+            return new ResponseEntity<>(sale, HttpStatus.OK);
+        }
+        return ResponseEntity.ok().eTag(saleETag(updated)).body(updated);
+    }
+
+    // ----- Update some fields of a Sale ----- //
+    @PatchMapping(value = "/{id}")
+    public ResponseEntity<Sale> patchSale(@PathVariable("id") long id, @RequestBody Map<String, Object> changes,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.info("Patch a sale from database.");
+        // only the fields present in the body are updated, the expected version comes from If-Match or the body
+        Map<String, Object> fields = new LinkedHashMap<>(changes);
+        fields.remove("id");
+        Object bodyVersion = fields.remove("version");
+        Sale patched;
+        try {
+            if (fields.isEmpty()) {
+                throw new IllegalArgumentException("No field to patch");
+            }
+            Long version = ifMatch != null ? EntityTag.versionOf(ifMatch, id, "sale") : bodyVersion == null ? null : Long.valueOf(bodyVersion.toString());
+            patched = saleService.patchSale(id, version, objectMapper.convertValue(fields, Sale.class), fields.keySet());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The sale was modified by another request", e);
+        }
+        if (patched == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok().eTag(saleETag(patched)).body(patched);
     }
 
     // ------------------- Delete a Sale-----------------------------------------
@@ -67,4 +389,51 @@ public class SaleController {
         saleService.deleteSale(id);
         return new ResponseEntity<>(HttpStatus.OK);
     }
-}
\ No newline at end of file
+
+    // ------------------- Apply the Client events relayed by client-service -----
+    @PostMapping(value = "/client-events")
+    public ResponseEntity<Integer> applyClientEvents(@RequestBody List<ClientEventDto> events) {
+        try {
+            return new ResponseEntity<>(clientEventService.applyClientEvents(events), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.info("Invalid client events: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // ------------------- Delete Sales by ids, client or date---------------------
+    @DeleteMapping
+    public ResponseEntity<Long> deleteSales(@RequestParam(value = "ids", required = false) List<Long> ids,
+            @RequestParam(value = "clientId", required = false) Long clientId,
+            @RequestParam(value = "before", required = false) @DateTimeFormat(pattern = DateUtils.DATE_PATTERN) LocalDate before) {
+        // exactly one criterion, so that a request without parameters never empties the table
+        int criteria = (ids == null ? 0 : 1) + (clientId == null ? 0 : 1) + (before == null ? 0 : 1);
+        if (criteria != 1) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        long deleted;
+        try {
+            if (ids != null) {
+                deleted = saleService.deleteSales(ids);
+            } else if (clientId != null) {
+                deleted = saleService.deleteClientSales(clientId);
+            } else {
+                deleted = saleService.deleteSalesBefore(before);
+            }
+        } catch (DeleteInterruptedException e) {
+            // the deleted chunks stay deleted, the same request deletes the rest
+            log.warn("Sales delete interrupted after {} sales", e.getDeleted());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
+        log.info("{} sales deleted from database.", deleted);
+        return new ResponseEntity<>(deleted, HttpStatus.OK);
+    }
+
+    private static String saleETag(Sale sale) {
+        return EntityTag.of(sale.getId(), sale.getVersion());
+    }
+
+    private static String clientSalesETag(long clientId, long version) {
+        return EntityTag.of("client-" + clientId, version);
+    }
+}
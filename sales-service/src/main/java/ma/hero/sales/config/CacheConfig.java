@@ -0,0 +1,18 @@
+package ma.hero.sales.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the sale read cache, filled and evicted by SaleCache.
+ * The provider, sizes and TTL come from the spring.cache properties; spring.cache.type=none switches it off.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String SALE_CACHE = "sale";
+
+    public static final String SALES_BY_CLIENT_CACHE = "salesByClient";
+
+}
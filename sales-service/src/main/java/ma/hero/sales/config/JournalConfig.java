@@ -0,0 +1,33 @@
+package ma.hero.sales.config;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ma.hero.sales.domain.SaleJournalCheckpoint;
+import ma.hero.sales.journal.SaleJournal;
+import ma.hero.sales.repository.SaleJournalCheckpointRepository;
+
+/**
+ * Opens the sale journal when sales.journal.enabled is set: sales are then acknowledged once journaled
+ * and inserted in the database by the journal drainer.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "sales.journal", name = "enabled", havingValue = "true")
+public class JournalConfig {
+
+    public static final String CHECKPOINT_NAME = "sale";
+
+    @Bean(destroyMethod = "close")
+    public SaleJournal saleJournal(SaleJournalCheckpointRepository checkpointRepository,
+            @Value("${sales.journal.directory:data/sale-journal}") String directory,
+            @Value("${sales.journal.segment-size:67108864}") int segmentSize,
+            @Value("${sales.journal.force-on-append:false}") boolean forceOnAppend) throws IOException {
+        long checkpoint = checkpointRepository.findById(CHECKPOINT_NAME).map(SaleJournalCheckpoint::getSequence).orElse(0L);
+        return new SaleJournal(Paths.get(directory), segmentSize, forceOnAppend, checkpoint);
+    }
+}
@@ -0,0 +1,62 @@
+package ma.hero.sales.config;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes sure sale_sequence hands out ids above the existing sales before the service takes traffic. A database
+ * whose sales were inserted with IDENTITY ids gets a sequence starting at 1, which would collide with them.
+ * The sequence table (MySQL) is advanced past max(sale.id); a native sequence that is behind fails the startup.
+ */
+@Component
+public class SaleSequenceCheck implements SmartInitializingSingleton {
+
+    public static final String SEQUENCE_NAME = "sale_sequence";
+
+    private final Logger log = LoggerFactory.getLogger(SaleSequenceCheck.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public SaleSequenceCheck(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        check();
+    }
+
+    /**
+     * Check the sequence against max(sale.id), advancing the sequence table when it is behind.
+     * @throws IllegalStateException when a native sequence is behind
+     */
+    public void check() {
+        long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from sale", Long.class);
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (dialect.supportsSequences()) {
+            // pooled-lo: the next value is the first id of the next block, it is skipped but never reused
+            long next = jdbcTemplate.queryForObject(dialect.getSequenceNextValString(SEQUENCE_NAME), Long.class);
+            if (next <= maxId) {
+                throw new IllegalStateException("Sequence " + SEQUENCE_NAME + " is at " + next + ", below the largest sale id " + maxId
+                        + ": restart it with " + (maxId + 1) + " before starting the service");
+            }
+            return;
+        }
+        // conditional, so that instances starting together never move the sequence back
+        int advanced = jdbcTemplate.update("update " + SEQUENCE_NAME + " set next_val = ? where next_val <= ?", maxId + 1, maxId);
+        if (advanced > 0) {
+            log.warn("Sequence {} advanced to {}, past the existing sale ids", SEQUENCE_NAME, maxId + 1);
+        }
+    }
+}
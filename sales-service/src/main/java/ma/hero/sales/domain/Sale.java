@@ -6,9 +6,13 @@ import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
@@ -16,13 +20,23 @@ import com.fasterxml.jackson.annotation.JsonFormat;
  * A Sale.
  */
 @Entity
-@Table(name = "sale")
+@Table(name = "sale", indexes = {
+        @Index(name = "idx_sale_client_date", columnList = "client_id, operation_date"),
+        @Index(name = "idx_sale_client_id", columnList = "client_id, id"),
+        @Index(name = "idx_sale_product_date", columnList = "product_code, operation_date") })
 public class Sale implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Pooled sequence (a table on MySQL) instead of IDENTITY, so that Hibernate can batch the inserts.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "sale_id_generator")
+    @GenericGenerator(name = "sale_id_generator", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "sale_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo") })
     private Long id;
     @Column(name = "product_code")
     private String productCode;
@@ -35,6 +49,12 @@ public class Sale implements Serializable {
     private Long quantity;
     @Column(name = "amount")
     private Double amount;
+    /**
+     * Optimistic lock, also the strong ETag of the sale.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 
     public Sale(String productCode, Long clientId, Date operationDate, Long quantity, Double amount) {
         super();
@@ -48,6 +68,16 @@ public class Sale implements Serializable {
     public Sale() {
     }
 
+    /**
+     * Copy constructor, used to keep a snapshot of a sale before it is modified and to cache sales.
+     */
+    public Sale(Sale other) {
+        this(other.productCode, other.clientId, other.operationDate == null ? null : (Date) other.operationDate.clone(),
+                other.quantity, other.amount);
+        this.id = other.id;
+        this.version = other.version;
+    }
+
     public Long getId() {
         return id;
     }
@@ -96,4 +126,12 @@ public class Sale implements Serializable {
         this.amount = amount;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * An entry of the sale change log: the sale before and after one insert, update or delete.
+ * An entry kept by the compaction as the state of its sale is rewritten as an insert.
+ */
+@Entity
+@Table(name = "sale_change", indexes = { @Index(name = "idx_sale_change_sale", columnList = "sale_id, seq") })
+public class SaleChange implements Persistable<Long>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        INSERT, UPDATE, DELETE
+    }
+
+    @Id
+    @Column(name = "seq")
+    private Long seq;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 8, nullable = false)
+    private Type type;
+    @Column(name = "sale_id", nullable = false)
+    private Long saleId;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "changed_at", nullable = false)
+    private Date changedAt;
+    /**
+     * The sale before the change, null for an insert.
+     */
+    @Embedded
+    @AttributeOverrides({ @AttributeOverride(name = "productCode", column = @Column(name = "before_product_code")),
+            @AttributeOverride(name = "clientId", column = @Column(name = "before_client_id")),
+            @AttributeOverride(name = "operationDate", column = @Column(name = "before_operation_date")),
+            @AttributeOverride(name = "quantity", column = @Column(name = "before_quantity")),
+            @AttributeOverride(name = "amount", column = @Column(name = "before_amount")),
+            @AttributeOverride(name = "version", column = @Column(name = "before_version")) })
+    private SaleImage before;
+    /**
+     * The sale after the change, null for a delete.
+     */
+    @Embedded
+    @AttributeOverrides({ @AttributeOverride(name = "productCode", column = @Column(name = "after_product_code")),
+            @AttributeOverride(name = "clientId", column = @Column(name = "after_client_id")),
+            @AttributeOverride(name = "operationDate", column = @Column(name = "after_operation_date")),
+            @AttributeOverride(name = "quantity", column = @Column(name = "after_quantity")),
+            @AttributeOverride(name = "amount", column = @Column(name = "after_amount")),
+            @AttributeOverride(name = "version", column = @Column(name = "after_version")) })
+    private SaleImage after;
+    /**
+     * Inserted without the select of a merge, the id being assigned.
+     */
+    @Transient
+    private boolean created;
+
+    public SaleChange() {
+    }
+
+    public SaleChange(Type type, Long saleId, Sale before, Sale after) {
+        this.type = type;
+        this.saleId = saleId;
+        this.before = before == null ? null : new SaleImage(before);
+        this.after = after == null ? null : new SaleImage(after);
+        this.created = true;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored() {
+        created = false;
+    }
+
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return seq;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return created;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getSaleId() {
+        return saleId;
+    }
+
+    public void setSaleId(Long saleId) {
+        this.saleId = saleId;
+    }
+
+    public Date getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(Date changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    public SaleImage getBefore() {
+        return before;
+    }
+
+    public void setBefore(SaleImage before) {
+        this.before = before;
+    }
+
+    public SaleImage getAfter() {
+        return after;
+    }
+
+    public void setAfter(SaleImage after) {
+        this.after = after;
+    }
+}
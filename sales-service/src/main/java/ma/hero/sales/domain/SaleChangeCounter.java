@@ -0,0 +1,71 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A counter of the sale change log.
+ * The sequence row is incremented just before the commit of every transaction that changes sales: its row lock is
+ * held until the commit, so the sequence numbers are given in commit order and without gaps.
+ */
+@Entity
+@Table(name = "sale_change_counter")
+public class SaleChangeCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The sequence number of the last change logged.
+     */
+    public static final String SEQUENCE = "sequence";
+
+    /**
+     * The sequence number up to which the log is compacted.
+     */
+    public static final String COMPACTED = "compacted";
+
+    /**
+     * The largest sale id seeded into the log, Long.MAX_VALUE once every existing sale is. The changes of the sales
+     * above it are not logged: the seed logs their state when it reaches them.
+     */
+    public static final String SEEDED = "seeded";
+
+    /**
+     * The time, in epoch milliseconds, until which the compaction is held for a reader inside the compacted range.
+     */
+    public static final String HELD_UNTIL = "held-until";
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+    @Column(name = "counter_value", nullable = false)
+    private long value;
+
+    public SaleChangeCounter() {
+    }
+
+    public SaleChangeCounter(String name, long value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public void setValue(long value) {
+        this.value = value;
+    }
+}
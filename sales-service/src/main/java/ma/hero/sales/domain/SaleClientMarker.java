@@ -0,0 +1,49 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Change counter of the sales of a client, incremented in the transaction of every sale write.
+ * It backs the ETag of the client sale list, so that a conditional GET does not need to load the sales.
+ */
+@Entity
+@Table(name = "sale_client_marker")
+public class SaleClientMarker implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "client_id")
+    private Long clientId;
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public SaleClientMarker() {
+    }
+
+    public SaleClientMarker(Long clientId, long version) {
+        this.clientId = clientId;
+        this.version = version;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
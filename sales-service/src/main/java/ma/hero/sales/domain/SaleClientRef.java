@@ -0,0 +1,124 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+/**
+ * What the sales service knows of a client, from the events relayed by the client service.
+ * The id of the last applied event makes the events idempotent: an event with a lower or equal id is a duplicate
+ * or arrives after a later change of the client, and is skipped.
+ */
+@Entity
+@Table(name = "client_ref", indexes = @Index(name = "idx_client_ref_sales_purge", columnList = "sales_purge_pending"))
+public class SaleClientRef implements Persistable<Long>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "client_id")
+    private Long clientId;
+    @Column(name = "client_version")
+    private Long clientVersion;
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted;
+    @Column(name = "last_event_id", nullable = false)
+    private long lastEventId;
+    /**
+     * The client is deleted and its sales are still to be deleted, set with the event and cleared once they are.
+     */
+    @Column(name = "sales_purge_pending", nullable = false)
+    private boolean salesPurgePending;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "updated_at")
+    private Date updatedAt;
+    /**
+     * Inserted without the select of a merge, the id being assigned.
+     */
+    @Transient
+    private boolean created;
+
+    public SaleClientRef() {
+    }
+
+    public SaleClientRef(Long clientId) {
+        this.clientId = clientId;
+        this.created = true;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored() {
+        created = false;
+    }
+
+    @Override
+    public Long getId() {
+        return clientId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return created;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public Long getClientVersion() {
+        return clientVersion;
+    }
+
+    public void setClientVersion(Long clientVersion) {
+        this.clientVersion = clientVersion;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getLastEventId() {
+        return lastEventId;
+    }
+
+    public void setLastEventId(long lastEventId) {
+        this.lastEventId = lastEventId;
+    }
+
+    public boolean isSalesPurgePending() {
+        return salesPurgePending;
+    }
+
+    public void setSalesPurgePending(boolean salesPurgePending) {
+        this.salesPurgePending = salesPurgePending;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
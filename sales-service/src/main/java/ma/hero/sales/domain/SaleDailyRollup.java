@@ -0,0 +1,109 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Sales of a client for one product on one day, kept up to date with the sale table.
+ */
+@Entity
+@Table(name = "sale_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(name = "uk_sale_rollup_client_day_product", columnNames = { "client_id", "day", "product_code" }),
+        indexes = @Index(name = "idx_sale_rollup_day", columnList = "day"))
+public class SaleDailyRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+    @Column(name = "product_code", nullable = false)
+    private String productCode;
+    @Column(name = "sale_count", nullable = false)
+    private long saleCount;
+    @Column(name = "quantity", nullable = false)
+    private long quantity;
+    @Column(name = "amount", nullable = false)
+    private double amount;
+
+    public SaleDailyRollup() {
+    }
+
+    public SaleDailyRollup(Long clientId, LocalDate day, String productCode, long saleCount, long quantity, double amount) {
+        this.clientId = clientId;
+        this.day = day;
+        this.productCode = productCode;
+        this.saleCount = saleCount;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public void setProductCode(String productCode) {
+        this.productCode = productCode;
+    }
+
+    public long getSaleCount() {
+        return saleCount;
+    }
+
+    public void setSaleCount(long saleCount) {
+        this.saleCount = saleCount;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,92 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+/**
+ * The values of a sale at one point of the change log.
+ */
+@Embeddable
+public class SaleImage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "product_code")
+    private String productCode;
+    @Column(name = "client_id")
+    private Long clientId;
+    @JsonFormat(pattern = "dd-MM-yyyy")
+    @Column(name = "operation_date")
+    private Date operationDate;
+    @Column(name = "quantity")
+    private Long quantity;
+    @Column(name = "amount")
+    private Double amount;
+    @Column(name = "version")
+    private Long version;
+
+    public SaleImage() {
+    }
+
+    public SaleImage(Sale sale) {
+        this.productCode = sale.getProductCode();
+        this.clientId = sale.getClientId();
+        this.operationDate = sale.getOperationDate();
+        this.quantity = sale.getQuantity();
+        this.amount = sale.getAmount();
+        this.version = sale.getVersion();
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public void setProductCode(String productCode) {
+        this.productCode = productCode;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public Date getOperationDate() {
+        return operationDate;
+    }
+
+    public void setOperationDate(Date operationDate) {
+        this.operationDate = operationDate;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Double amount) {
+        this.amount = amount;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
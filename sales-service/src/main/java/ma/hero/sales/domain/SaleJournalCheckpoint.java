@@ -0,0 +1,48 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Sequence of the last journal record inserted in the sale table, committed with the inserted sales.
+ */
+@Entity
+@Table(name = "sale_journal_checkpoint")
+public class SaleJournalCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+    @Column(name = "sequence", nullable = false)
+    private long sequence;
+
+    public SaleJournalCheckpoint() {
+    }
+
+    public SaleJournalCheckpoint(String name, long sequence) {
+        this.name = name;
+        this.sequence = sequence;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,117 @@
+package ma.hero.sales.domain;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A journaled sale that could not be inserted in the sale table, kept with its error instead of blocking the drain.
+ */
+@Entity
+@Table(name = "sale_journal_dead_letter")
+public class SaleJournalDeadLetter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    @Id
+    @Column(name = "sequence")
+    private Long sequence;
+    @Column(name = "product_code", length = 1024)
+    private String productCode;
+    @Column(name = "client_id")
+    private Long clientId;
+    @Column(name = "operation_date")
+    private Date operationDate;
+    @Column(name = "quantity")
+    private Long quantity;
+    @Column(name = "amount")
+    private Double amount;
+    @Column(name = "error", length = MAX_ERROR_LENGTH)
+    private String error;
+    @Column(name = "failed_at", nullable = false)
+    private Date failedAt;
+
+    public SaleJournalDeadLetter() {
+    }
+
+    public SaleJournalDeadLetter(long sequence, Sale sale, String error) {
+        this.sequence = sequence;
+        this.productCode = sale.getProductCode();
+        this.clientId = sale.getClientId();
+        this.operationDate = sale.getOperationDate();
+        this.quantity = sale.getQuantity();
+        this.amount = sale.getAmount();
+        this.error = error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+        this.failedAt = new Date();
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public void setProductCode(String productCode) {
+        this.productCode = productCode;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public Date getOperationDate() {
+        return operationDate;
+    }
+
+    public void setOperationDate(Date operationDate) {
+        this.operationDate = operationDate;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Double amount) {
+        this.amount = amount;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getFailedAt() {
+        return failedAt;
+    }
+
+    public void setFailedAt(Date failedAt) {
+        this.failedAt = failedAt;
+    }
+}
@@ -0,0 +1,79 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A client change relayed by the client service from its outbox.
+ */
+public class ClientEventDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private Long id;
+    private Long clientId;
+    private Type type;
+    private Long version;
+    private Date occurredAt;
+
+    public ClientEventDto() {
+    }
+
+    public ClientEventDto(Long id, Long clientId, Type type, Long version, Date occurredAt) {
+        this.id = id;
+        this.clientId = clientId;
+        this.type = type;
+        this.version = version;
+        this.occurredAt = occurredAt;
+    }
+
+    /**
+     * @return the id of the event in the client outbox, increasing with the changes.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the version of the client after the change, null when it is not known.
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Date getOccurredAt() {
+        return occurredAt;
+    }
+
+    public void setOccurredAt(Date occurredAt) {
+        this.occurredAt = occurredAt;
+    }
+}
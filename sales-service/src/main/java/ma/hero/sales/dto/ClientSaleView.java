@@ -0,0 +1,24 @@
+package ma.hero.sales.dto;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Projection of a sale read for a known client : the client id column is not selected.
+ */
+public interface ClientSaleView {
+
+    Long getId();
+
+    String getProductCode();
+
+    @JsonFormat(pattern = DateUtils.DATE_PATTERN)
+    Date getOperationDate();
+
+    Long getQuantity();
+
+    Double getAmount();
+}
@@ -0,0 +1,24 @@
+package ma.hero.sales.dto;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Projection of a sale read for a known product : the product code column is not selected.
+ */
+public interface ProductSaleView {
+
+    Long getId();
+
+    Long getClientId();
+
+    @JsonFormat(pattern = DateUtils.DATE_PATTERN)
+    Date getOperationDate();
+
+    Long getQuantity();
+
+    Double getAmount();
+}
@@ -0,0 +1,58 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+
+/**
+ * Sales totals of one group (a day, a product, a client...).
+ */
+public class SaleAggregate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String key;
+    private long count;
+    private long quantity;
+    private double amount;
+
+    public SaleAggregate() {
+    }
+
+    public SaleAggregate(String key, long count, long quantity, double amount) {
+        this.key = key;
+        this.count = count;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,86 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of one chunk of a bulk sale ingestion.
+ */
+public class SaleBatchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int chunk;
+    private int received;
+    private int created;
+    private Long firstId;
+    private Long lastId;
+    private long durationMs;
+    private String error;
+
+    public SaleBatchResult() {
+    }
+
+    public SaleBatchResult(int chunk, int received) {
+        this.chunk = chunk;
+        this.received = received;
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    public void setChunk(int chunk) {
+        this.chunk = chunk;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public void setReceived(int received) {
+        this.received = received;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public void setCreated(int created) {
+        this.created = created;
+    }
+
+    public Long getFirstId() {
+        return firstId;
+    }
+
+    public void setFirstId(Long firstId) {
+        this.firstId = firstId;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(Long lastId) {
+        this.lastId = lastId;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * @return the reason why the chunk was not persisted, null on success.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
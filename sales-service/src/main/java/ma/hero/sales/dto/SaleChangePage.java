@@ -0,0 +1,47 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ma.hero.sales.domain.SaleChange;
+
+/**
+ * A page of the sale change log.
+ */
+public class SaleChangePage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<SaleChange> changes;
+    private String next;
+
+    public SaleChangePage() {
+    }
+
+    public SaleChangePage(List<SaleChange> changes, String next) {
+        this.changes = changes;
+        this.next = next;
+    }
+
+    /**
+     * @return the changes, in sequence order.
+     */
+    public List<SaleChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<SaleChange> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * @return the opaque token to pass as since to get the changes that follow, never null.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,44 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ma.hero.sales.domain.Sale;
+
+/**
+ * A keyset page of sales.
+ */
+public class SalePage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<Sale> content;
+    private String nextCursor;
+
+    public SalePage() {
+    }
+
+    public SalePage(List<Sale> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Sale> getContent() {
+        return content;
+    }
+
+    public void setContent(List<Sale> content) {
+        this.content = content;
+    }
+
+    /**
+     * @return the opaque token to pass as cursor to get the next page, null on the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
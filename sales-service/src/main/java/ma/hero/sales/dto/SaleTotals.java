@@ -0,0 +1,85 @@
+package ma.hero.sales.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Sales totals of a client over a period.
+ */
+public class SaleTotals implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long clientId;
+    @JsonFormat(pattern = DateUtils.DATE_PATTERN)
+    private LocalDate from;
+    @JsonFormat(pattern = DateUtils.DATE_PATTERN)
+    private LocalDate to;
+    private long count;
+    private long quantity;
+    private double amount;
+
+    public SaleTotals() {
+    }
+
+    public SaleTotals(Long clientId, LocalDate from, LocalDate to, long count, long quantity, double amount) {
+        this.clientId = clientId;
+        this.from = from;
+        this.to = to;
+        this.count = count;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    public Long getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(Long clientId) {
+        this.clientId = clientId;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,60 @@
+package ma.hero.sales.event;
+
+import ma.hero.sales.domain.Sale;
+
+/**
+ * Published by the sale service each time a sale is created, updated or deleted.
+ */
+public class SaleEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final Sale previous;
+    private final Sale current;
+
+    private SaleEvent(Type type, Sale previous, Sale current) {
+        this.type = type;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public static SaleEvent created(Sale sale) {
+        return new SaleEvent(Type.CREATED, null, sale);
+    }
+
+    public static SaleEvent updated(Sale previous, Sale current) {
+        return new SaleEvent(Type.UPDATED, previous, current);
+    }
+
+    public static SaleEvent deleted(Sale previous) {
+        return new SaleEvent(Type.DELETED, previous, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the sale before the change, null for a creation.
+     */
+    public Sale getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the sale after the change, null for a deletion.
+     */
+    public Sale getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the id of the changed sale.
+     */
+    public Long getSaleId() {
+        return current != null ? current.getId() : previous.getId();
+    }
+}
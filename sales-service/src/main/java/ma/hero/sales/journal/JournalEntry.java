@@ -0,0 +1,25 @@
+package ma.hero.sales.journal;
+
+import ma.hero.sales.domain.Sale;
+
+/**
+ * A sale read back from the {@link SaleJournal}, with its journal sequence.
+ */
+public final class JournalEntry {
+
+    private final long sequence;
+    private final Sale sale;
+
+    JournalEntry(long sequence, Sale sale) {
+        this.sequence = sequence;
+        this.sale = sale;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Sale getSale() {
+        return sale;
+    }
+}
@@ -0,0 +1,469 @@
+package ma.hero.sales.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ma.hero.sales.domain.Sale;
+
+/**
+ * Append only journal of the sales waiting to be inserted in the database.
+ * <p>
+ * Records are appended to memory mapped segment files of a fixed size, named after the sequence of their first record.
+ * A record is {@code [int length][int crc32][long sequence][payload]}; the CRC covers the sequence and the payload and
+ * the length is written last, so that a record torn by a crash is dropped when the journal is reopened.
+ * Segments whose records are all below the drained checkpoint are unmapped and deleted by {@link #release(long)}: a mapping
+ * is otherwise only released when the garbage collector gets to its buffer, holding address space and file handles.
+ * <p>
+ * Appends are serialized. Readers only read up to the last published sequence, so they never see a partial record.
+ */
+public class SaleJournal implements Closeable {
+
+    static final int HEADER_SIZE = 16;
+    static final int MAX_PAYLOAD_SIZE = 1024;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int FIXED_PAYLOAD_SIZE = 35;
+    private static final int HAS_CLIENT = 1;
+    private static final int HAS_DATE = 2;
+    private static final int HAS_QUANTITY = 4;
+    private static final int HAS_AMOUNT = 8;
+
+    private static final Logger log = LoggerFactory.getLogger(SaleJournal.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final byte[] record = new byte[HEADER_SIZE + MAX_PAYLOAD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    private final CRC32 crc = new CRC32();
+
+    private Segment active;
+    private volatile long lastSequence;
+    private int waiters;
+    private boolean closed;
+
+    /**
+     * Open the journal, recovering the segments found in the directory.
+     *
+     * @param directory
+     *            the directory of the segment files, created if missing.
+     * @param segmentSize
+     *            the size of a new segment file, in bytes.
+     * @param forceOnAppend
+     *            whether to force each record to the storage device before acknowledging it.
+     * @param checkpoint
+     *            the sequence of the last record already inserted in the database.
+     */
+    public SaleJournal(Path directory, int segmentSize, boolean forceOnAppend, long checkpoint) throws IOException {
+        if (segmentSize < HEADER_SIZE + MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("The journal segment size must be at least " + (HEADER_SIZE + MAX_PAYLOAD_SIZE) + " bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(directory);
+        recover(checkpoint);
+    }
+
+    /**
+     * Append a sale to the journal.
+     *
+     * @return the sequence of the record.
+     */
+    public synchronized long append(Sale sale) {
+        if (closed) {
+            throw new IllegalStateException("The sale journal is closed");
+        }
+        int length = encode(sale);
+        if (active.writePosition + HEADER_SIZE + length > active.capacity) {
+            rotate();
+        }
+        long sequence = lastSequence + 1;
+        recordBuffer.putLong(8, sequence);
+        recordBuffer.putInt(4, checksum(record, length));
+        recordBuffer.putInt(0, length);
+
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.writePosition;
+        for (int i = 4; i < HEADER_SIZE + length; i++) {
+            buffer.put(position + i, record[i]);
+        }
+        // the length goes last: a record without its length is ignored by the recovery
+        buffer.putInt(position, length);
+        active.writePosition = position + HEADER_SIZE + length;
+        if (forceOnAppend) {
+            buffer.force();
+        }
+        lastSequence = sequence;
+        if (waiters > 0) {
+            notifyAll();
+        }
+        return sequence;
+    }
+
+    /**
+     * Wait until a record is appended after the given sequence.
+     *
+     * @return false if the timeout elapsed first.
+     */
+    public synchronized boolean awaitAppend(long afterSequence, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        waiters++;
+        try {
+            long remaining = timeoutMs;
+            while (lastSequence <= afterSequence && !closed && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return lastSequence > afterSequence;
+        } finally {
+            waiters--;
+        }
+    }
+
+    /**
+     * @return the sequence of the last appended record.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Open a reader on the records following the given sequence.
+     */
+    public Cursor cursor(long afterSequence) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(afterSequence + 1);
+        if (entry == null) {
+            entry = segments.firstEntry();
+        }
+        Cursor cursor = new Cursor(entry.getValue());
+        cursor.skipTo(afterSequence);
+        return cursor;
+    }
+
+    /**
+     * Force the appended records to the storage device.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            active.buffer.force();
+        }
+    }
+
+    /**
+     * Delete the segments whose records are all at or below the given sequence. The active segment is kept.
+     */
+    public synchronized void release(long checkpoint) {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        while (first != null && first.getValue() != active) {
+            Long next = segments.higherKey(first.getKey());
+            if (next == null || next - 1 > checkpoint) {
+                break;
+            }
+            segments.remove(first.getKey());
+            unmap(first.getValue().buffer);
+            delete(first.getValue().path);
+            first = segments.firstEntry();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            active.buffer.force();
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    private void rotate() {
+        active.buffer.force();
+        active.sealedAt = active.writePosition;
+        try {
+            active = createSegment(lastSequence + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a sale journal segment in " + directory, e);
+        }
+    }
+
+    private Segment createSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, firstSequence, map(path, segmentSize));
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    private void recover(long checkpoint) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        long nextSequence = -1L;
+        boolean truncated = false;
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            if (truncated || (nextSequence != -1L && firstSequence != nextSequence)) {
+                log.warn("Dropping sale journal segment {} which does not follow the previous records", path);
+                truncated = true;
+                delete(path);
+                continue;
+            }
+            Segment segment = new Segment(path, firstSequence, map(path, (int) Files.size(path)));
+            nextSequence = scan(segment);
+            truncated = segment.writePosition + HEADER_SIZE <= segment.capacity && segment.buffer.getInt(segment.writePosition) != 0;
+            if (truncated) {
+                log.warn("Dropped a torn record at the end of the sale journal, {} records recovered up to sequence {}",
+                        nextSequence - firstSequence, nextSequence - 1);
+            }
+            if (!segments.isEmpty()) {
+                segments.lastEntry().getValue().sealedAt = segments.lastEntry().getValue().writePosition;
+            }
+            segments.put(firstSequence, segment);
+        }
+        if (nextSequence - 1 < checkpoint) {
+            // everything left in the journal is already in the database: start over after the checkpoint
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                unmap(segment.buffer);
+                delete(segment.path);
+            }
+            segments.clear();
+            nextSequence = checkpoint + 1;
+        }
+        active = segments.isEmpty() ? createSegment(nextSequence) : segments.lastEntry().getValue();
+        lastSequence = nextSequence - 1;
+        log.info("Sale journal opened in {}, {} segments, last sequence {}, checkpoint {}", directory, segments.size(), lastSequence,
+                checkpoint);
+    }
+
+    /**
+     * Find the valid records of a segment and position the writer after them.
+     *
+     * @return the sequence following the last valid record.
+     */
+    private long scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long sequence = segment.firstSequence;
+        while (position + HEADER_SIZE <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > MAX_PAYLOAD_SIZE || position + HEADER_SIZE + length > segment.capacity
+                    || buffer.getLong(position + 8) != sequence) {
+                break;
+            }
+            for (int i = 8; i < HEADER_SIZE + length; i++) {
+                record[i] = buffer.get(position + i);
+            }
+            if (checksum(record, length) != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+            sequence++;
+        }
+        segment.writePosition = position;
+        return sequence;
+    }
+
+    private int checksum(byte[] bytes, int length) {
+        crc.reset();
+        crc.update(bytes, 8, HEADER_SIZE - 8 + length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Encode the sale after the header of the record buffer.
+     *
+     * @return the payload length.
+     */
+    private int encode(Sale sale) {
+        byte[] code = sale.getProductCode() == null ? null : sale.getProductCode().getBytes(StandardCharsets.UTF_8);
+        if (code != null && code.length > MAX_PAYLOAD_SIZE - FIXED_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("The product code is too long for the sale journal");
+        }
+        int flags = (sale.getClientId() != null ? HAS_CLIENT : 0) | (sale.getOperationDate() != null ? HAS_DATE : 0)
+                | (sale.getQuantity() != null ? HAS_QUANTITY : 0) | (sale.getAmount() != null ? HAS_AMOUNT : 0);
+        int offset = HEADER_SIZE;
+        recordBuffer.put(offset, (byte) flags);
+        recordBuffer.putLong(offset + 1, sale.getClientId() != null ? sale.getClientId() : 0L);
+        recordBuffer.putLong(offset + 9, sale.getOperationDate() != null ? sale.getOperationDate().getTime() : 0L);
+        recordBuffer.putLong(offset + 17, sale.getQuantity() != null ? sale.getQuantity() : 0L);
+        recordBuffer.putDouble(offset + 25, sale.getAmount() != null ? sale.getAmount() : 0D);
+        recordBuffer.putShort(offset + 33, (short) (code == null ? -1 : code.length));
+        if (code != null) {
+            System.arraycopy(code, 0, record, offset + FIXED_PAYLOAD_SIZE, code.length);
+        }
+        return FIXED_PAYLOAD_SIZE + (code == null ? 0 : code.length);
+    }
+
+    private static Sale decode(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int flags = buffer.get(offset);
+        short codeLength = buffer.getShort(offset + 33);
+        Sale sale = new Sale();
+        sale.setProductCode(codeLength < 0 ? null : new String(bytes, offset + FIXED_PAYLOAD_SIZE, codeLength, StandardCharsets.UTF_8));
+        sale.setClientId((flags & HAS_CLIENT) != 0 ? buffer.getLong(offset + 1) : null);
+        sale.setOperationDate((flags & HAS_DATE) != 0 ? new Date(buffer.getLong(offset + 9)) : null);
+        sale.setQuantity((flags & HAS_QUANTITY) != 0 ? buffer.getLong(offset + 17) : null);
+        sale.setAmount((flags & HAS_AMOUNT) != 0 ? buffer.getDouble(offset + 25) : null);
+        return sale;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < size) {
+                file.setLength(size);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Release a mapping right away. The buffer must not be used afterwards: the cursors have moved past a released segment.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.trace("Unsafe.invokeCleaner is not available", e);
+        }
+        try {
+            // Java 8
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Could not unmap a sale journal segment, it is released when garbage collected", e);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete the sale journal segment {}", path, e);
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final long firstSequence;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int writePosition;
+        private volatile int sealedAt = -1;
+
+        private Segment(Path path, long firstSequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    /**
+     * Sequential reader of the journal. A cursor is not thread safe.
+     */
+    public final class Cursor {
+
+        private final byte[] payload = new byte[MAX_PAYLOAD_SIZE];
+        private Segment segment;
+        private int position;
+        private long nextSequence;
+
+        private Cursor(Segment segment) {
+            this.segment = segment;
+            this.nextSequence = segment.firstSequence;
+        }
+
+        /**
+         * Read the records appended after the last one read.
+         *
+         * @param max
+         *            the maximum number of records to read.
+         * @param entries
+         *            the list receiving the records.
+         * @return the number of records read.
+         */
+        public int next(int max, List<JournalEntry> entries) {
+            long last = lastSequence;
+            int read = 0;
+            while (read < max && nextSequence <= last) {
+                entries.add(new JournalEntry(nextSequence, decode(readRecord(), 0)));
+                read++;
+            }
+            return read;
+        }
+
+        /**
+         * @return the sequence of the next record to read.
+         */
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        private void skipTo(long afterSequence) {
+            long last = lastSequence;
+            while (nextSequence <= afterSequence && nextSequence <= last) {
+                readRecord();
+            }
+        }
+
+        private byte[] readRecord() {
+            if (position == segment.sealedAt) {
+                segment = segments.higherEntry(segment.firstSequence).getValue();
+                position = 0;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int length = buffer.getInt(position);
+            for (int i = 0; i < length; i++) {
+                payload[i] = buffer.get(position + HEADER_SIZE + i);
+            }
+            position += HEADER_SIZE + length;
+            nextSequence++;
+            return payload;
+        }
+    }
+
+    /**
+     * @return the segment files, oldest first.
+     */
+    List<Path> segmentFiles() {
+        List<Path> paths = new ArrayList<>();
+        segments.values().forEach(segment -> paths.add(segment.path));
+        return Collections.unmodifiableList(paths);
+    }
+}
@@ -0,0 +1,43 @@
+package ma.hero.sales.repository;
+
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleChangeCounter;
+
+
+/**
+ * Spring Data repository for the SaleChangeCounter entity.
+ */
+@Repository
+public interface SaleChangeCounterRepository extends JpaRepository<SaleChangeCounter, String> {
+
+    /**
+     * Add to a counter, locking its row until the end of the transaction.
+     */
+    @Modifying
+    @Query("update SaleChangeCounter c set c.value = c.value + :delta where c.name = :name")
+    int increment(@Param("name") String name, @Param("delta") long delta);
+
+    /**
+     * Move a counter to a value when it is below a threshold, so that frequent callers write it only now and then.
+     */
+    @Modifying
+    @Query("update SaleChangeCounter c set c.value = :value where c.name = :name and c.value < :threshold")
+    int advance(@Param("name") String name, @Param("value") long value, @Param("threshold") long threshold);
+
+    @Query("select c.value from SaleChangeCounter c where c.name = :name")
+    Optional<Long> findValue(@Param("name") String name);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from SaleChangeCounter c where c.name = :name")
+    Optional<SaleChangeCounter> findForUpdate(@Param("name") String name);
+}
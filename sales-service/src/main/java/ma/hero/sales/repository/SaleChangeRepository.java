@@ -0,0 +1,33 @@
+package ma.hero.sales.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleChange;
+
+
+/**
+ * Spring Data repository for the SaleChange entity.
+ */
+@Repository
+public interface SaleChangeRepository extends JpaRepository<SaleChange, Long> {
+
+    List<SaleChange> findBySeqGreaterThanOrderBySeqAsc(long seq, Pageable pageable);
+
+    /**
+     * The entries of some sales up to a sequence number, served by the (sale_id, seq) index.
+     */
+    @Query("select c.seq from SaleChange c where c.saleId in :saleIds and c.seq <= :seq")
+    List<Long> findSeqBySaleIdInAndSeqLessThanEqual(@Param("saleIds") Collection<Long> saleIds, @Param("seq") long seq);
+
+    @Modifying
+    @Query("delete from SaleChange c where c.seq in :seqs")
+    int deleteBySeqIn(@Param("seqs") Collection<Long> seqs);
+}
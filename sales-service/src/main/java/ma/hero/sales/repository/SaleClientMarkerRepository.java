@@ -0,0 +1,31 @@
+package ma.hero.sales.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleClientMarker;
+
+
+/**
+ * Spring Data repository for the SaleClientMarker entity.
+ */
+@Repository
+public interface SaleClientMarkerRepository extends JpaRepository<SaleClientMarker, Long> {
+
+    /**
+     * Increment the marker of a client, creating it at 1 when missing, in a single statement so that the first
+     * concurrent writes of a client cannot collide on its primary key.
+     */
+    @Modifying
+    @Query(value = "insert into sale_client_marker (client_id, version) values (:clientId, 1) on duplicate key update version = version + 1",
+            nativeQuery = true)
+    int incrementVersion(@Param("clientId") Long clientId);
+
+    @Query("select m.version from SaleClientMarker m where m.clientId = :clientId")
+    Optional<Long> findVersionByClientId(@Param("clientId") Long clientId);
+}
@@ -0,0 +1,30 @@
+package ma.hero.sales.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleClientRef;
+
+
+/**
+ * Spring Data repository for the SaleClientRef entity.
+ */
+@Repository
+public interface SaleClientRefRepository extends JpaRepository<SaleClientRef, Long> {
+
+    /**
+     * The deleted clients whose sales are still to be deleted.
+     */
+    @Query("select r.clientId from SaleClientRef r where r.salesPurgePending = true order by r.clientId")
+    List<Long> findSalesPurgePending(Pageable pageable);
+
+    @Modifying
+    @Query("update SaleClientRef r set r.salesPurgePending = false where r.clientId = :clientId")
+    int clearSalesPurgePending(@Param("clientId") Long clientId);
+}
@@ -0,0 +1,83 @@
+package ma.hero.sales.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleDailyRollup;
+
+
+/**
+ * Spring Data repository for the SaleDailyRollup entity.
+ */
+@Repository
+public interface SaleDailyRollupRepository extends JpaRepository<SaleDailyRollup, Long> {
+
+    /**
+     * Summed rollup counters, null when no rollup row matched.
+     */
+    interface RollupTotals {
+
+        Long getSaleCount();
+
+        Long getQuantity();
+
+        Double getAmount();
+    }
+
+    /**
+     * Summed rollup counters of one day.
+     */
+    interface DailyRollupTotals extends RollupTotals {
+
+        LocalDate getDay();
+    }
+
+    /**
+     * Summed rollup counters of one product.
+     */
+    interface ProductRollupTotals extends RollupTotals {
+
+        String getProductCode();
+    }
+
+    @Modifying
+    @Query("update SaleDailyRollup r set r.saleCount = r.saleCount + :saleCount, r.quantity = r.quantity + :quantity, r.amount = r.amount + :amount "
+            + "where r.clientId = :clientId and r.day = :day and r.productCode = :productCode")
+    int addToRollup(@Param("clientId") Long clientId, @Param("day") LocalDate day, @Param("productCode") String productCode,
+            @Param("saleCount") long saleCount, @Param("quantity") long quantity, @Param("amount") double amount);
+
+    /**
+     * Add to the counters of a rollup row, inserting it when missing, in a single statement so concurrent first sales of the
+     * same client, day and product cannot collide on the unique key.
+     */
+    @Modifying
+    @Query(value = "insert into sale_daily_rollup (client_id, day, product_code, sale_count, quantity, amount) "
+            + "values (:clientId, :day, :productCode, :saleCount, :quantity, :amount) on duplicate key update "
+            + "sale_count = sale_count + values(sale_count), quantity = quantity + values(quantity), amount = amount + values(amount)",
+            nativeQuery = true)
+    int upsertRollup(@Param("clientId") Long clientId, @Param("day") LocalDate day, @Param("productCode") String productCode,
+            @Param("saleCount") long saleCount, @Param("quantity") long quantity, @Param("amount") double amount);
+
+    @Modifying
+    @Query("delete from SaleDailyRollup r where r.clientId = :clientId and r.day = :day and r.productCode = :productCode and r.saleCount <= 0")
+    int deleteEmptyRollup(@Param("clientId") Long clientId, @Param("day") LocalDate day, @Param("productCode") String productCode);
+
+    @Query("select sum(r.saleCount) as saleCount, sum(r.quantity) as quantity, sum(r.amount) as amount from SaleDailyRollup r "
+            + "where r.clientId = :clientId and (:from is null or r.day >= :from) and (:to is null or r.day <= :to)")
+    RollupTotals sumByClient(@Param("clientId") Long clientId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("select r.day as day, sum(r.saleCount) as saleCount, sum(r.quantity) as quantity, sum(r.amount) as amount from SaleDailyRollup r "
+            + "where r.clientId = :clientId and (:from is null or r.day >= :from) and (:to is null or r.day <= :to) group by r.day order by r.day")
+    List<DailyRollupTotals> sumByClientGroupByDay(@Param("clientId") Long clientId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("select r.productCode as productCode, sum(r.saleCount) as saleCount, sum(r.quantity) as quantity, sum(r.amount) as amount from SaleDailyRollup r "
+            + "where r.clientId = :clientId and (:from is null or r.day >= :from) and (:to is null or r.day <= :to) group by r.productCode order by r.productCode")
+    List<ProductRollupTotals> sumByClientGroupByProduct(@Param("clientId") Long clientId, @Param("from") LocalDate from, @Param("to") LocalDate to);
+
+}
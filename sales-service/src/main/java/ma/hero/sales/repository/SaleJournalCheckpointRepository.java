@@ -0,0 +1,15 @@
+package ma.hero.sales.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleJournalCheckpoint;
+
+
+/**
+ * Spring Data repository for the SaleJournalCheckpoint entity.
+ */
+@Repository
+public interface SaleJournalCheckpointRepository extends JpaRepository<SaleJournalCheckpoint, String> {
+
+}
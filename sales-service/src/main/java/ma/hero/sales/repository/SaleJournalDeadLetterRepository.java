@@ -0,0 +1,15 @@
+package ma.hero.sales.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import ma.hero.sales.domain.SaleJournalDeadLetter;
+
+
+/**
+ * Spring Data repository for the SaleJournalDeadLetter entity.
+ */
+@Repository
+public interface SaleJournalDeadLetterRepository extends JpaRepository<SaleJournalDeadLetter, Long> {
+
+}
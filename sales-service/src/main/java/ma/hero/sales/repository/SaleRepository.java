@@ -1,19 +1,102 @@
 package ma.hero.sales.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.ProductSaleView;
 
 
 /**
  * Spring Data  repository for the Sale entity.
  */
 @Repository
-public interface SaleRepository extends JpaRepository<Sale, Long> {
+public interface SaleRepository extends JpaRepository<Sale, Long>, SaleRepositoryCustom {
+
+    /**
+     * JDBC fetch size used when streaming the sale table.
+     */
+    String STREAM_FETCH_SIZE = "1000";
 
     List<Sale> findByClientId(Long clientId);
 
-}
\ No newline at end of file
+    /**
+     * Sales of several clients in one {@code client_id IN (...)} query.
+     */
+    List<Sale> findByClientIdInOrderByClientIdAscIdAsc(Collection<Long> clientIds);
+
+    /**
+     * Sales of a client in [from, to[, a null bound leaving that side open, served by the (client_id, operation_date) index.
+     */
+    @Query("select s.id as id, s.productCode as productCode, s.operationDate as operationDate, s.quantity as quantity, s.amount as amount "
+            + "from Sale s where s.clientId = :clientId and (:from is null or s.operationDate >= :from) and (:to is null or s.operationDate < :to) "
+            + "order by s.operationDate, s.id")
+    List<ClientSaleView> findClientSalesBetween(@Param("clientId") Long clientId, @Param("from") Date from, @Param("to") Date to);
+
+    /**
+     * Sales of a product in [from, to[, a null bound leaving that side open, served by the (product_code, operation_date) index.
+     */
+    @Query("select s.id as id, s.clientId as clientId, s.operationDate as operationDate, s.quantity as quantity, s.amount as amount "
+            + "from Sale s where s.productCode = :productCode and (:from is null or s.operationDate >= :from) and (:to is null or s.operationDate < :to) "
+            + "order by s.operationDate, s.id")
+    List<ProductSaleView> findProductSalesBetween(@Param("productCode") String productCode, @Param("from") Date from, @Param("to") Date to);
+
+    /**
+     * Keyset page : the sales whose id is strictly greater than the given one, ordered by id.
+     */
+    List<Sale> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Bulk delete chunk : the given sales, locked until the chunk is deleted.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Sale> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    /**
+     * Bulk delete chunk : the next sales of a client after the given id, locked until the chunk is deleted.
+     * Read through idx_sale_client_id, so that only the rows of the chunk are locked, not every sale of the client.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Sale> findByClientIdAndIdGreaterThanOrderByIdAsc(Long clientId, Long id, Pageable pageable);
+
+    /**
+     * Bulk delete chunk : the next sales made before a date after the given id, locked until the chunk is deleted.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Sale> findByOperationDateBeforeAndIdGreaterThanOrderByIdAsc(Date before, Long id, Pageable pageable);
+
+    /**
+     * One {@code DELETE ... WHERE id IN (...)} statement, bypassing the persistence context.
+     */
+    @Modifying
+    @Query("delete from Sale s where s.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Stream the whole sale table ordered by id, reading rows by chunks of {@link #STREAM_FETCH_SIZE}.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true") })
+    @Query("select s from Sale s order by s.id")
+    Stream<Sale> streamAllByOrderByIdAsc();
+
+}
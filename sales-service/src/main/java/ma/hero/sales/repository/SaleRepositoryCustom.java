@@ -0,0 +1,23 @@
+package ma.hero.sales.repository;
+
+import java.util.Map;
+
+/**
+ * Statements of the Sale entity that Spring Data cannot derive.
+ */
+public interface SaleRepositoryCustom {
+
+    /**
+     * Update only the given attributes of a sale and increment its version, in one UPDATE statement.
+     * The persistence context is not synchronized: a loaded copy of the sale must be detached first.
+     *
+     * @param id
+     *            the id of the sale.
+     * @param expectedVersion
+     *            the version the sale must still have, null to update whatever the version.
+     * @param changes
+     *            the new values by attribute name, a null value clearing the column.
+     * @return the number of updated rows, 0 if the sale does not exist or has another version.
+     */
+    int patch(Long id, Long expectedVersion, Map<String, Object> changes);
+}
@@ -0,0 +1,57 @@
+package ma.hero.sales.repository;
+
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import ma.hero.sales.domain.Sale;
+
+/**
+ * Implementation of {@link SaleRepositoryCustom}, with the criteria API.
+ */
+public class SaleRepositoryImpl implements SaleRepositoryCustom {
+
+    private static final String ID = "id";
+
+    private static final String VERSION = "version";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int patch(Long id, Long expectedVersion, Map<String, Object> changes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Sale> update = builder.createCriteriaUpdate(Sale.class);
+        Root<Sale> sale = update.from(Sale.class);
+        // bound parameters, so that the statement is the same whatever the values
+        changes.keySet().forEach(attribute -> assign(update, builder, sale.get(attribute), attribute));
+        Path<Long> version = sale.get(VERSION);
+        update.set(version, builder.sum(version, 1L));
+        Predicate where = builder.equal(sale.get(ID), builder.parameter(Long.class, ID));
+        if (expectedVersion != null) {
+            where = builder.and(where, builder.equal(version, builder.parameter(Long.class, VERSION)));
+        }
+        update.where(where);
+
+        Query query = entityManager.createQuery(update);
+        changes.forEach(query::setParameter);
+        query.setParameter(ID, id);
+        if (expectedVersion != null) {
+            query.setParameter(VERSION, expectedVersion);
+        }
+        return query.executeUpdate();
+    }
+
+    private static <Y> void assign(CriteriaUpdate<Sale> update, CriteriaBuilder builder, Path<Y> column, String name) {
+        Expression<? extends Y> value = builder.parameter(column.getJavaType(), name);
+        update.set(column, value);
+    }
+}
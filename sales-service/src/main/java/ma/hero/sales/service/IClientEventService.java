@@ -0,0 +1,29 @@
+package ma.hero.sales.service;
+
+import java.util.List;
+
+import ma.hero.sales.domain.SaleClientRef;
+import ma.hero.sales.dto.ClientEventDto;
+
+public interface IClientEventService {
+
+    /**
+     * Apply a batch of client events in one transaction, skipping the ones already applied.
+     *
+     * @param events
+     *            the events, in any order.
+     * @return the number of events applied.
+     * @throws IllegalArgumentException
+     *             if an event has no id, client id or type.
+     */
+    int applyClientEvents(List<ClientEventDto> events);
+
+    /**
+     * Get what is known of a client from its events.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @return the client reference, null if no event of the client was received.
+     */
+    SaleClientRef getClientRef(Long clientId);
+}
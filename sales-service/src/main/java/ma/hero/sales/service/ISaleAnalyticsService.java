@@ -0,0 +1,68 @@
+package ma.hero.sales.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import ma.hero.sales.analytics.SaleColumnStore.Metric;
+import ma.hero.sales.dto.SaleAggregate;
+
+public interface ISaleAnalyticsService {
+
+    enum Dimension {
+        PRODUCT, CLIENT
+    }
+
+    /**
+     * @return true once the in-memory copy of the sales is loaded.
+     */
+    boolean isReady();
+
+    /**
+     * Sum the sales matching the filter.
+     *
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @param clientId
+     *            the client of the sales, null for all clients.
+     * @param productCode
+     *            the product of the sales, null for all products.
+     * @return the totals, without key.
+     */
+    SaleAggregate getTotals(LocalDate from, LocalDate to, Long clientId, String productCode);
+
+    /**
+     * Sum the sales matching the filter, per product.
+     *
+     * @return the totals keyed by product code.
+     */
+    List<SaleAggregate> getTotalsByProduct(LocalDate from, LocalDate to, Long clientId);
+
+    /**
+     * Sum the sales matching the filter, per client.
+     *
+     * @return the totals keyed by client id.
+     */
+    List<SaleAggregate> getTotalsByClient(LocalDate from, LocalDate to, String productCode);
+
+    /**
+     * Sum the sales matching the filter, per day.
+     *
+     * @return the totals keyed by day.
+     */
+    List<SaleAggregate> getTotalsByDay(LocalDate from, LocalDate to, Long clientId, String productCode);
+
+    /**
+     * Get the best products or clients over a period.
+     *
+     * @param dimension
+     *            what to rank.
+     * @param metric
+     *            the ranking metric.
+     * @param limit
+     *            the maximum number of results.
+     * @return the totals by decreasing metric.
+     */
+    List<SaleAggregate> getTop(Dimension dimension, Metric metric, int limit, LocalDate from, LocalDate to);
+}
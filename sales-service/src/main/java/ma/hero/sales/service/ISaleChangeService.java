@@ -0,0 +1,29 @@
+package ma.hero.sales.service;
+
+import ma.hero.sales.dto.SaleChangePage;
+
+public interface ISaleChangeService {
+
+    /**
+     * Get the changes logged after a position of the change log. A read inside the compacted range holds the
+     * compaction for a while, so that a reader reading on page after page is not refused.
+     *
+     * @param since
+     *            the next token of the previous page, null to read the log from the beginning.
+     * @param limit
+     *            the maximum number of changes to return.
+     * @return the page of changes, null if the log was compacted past the position: the log must be read again from
+     *         the beginning.
+     * @throws IllegalArgumentException
+     *             if the token is not a token of the change log.
+     */
+    SaleChangePage getChanges(String since, int limit);
+
+    /**
+     * Compact the next batch of the changes older than the retention: only the last change of each sale is kept, as
+     * an insert, and deleted sales are dropped.
+     *
+     * @return the number of changes compacted, 0 if none is older than the retention.
+     */
+    int compact();
+}
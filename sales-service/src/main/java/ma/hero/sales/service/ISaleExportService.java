@@ -0,0 +1,27 @@
+package ma.hero.sales.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+public interface ISaleExportService {
+
+    enum Format {
+        CSV, NDJSON
+    }
+
+    /**
+     * Write the sales of a period to a stream, in id order, without loading them as entities.
+     *
+     * @param format
+     *            the output format.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @param out
+     *            the stream to write to, not closed.
+     * @return the number of exported sales.
+     */
+    long exportSales(Format format, LocalDate from, LocalDate to, OutputStream out) throws IOException;
+}
@@ -0,0 +1,92 @@
+package ma.hero.sales.service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.dto.SaleTotals;
+
+public interface ISaleRollupService {
+
+    /**
+     * Add a sale to the rollup, in the current transaction.
+     *
+     * @param sale
+     *            the persisted sale.
+     */
+    void addSale(Sale sale);
+
+    /**
+     * Add several sales to the rollup, in the current transaction.
+     * Sales of the same group are summed before the rollup is written.
+     *
+     * @param sales
+     *            the persisted sales.
+     */
+    void addSales(Collection<Sale> sales);
+
+    /**
+     * Remove a sale from the rollup, in the current transaction.
+     *
+     * @param sale
+     *            the sale as it was persisted.
+     */
+    void removeSale(Sale sale);
+
+    /**
+     * Remove several sales from the rollup, in the current transaction.
+     * Sales of the same group are summed before the rollup is written.
+     *
+     * @param sales
+     *            the sales as they were persisted.
+     */
+    void removeSales(Collection<Sale> sales);
+
+    /**
+     * Get the totals of a client over a period.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @return the totals.
+     */
+    SaleTotals getClientTotals(Long clientId, LocalDate from, LocalDate to);
+
+    /**
+     * Get the totals of a client over a period, per day.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @return the totals keyed by day, ordered by day.
+     */
+    List<SaleAggregate> getClientDailyTotals(Long clientId, LocalDate from, LocalDate to);
+
+    /**
+     * Get the totals of a client over a period, per product.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @return the totals keyed by product code, ordered by product code.
+     */
+    List<SaleAggregate> getClientProductTotals(Long clientId, LocalDate from, LocalDate to);
+
+    /**
+     * Recompute the whole rollup from the sale table.
+     *
+     * @return the number of rollup rows written.
+     */
+    long rebuild();
+}
@@ -1,8 +1,15 @@
 package ma.hero.sales.service;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.ProductSaleView;
 
 public interface ISaleService {
 
@@ -15,6 +22,15 @@ public interface ISaleService {
      */
     Sale createSale(Sale sale);
 
+    /**
+     * Save several sales in one transaction, with batched inserts.
+     *
+     * @param sales
+     *            the entities to save.
+     * @return the persisted entities.
+     */
+    List<Sale> createSales(List<Sale> sales);
+
     /**
      * Get all the sales.
      *
@@ -22,6 +38,25 @@ public interface ISaleService {
      */
     List<Sale> getAllSales();
 
+    /**
+     * Get a page of sales using keyset pagination on the id.
+     *
+     * @param afterId
+     *            the id of the last sale of the previous page, null for the first page.
+     * @param size
+     *            the maximum number of sales to return.
+     * @return the list of entities, ordered by id.
+     */
+    List<Sale> getSalesPage(Long afterId, int size);
+
+    /**
+     * Stream all the sales ordered by id, without keeping them in the persistence context.
+     *
+     * @param action
+     *            the callback invoked for each sale.
+     */
+    void streamAllSales(Consumer<Sale> action);
+
     /**
      * Get one sale by id.
      *
@@ -40,13 +75,68 @@ public interface ISaleService {
      */
     List<Sale> getSalesByClient(Long clientId);
 
+    /**
+     * Get the sales of several clients.
+     *
+     * @param clientIds
+     *            the ids of the clients.
+     * @return the sales of each requested client, in request order, with an empty list for a client without sales.
+     */
+    Map<Long, List<Sale>> getSalesByClients(Collection<Long> clientIds);
+
+    /**
+     * Get the sales of a client over a period.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @return the list of sales, ordered by operation date.
+     */
+    List<ClientSaleView> getClientSalesBetween(Long clientId, LocalDate from, LocalDate to);
+
+    /**
+     * Get the sales of a product over a period.
+     *
+     * @param productCode
+     *            the code of the product.
+     * @param from
+     *            the first day, inclusive, null for no lower bound.
+     * @param to
+     *            the last day, inclusive, null for no upper bound.
+     * @return the list of sales, ordered by operation date.
+     */
+    List<ProductSaleView> getProductSalesBetween(String productCode, LocalDate from, LocalDate to);
+
     /**
      * Update a sale.
-     * @param sale the entity to update.
-     * @return the updated entity.
+     * @param sale the entity to update; when its version is set it must be the current one.
+     * @return the updated entity, null if it does not exist.
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the version is not the current one.
      */
     Sale updateSale(Sale sale);
 
+    /**
+     * Update some fields of a sale, with one version-checked UPDATE of these columns only.
+     * @param id the id of the sale.
+     * @param version the version the sale must have, null to patch the version read.
+     * @param changes the new values of the fields.
+     * @param fields the names of the fields to update: productCode, clientId, operationDate, quantity or amount.
+     * @return the patched sale, null if it does not exist.
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if the sale has or gets another version.
+     * @throws IllegalArgumentException if a field cannot be patched.
+     */
+    Sale patchSale(Long id, Long version, Sale changes, Set<String> fields);
+
+    /**
+     * Get the change counter of the sales of a client, incremented by every write on them.
+     * @param clientId the id of the client.
+     * @return the counter, 0 if the client never had a sale.
+     */
+    long getClientSalesVersion(Long clientId);
+
     /**
      * Delete the sale by id.
      *
@@ -54,4 +144,56 @@ public interface ISaleService {
      *            the id of the entity.
      */
     void deleteSale(Long id);
-}
\ No newline at end of file
+
+    /**
+     * Delete sales by id, by chunks of {@code DELETE ... WHERE id IN (...)}, one transaction per chunk.
+     *
+     * @param ids
+     *            the ids of the sales, unknown ones are ignored.
+     * @return the number of sales deleted.
+     * @throws DeleteInterruptedException
+     *             if the thread was interrupted between two chunks.
+     */
+    long deleteSales(Collection<Long> ids);
+
+    /**
+     * Delete all the sales of a client, by chunks, one transaction per chunk.
+     *
+     * @param clientId
+     *            the id of the client.
+     * @return the number of sales deleted.
+     * @throws DeleteInterruptedException
+     *             if the thread was interrupted between two chunks.
+     */
+    long deleteClientSales(Long clientId);
+
+    /**
+     * Delete the sales made before a day, by chunks, one transaction per chunk.
+     *
+     * @param day
+     *            the first day kept.
+     * @return the number of sales deleted.
+     * @throws DeleteInterruptedException
+     *             if the thread was interrupted between two chunks.
+     */
+    long deleteSalesBefore(LocalDate day);
+
+    /**
+     * A chunked delete interrupted before its end: the chunks already deleted stay deleted.
+     */
+    class DeleteInterruptedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long deleted;
+
+        public DeleteInterruptedException(long deleted, Throwable cause) {
+            super("Interrupted after " + deleted + " sales deleted", cause);
+            this.deleted = deleted;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+    }
+}
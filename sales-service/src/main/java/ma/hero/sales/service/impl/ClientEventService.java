@@ -0,0 +1,142 @@
+package ma.hero.sales.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ma.hero.sales.domain.SaleClientRef;
+import ma.hero.sales.dto.ClientEventDto;
+import ma.hero.sales.repository.SaleClientRefRepository;
+import ma.hero.sales.service.IClientEventService;
+import ma.hero.sales.service.ISaleService;
+
+/**
+ * Applies the client events relayed by the client service to the client references.
+ * A batch costs one select of the references of its clients and one JDBC batch of inserts and updates. The sales of
+ * the deleted clients are deleted too when sales.client-events.delete-sales-of-deleted-clients is set, once the
+ * batch is committed: the reference records that they are pending in the transaction of the event, so that a delete
+ * failing after the commit is retried with the next batch, a redelivery of the same events included.
+ */
+@Service
+public class ClientEventService implements IClientEventService {
+
+    private static final int PURGE_PAGE_SIZE = 100;
+
+    private final Logger log = LoggerFactory.getLogger(ClientEventService.class);
+
+    private final SaleClientRefRepository clientRefRepository;
+
+    private final ISaleService saleService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean deleteSalesOfDeletedClients;
+
+    private final Counter applied;
+
+    private final Counter skipped;
+
+    private final Timer lag;
+
+    public ClientEventService(SaleClientRefRepository clientRefRepository, ISaleService saleService,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${sales.client-events.delete-sales-of-deleted-clients:false}") boolean deleteSalesOfDeletedClients) {
+        this.clientRefRepository = clientRefRepository;
+        this.saleService = saleService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.deleteSalesOfDeletedClients = deleteSalesOfDeletedClients;
+        this.applied = Counter.builder("sales.client.events.applied").description("Client events applied").register(meterRegistry);
+        this.skipped = Counter.builder("sales.client.events.skipped").description("Client events already applied")
+                .register(meterRegistry);
+        this.lag = Timer.builder("sales.client.events.lag").description("Time from a client change to its event being applied")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int applyClientEvents(List<ClientEventDto> events) {
+        for (ClientEventDto event : events) {
+            if (event.getId() == null || event.getClientId() == null || event.getType() == null) {
+                throw new IllegalArgumentException("A client event needs an id, a client id and a type");
+            }
+        }
+        List<ClientEventDto> ordered = new ArrayList<>(events);
+        ordered.sort(Comparator.comparing(ClientEventDto::getId));
+        int count = transactionTemplate.execute(status -> apply(ordered));
+        log.debug("{} client events applied out of {}", count, events.size());
+        if (deleteSalesOfDeletedClients) {
+            deletePendingSales();
+        }
+        return count;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SaleClientRef getClientRef(Long clientId) {
+        return clientRefRepository.findById(clientId).orElse(null);
+    }
+
+    private int apply(List<ClientEventDto> events) {
+        Map<Long, SaleClientRef> refs = new HashMap<>();
+        clientRefRepository.findAllById(events.stream().map(ClientEventDto::getClientId).collect(Collectors.toSet()))
+                .forEach(ref -> refs.put(ref.getClientId(), ref));
+        Map<Long, SaleClientRef> changed = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (ClientEventDto event : events) {
+            SaleClientRef ref = refs.computeIfAbsent(event.getClientId(), SaleClientRef::new);
+            if (ref.getLastEventId() >= event.getId()) {
+                // redelivered, or older than a change already applied
+                skipped.increment();
+                continue;
+            }
+            ref.setLastEventId(event.getId());
+            ref.setClientVersion(event.getVersion());
+            ref.setDeleted(event.getType() == ClientEventDto.Type.DELETED);
+            ref.setUpdatedAt(event.getOccurredAt());
+            ref.setSalesPurgePending(ref.isDeleted() && deleteSalesOfDeletedClients);
+            changed.put(ref.getClientId(), ref);
+            if (event.getOccurredAt() != null) {
+                lag.record(Math.max(now - event.getOccurredAt().getTime(), 0L), TimeUnit.MILLISECONDS);
+            }
+            count++;
+        }
+        clientRefRepository.saveAll(changed.values());
+        applied.increment(count);
+        return count;
+    }
+
+    /**
+     * Delete the sales of the deleted clients still pending, each client in its own chunked delete, clearing the
+     * pending flag once its sales are gone.
+     */
+    private void deletePendingSales() {
+        List<Long> pending;
+        do {
+            pending = clientRefRepository.findSalesPurgePending(PageRequest.of(0, PURGE_PAGE_SIZE));
+            for (Long clientId : pending) {
+                long deleted = saleService.deleteClientSales(clientId);
+                transactionTemplate.executeWithoutResult(status -> clientRefRepository.clearSalesPurgePending(clientId));
+                log.debug("{} sales of the deleted client {} deleted", deleted, clientId);
+            }
+        } while (pending.size() == PURGE_PAGE_SIZE);
+    }
+}
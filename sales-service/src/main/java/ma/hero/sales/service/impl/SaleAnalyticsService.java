@@ -0,0 +1,152 @@
+package ma.hero.sales.service.impl;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import ma.hero.sales.analytics.SaleColumnFilter;
+import ma.hero.sales.analytics.SaleColumnStore;
+import ma.hero.sales.analytics.SaleColumnStore.Metric;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.event.SaleEvent;
+import ma.hero.sales.service.ISaleAnalyticsService;
+import ma.hero.sales.service.ISaleService;
+
+/**
+ * Service Implementation answering analytic queries from a {@link SaleColumnStore}.
+ * The store is loaded in the background at startup, then kept in sync with the committed sale events.
+ * A failed load is retried with an exponential backoff until it succeeds: the service stays not ready meanwhile.
+ */
+@Service
+@ConditionalOnProperty(prefix = "sales.analytics", name = "enabled", havingValue = "true")
+public class SaleAnalyticsService implements ISaleAnalyticsService {
+
+    private final Logger log = LoggerFactory.getLogger(SaleAnalyticsService.class);
+
+    private final ISaleService saleService;
+
+    private final SaleColumnStore store = new SaleColumnStore();
+
+    private final long retryDelayMs;
+
+    private final long maxRetryDelayMs;
+
+    private volatile boolean ready;
+
+    private volatile boolean running;
+
+    private Thread loader;
+
+    public SaleAnalyticsService(ISaleService saleService,
+            @Value("${sales.analytics.retry-delay-ms:1000}") long retryDelayMs,
+            @Value("${sales.analytics.max-retry-delay-ms:60000}") long maxRetryDelayMs) {
+        this.saleService = saleService;
+        this.retryDelayMs = retryDelayMs;
+        this.maxRetryDelayMs = maxRetryDelayMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        if (loader == null) {
+            running = true;
+            loader = new Thread(this::loadUntilReady, "sale-analytics-loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread thread;
+        synchronized (this) {
+            thread = loader;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(10_000L);
+        }
+    }
+
+    private void loadUntilReady() {
+        long delay = retryDelayMs;
+        while (running && !ready) {
+            long start = System.currentTimeMillis();
+            // sales loaded by a failed attempt are kept, the next attempt skips them
+            store.startLoading();
+            try {
+                saleService.streamAllSales(store::load);
+                ready = true;
+                log.info("Sale analytics store loaded with {} sales in {} ms", store.size(), System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                log.error("Could not load the sale analytics store, retrying in {} ms", delay, e);
+            } finally {
+                store.finishLoading();
+            }
+            if (!ready) {
+                sleep(delay);
+                delay = Math.min(delay * 2, maxRetryDelayMs);
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSaleEvent(SaleEvent event) {
+        if (event.getType() == SaleEvent.Type.DELETED) {
+            store.remove(event.getSaleId());
+        } else {
+            store.put(event.getCurrent());
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public SaleAggregate getTotals(LocalDate from, LocalDate to, Long clientId, String productCode) {
+        return store.totals(SaleColumnFilter.of(from, to, clientId, productCode));
+    }
+
+    @Override
+    public List<SaleAggregate> getTotalsByProduct(LocalDate from, LocalDate to, Long clientId) {
+        return store.groupByProduct(SaleColumnFilter.of(from, to, clientId, null));
+    }
+
+    @Override
+    public List<SaleAggregate> getTotalsByClient(LocalDate from, LocalDate to, String productCode) {
+        return store.groupByClient(SaleColumnFilter.of(from, to, null, productCode));
+    }
+
+    @Override
+    public List<SaleAggregate> getTotalsByDay(LocalDate from, LocalDate to, Long clientId, String productCode) {
+        return store.groupByDay(SaleColumnFilter.of(from, to, clientId, productCode));
+    }
+
+    @Override
+    public List<SaleAggregate> getTop(Dimension dimension, Metric metric, int limit, LocalDate from, LocalDate to) {
+        List<SaleAggregate> groups = dimension == Dimension.CLIENT ? getTotalsByClient(from, to, null) : getTotalsByProduct(from, to, null);
+        return SaleColumnStore.top(groups, metric, limit);
+    }
+}
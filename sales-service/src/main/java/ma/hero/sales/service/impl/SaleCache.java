@@ -0,0 +1,94 @@
+package ma.hero.sales.service.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import ma.hero.sales.config.CacheConfig;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.event.SaleEvent;
+
+/**
+ * Read cache of sales, holding detached copies: callers get their own copy and can never modify a cached sale.
+ * Entries affected by a sale change are evicted once the change is committed. A load that overlapped an eviction
+ * drops its own entry, since it may have read the sale before the commit and would otherwise put it back stale.
+ * Missing sales are not cached.
+ */
+@Component
+public class SaleCache {
+
+    private final CacheManager cacheManager;
+
+    /**
+     * Incremented before every eviction, compared by the loads around their put.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SaleCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    public Sale getSale(Long id, Supplier<Sale> loader) {
+        return get(CacheConfig.SALE_CACHE, id, loader, Sale::new);
+    }
+
+    public List<Sale> getSalesByClient(Long clientId, Supplier<List<Sale>> loader) {
+        return get(CacheConfig.SALES_BY_CLIENT_CACHE, clientId, loader, SaleCache::copy);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSaleEvent(SaleEvent event) {
+        evictions.incrementAndGet();
+        evict(CacheConfig.SALE_CACHE, event.getSaleId());
+        evictClient(event.getPrevious());
+        evictClient(event.getCurrent());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String name, Object key, Supplier<T> loader, UnaryOperator<T> copy) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache == null) {
+            return loader.get();
+        }
+        ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            return copy.apply((T) cached.get());
+        }
+        long before = evictions.get();
+        T value = loader.get();
+        if (value != null) {
+            cache.put(key, copy.apply(value));
+            // checked after the put: an eviction the put may have overtaken has incremented the counter already
+            if (evictions.get() != before) {
+                cache.evict(key);
+            }
+        }
+        return value;
+    }
+
+    private static List<Sale> copy(List<Sale> sales) {
+        return sales.stream().map(Sale::new).collect(Collectors.toList());
+    }
+
+    private void evictClient(Sale sale) {
+        if (sale != null && sale.getClientId() != null) {
+            evict(CacheConfig.SALES_BY_CLIENT_CACHE, sale.getClientId());
+        }
+    }
+
+    private void evict(String name, Object key) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache != null && key != null) {
+            cache.evict(key);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ma.hero.sales.service.impl;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import ma.hero.sales.service.ISaleChangeService;
+
+/**
+ * Compacts the sale change log in the background, batch after batch while changes older than the retention remain,
+ * then once per interval.
+ */
+@Service
+@ConditionalOnProperty(prefix = "sales.changes.compaction", name = "enabled", havingValue = "true")
+public class SaleChangeCompactor {
+
+    private final Logger log = LoggerFactory.getLogger(SaleChangeCompactor.class);
+
+    private final ISaleChangeService changeService;
+
+    private final int batchSize;
+
+    private final long intervalMs;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    public SaleChangeCompactor(ISaleChangeService changeService,
+            @Value("${sales.changes.batch-size:1000}") int batchSize,
+            @Value("${sales.changes.compaction.interval-ms:60000}") long intervalMs) {
+        this.changeService = changeService;
+        this.batchSize = batchSize;
+        this.intervalMs = intervalMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::compact, "sale-change-compactor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread compactor;
+        synchronized (this) {
+            compactor = thread;
+        }
+        if (compactor != null) {
+            compactor.interrupt();
+            compactor.join(10_000L);
+        }
+    }
+
+    private void compact() {
+        while (running) {
+            try {
+                // a full batch means older changes may remain
+                if (changeService.compact() < batchSize) {
+                    sleep(intervalMs);
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not compact the sale change log, retrying in {} ms", intervalMs, e);
+                sleep(intervalMs);
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
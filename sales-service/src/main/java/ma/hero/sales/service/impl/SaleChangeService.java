@@ -0,0 +1,448 @@
+package ma.hero.sales.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleChange;
+import ma.hero.sales.domain.SaleChangeCounter;
+import ma.hero.sales.dto.SaleChangePage;
+import ma.hero.sales.event.SaleEvent;
+import ma.hero.sales.repository.SaleChangeCounterRepository;
+import ma.hero.sales.repository.SaleChangeRepository;
+import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.ISaleChangeService;
+
+/**
+ * Service Implementation of the sale change log.
+ * <p>
+ * The sale events of a transaction are logged just before its commit, after one increment of the sequence counter:
+ * the counter row stays locked until the commit, so the sequence numbers follow the commit order and a reader that
+ * sees a change also sees every change before it.
+ * <p>
+ * The first start seeds the log with an insert per existing sale, in the background, one committed batch of sales at
+ * a time in id order. A batch locks the seeded point, which the writers lock too while the seed is running: the
+ * changes of the sales up to the point are logged, the others are not since a later batch logs their state.
+ * <p>
+ * The compaction folds the changes older than the retention into one insert per live sale. A reader positioned in
+ * the compacted range would miss the folded changes: its token carries the compaction point it was read at, and is
+ * refused once the compaction point moved past it. So that a reader reading the log from the beginning gets through,
+ * every read inside the compacted range holds the compaction for a while, the hold being shared by the instances.
+ */
+@Service
+public class SaleChangeService implements ISaleChangeService, SmartInitializingSingleton {
+
+    private static final String TOKEN_PREFIX = "changes:";
+
+    private final Logger log = LoggerFactory.getLogger(SaleChangeService.class);
+
+    private final SaleChangeRepository changeRepository;
+
+    private final SaleChangeCounterRepository counterRepository;
+
+    private final SaleRepository saleRepository;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate readTemplate;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final int inChunkSize;
+
+    private final long retentionMs;
+
+    private final long readerHoldMs;
+
+    private final long seedRetryDelayMs;
+
+    private final Counter compacted;
+
+    /**
+     * Set once every existing sale is in the log, the writers then no longer check the seeded point.
+     */
+    private volatile boolean seeded;
+
+    private volatile boolean running;
+
+    private Thread seeder;
+
+    public SaleChangeService(SaleChangeRepository changeRepository, SaleChangeCounterRepository counterRepository,
+            SaleRepository saleRepository, EntityManager entityManager, PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${sales.changes.enabled:true}") boolean enabled,
+            @Value("${sales.changes.batch-size:1000}") int batchSize,
+            @Value("${sales.bulk.in-chunk-size:500}") int inChunkSize,
+            @Value("${sales.changes.retention-hours:168}") long retentionHours,
+            @Value("${sales.changes.compaction.reader-hold-ms:300000}") long readerHoldMs,
+            @Value("${sales.changes.seed-retry-delay-ms:5000}") long seedRetryDelayMs) {
+        this.changeRepository = changeRepository;
+        this.counterRepository = counterRepository;
+        this.saleRepository = saleRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.inChunkSize = inChunkSize;
+        this.retentionMs = TimeUnit.HOURS.toMillis(retentionHours);
+        this.readerHoldMs = readerHoldMs;
+        this.seedRetryDelayMs = seedRetryDelayMs;
+        this.compacted = Counter.builder("sales.changes.compacted").description("Sale changes folded by the compaction")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        if (!counterRepository.existsById(SaleChangeCounter.SEQUENCE)) {
+            createCounters();
+        } else if (!counterRepository.existsById(SaleChangeCounter.HELD_UNTIL)) {
+            // a log created before the hold
+            create(new SaleChangeCounter(SaleChangeCounter.HELD_UNTIL, 0L));
+        }
+        // a log seeded before the seed went in batches has no seeded point
+        seeded = counterValue(SaleChangeCounter.SEEDED, Long.MAX_VALUE) == Long.MAX_VALUE;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startSeed() {
+        if (enabled && !seeded && seeder == null) {
+            running = true;
+            seeder = new Thread(this::seed, "sale-change-seeder");
+            seeder.setDaemon(true);
+            seeder.start();
+        }
+    }
+
+    @PreDestroy
+    public void stopSeed() throws InterruptedException {
+        running = false;
+        Thread thread;
+        synchronized (this) {
+            thread = seeder;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(10_000L);
+        }
+    }
+
+    /**
+     * Keep the change until the commit of its transaction, with the sale as it is now.
+     */
+    @EventListener
+    public void onSaleEvent(SaleEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("A sale change must be logged in the transaction of the change");
+        }
+        pendingChanges().add(new SaleChange(type(event.getType()), event.getSaleId(), event.getPrevious(), event.getCurrent()));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public SaleChangePage getChanges(String since, int limit) {
+        long[] position = decodeToken(since);
+        long after = position == null ? 0L : position[1];
+        // committed before the read, for the compactions that start after it
+        transactionTemplate.executeWithoutResult(status -> hold(after));
+        return readTemplate.execute(status -> {
+            // the point before the page goes in the next token, the point after the page checks the token
+            long compactedBefore = counterValue(SaleChangeCounter.COMPACTED, 0L);
+            List<SaleChange> changes = changeRepository.findBySeqGreaterThanOrderBySeqAsc(after, PageRequest.of(0, limit));
+            long compactedAfter = counterValue(SaleChangeCounter.COMPACTED, 0L);
+            if (position != null && after < compactedAfter && position[0] != compactedAfter) {
+                return null;
+            }
+            long last = changes.isEmpty() ? after : changes.get(changes.size() - 1).getSeq();
+            return new SaleChangePage(changes, encodeToken(compactedBefore, last));
+        });
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int compact() {
+        Date cutoff = new Date(System.currentTimeMillis() - retentionMs);
+        int count = transactionTemplate.execute(status -> {
+            // locked, so that one compaction runs at a time
+            SaleChangeCounter point = counterRepository.findForUpdate(SaleChangeCounter.COMPACTED).orElse(null);
+            // a reader inside the compacted range would be refused at its next page
+            if (point == null || counterValue(SaleChangeCounter.HELD_UNTIL, 0L) > System.currentTimeMillis()) {
+                return 0;
+            }
+            List<SaleChange> range = changeRepository.findBySeqGreaterThanOrderBySeqAsc(point.getValue(), PageRequest.of(0, batchSize));
+            int end = 0;
+            while (end < range.size() && range.get(end).getChangedAt().before(cutoff)) {
+                end++;
+            }
+            if (end == 0) {
+                return 0;
+            }
+            Map<Long, SaleChange> lastChanges = new LinkedHashMap<>();
+            List<Long> removed = new ArrayList<>();
+            for (SaleChange change : range.subList(0, end)) {
+                SaleChange previous = lastChanges.put(change.getSaleId(), change);
+                if (previous != null) {
+                    removed.add(previous.getSeq());
+                }
+            }
+            // the entries kept by the previous compactions are replaced by the last change
+            List<Long> saleIds = new ArrayList<>(lastChanges.keySet());
+            for (int from = 0; from < saleIds.size(); from += inChunkSize) {
+                removed.addAll(changeRepository.findSeqBySaleIdInAndSeqLessThanEqual(
+                        saleIds.subList(from, Math.min(from + inChunkSize, saleIds.size())), point.getValue()));
+            }
+            for (SaleChange change : lastChanges.values()) {
+                if (change.getType() == SaleChange.Type.DELETE) {
+                    removed.add(change.getSeq());
+                } else {
+                    change.setType(SaleChange.Type.INSERT);
+                    change.setBefore(null);
+                }
+            }
+            for (int from = 0; from < removed.size(); from += inChunkSize) {
+                changeRepository.deleteBySeqIn(removed.subList(from, Math.min(from + inChunkSize, removed.size())));
+            }
+            point.setValue(range.get(end - 1).getSeq());
+            return end;
+        });
+        compacted.increment(count);
+        return count;
+    }
+
+    /**
+     * Log the changes of the transaction, once the sales are flushed so that the counter row is locked for the commit
+     * only.
+     */
+    private void append(List<SaleChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        entityManager.flush();
+        if (!seeded) {
+            changes = seededOnly(changes);
+            if (changes.isEmpty()) {
+                return;
+            }
+        }
+        if (counterRepository.increment(SaleChangeCounter.SEQUENCE, changes.size()) == 0) {
+            throw new IllegalStateException("The sale change log is not seeded");
+        }
+        long seq = counterValue(SaleChangeCounter.SEQUENCE, 0L) - changes.size();
+        Date now = new Date();
+        for (SaleChange change : changes) {
+            change.setSeq(++seq);
+            change.setChangedAt(now);
+        }
+        changeRepository.saveAll(changes);
+    }
+
+    /**
+     * Keep the changes of the sales already seeded, locking the seeded point until the commit so that a seed batch
+     * reads the sales either before or after the changes.
+     */
+    private List<SaleChange> seededOnly(List<SaleChange> changes) {
+        long seededId = counterRepository.findForUpdate(SaleChangeCounter.SEEDED).map(SaleChangeCounter::getValue).orElse(Long.MAX_VALUE);
+        if (seededId == Long.MAX_VALUE) {
+            seeded = true;
+            return changes;
+        }
+        return changes.stream().filter(change -> change.getSaleId() <= seededId).collect(Collectors.toList());
+    }
+
+    /**
+     * Hold the compaction for a reader at or before the compaction point, writing the hold once half of it passed.
+     */
+    private void hold(long after) {
+        if (after <= counterValue(SaleChangeCounter.COMPACTED, 0L)) {
+            long now = System.currentTimeMillis();
+            counterRepository.advance(SaleChangeCounter.HELD_UNTIL, now + readerHoldMs, now + readerHoldMs / 2);
+        }
+    }
+
+    /**
+     * Create the counters of a new log, seeded already when there is no sale yet.
+     */
+    private void createCounters() {
+        // no sale can be added meanwhile: the writers cannot log it without the sequence row
+        boolean noSales = saleRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 1)).isEmpty();
+        create(new SaleChangeCounter(SaleChangeCounter.SEQUENCE, 0L), new SaleChangeCounter(SaleChangeCounter.COMPACTED, 0L),
+                new SaleChangeCounter(SaleChangeCounter.SEEDED, noSales ? Long.MAX_VALUE : 0L),
+                new SaleChangeCounter(SaleChangeCounter.HELD_UNTIL, 0L));
+    }
+
+    private void create(SaleChangeCounter... counters) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (SaleChangeCounter counter : counters) {
+                    counterRepository.saveAndFlush(counter);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.info("Sale change log counters created by another instance");
+        }
+    }
+
+    private void seed() {
+        long start = System.currentTimeMillis();
+        while (running && !seeded) {
+            try {
+                seedBatch();
+            } catch (RuntimeException e) {
+                log.error("Could not seed the sale change log, retrying in {} ms", seedRetryDelayMs, e);
+                sleep(seedRetryDelayMs);
+            }
+        }
+        if (seeded) {
+            log.info("Sale change log seeded in {} ms", System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Log an insert for the next batch of sales above the seeded point, in one transaction with the new point. The
+     * instances starting together seed batch after batch in turn.
+     */
+    private void seedBatch() {
+        long point = transactionTemplate.execute(status -> {
+            // locked first: the sales are read after the commit of the writers waiting on it
+            SaleChangeCounter seededPoint = counterRepository.findForUpdate(SaleChangeCounter.SEEDED).orElse(null);
+            if (seededPoint == null || seededPoint.getValue() == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            List<Sale> sales = saleRepository.findByIdGreaterThanOrderByIdAsc(seededPoint.getValue(), PageRequest.of(0, batchSize));
+            if (!sales.isEmpty()) {
+                counterRepository.increment(SaleChangeCounter.SEQUENCE, sales.size());
+                long seq = counterValue(SaleChangeCounter.SEQUENCE, 0L) - sales.size();
+                Date now = new Date();
+                List<SaleChange> changes = new ArrayList<>(sales.size());
+                for (Sale sale : sales) {
+                    SaleChange change = new SaleChange(SaleChange.Type.INSERT, sale.getId(), null, sale);
+                    change.setSeq(++seq);
+                    change.setChangedAt(now);
+                    changes.add(change);
+                }
+                changeRepository.saveAll(changes);
+            }
+            seededPoint.setValue(sales.size() < batchSize ? Long.MAX_VALUE : sales.get(sales.size() - 1).getId());
+            return seededPoint.getValue();
+        });
+        log.debug("Sale change log seeded up to sale {}", point);
+        if (point == Long.MAX_VALUE) {
+            seeded = true;
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private long counterValue(String name, long missing) {
+        return counterRepository.findValue(name).orElse(missing);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SaleChange> pendingChanges() {
+        List<SaleChange> pending = (List<SaleChange>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<SaleChange> changes = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(SaleChangeService.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(SaleChangeService.this, changes);
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    append(changes);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SaleChangeService.this);
+                }
+            });
+            pending = changes;
+        }
+        return pending;
+    }
+
+    private static SaleChange.Type type(SaleEvent.Type type) {
+        switch (type) {
+        case CREATED:
+            return SaleChange.Type.INSERT;
+        case UPDATED:
+            return SaleChange.Type.UPDATE;
+        default:
+            return SaleChange.Type.DELETE;
+        }
+    }
+
+    private static String encodeToken(long compacted, long seq) {
+        String token = TOKEN_PREFIX + compacted + ":" + seq;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the compaction point and the sequence number of the token, null for no token.
+     */
+    private static long[] decodeToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = value.startsWith(TOKEN_PREFIX) ? value.substring(TOKEN_PREFIX.length()).split(":") : new String[0];
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid change token " + token);
+        }
+        return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+    }
+}
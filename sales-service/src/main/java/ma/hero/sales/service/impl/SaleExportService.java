@@ -0,0 +1,221 @@
+package ma.hero.sales.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import ma.hero.sales.service.ISaleExportService;
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Service Implementation exporting the sale table.
+ * <p>
+ * Rows are read through a forward only, read only JDBC cursor with a bounded fetch size and written to the stream as
+ * they come: no entity is hydrated and nothing is kept in a persistence context, so memory stays constant whatever the
+ * number of sales.
+ */
+@Service
+public class SaleExportService implements ISaleExportService {
+
+    private static final String SELECT_SALES = "SELECT id, product_code, client_id, operation_date, quantity, amount FROM sale";
+    private static final String CSV_HEADER = "id,productCode,clientId,operationDate,quantity,amount\n";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern(DateUtils.DATE_PATTERN);
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(SaleExportService.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final JsonFactory jsonFactory;
+
+    public SaleExportService(DataSource dataSource, @Value("${sales.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.jsonFactory = new JsonFactory();
+    }
+
+    @Override
+    public long exportSales(Format format, LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        log.debug("Request to export Sales from {} to {} as {}", from, to, format);
+        StringBuilder sql = new StringBuilder(SELECT_SALES);
+        List<Timestamp> bounds = new ArrayList<>(2);
+        if (from != null) {
+            sql.append(" WHERE operation_date >= ?");
+            bounds.add(new Timestamp(DateUtils.startOfDay(from).getTime()));
+        }
+        if (to != null) {
+            sql.append(from != null ? " AND" : " WHERE").append(" operation_date < ?");
+            bounds.add(new Timestamp(DateUtils.startOfNextDay(to).getTime()));
+        }
+        sql.append(" ORDER BY id");
+
+        SaleRowWriter rowWriter = format == Format.NDJSON ? new NdjsonRowWriter(out) : new CsvRowWriter(out);
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                for (int i = 0; i < bounds.size(); i++) {
+                    statement.setTimestamp(i + 1, bounds.get(i));
+                }
+                return statement;
+            }, rowWriter);
+        } catch (UncheckedIOException e) {
+            // the client went away: stop reading and let the caller see the original failure
+            throw e.getCause();
+        }
+        rowWriter.finish();
+        return rowWriter.count;
+    }
+
+    private static String formatDay(Timestamp timestamp) {
+        return DAY_FORMAT.format(DateUtils.toLocalDate(timestamp));
+    }
+
+    /**
+     * Writes each row as it is read, reusing the same buffered writer for the whole export.
+     */
+    private abstract static class SaleRowWriter implements RowCallbackHandler {
+
+        private long count;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                writeRow(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        abstract void writeRow(ResultSet rs) throws SQLException, IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter extends SaleRowWriter {
+
+        private final Writer writer;
+
+        private CsvRowWriter(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            writer.write(CSV_HEADER);
+        }
+
+        @Override
+        void writeRow(ResultSet rs) throws SQLException, IOException {
+            writer.write(Long.toString(rs.getLong(1)));
+            writer.write(',');
+            writeText(rs.getString(2));
+            writer.write(',');
+            writeLong(rs.getLong(3), rs.wasNull());
+            writer.write(',');
+            Timestamp operationDate = rs.getTimestamp(4);
+            if (operationDate != null) {
+                writer.write(formatDay(operationDate));
+            }
+            writer.write(',');
+            writeLong(rs.getLong(5), rs.wasNull());
+            writer.write(',');
+            double amount = rs.getDouble(6);
+            if (!rs.wasNull()) {
+                writer.write(Double.toString(amount));
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.flush();
+        }
+
+        private void writeLong(long value, boolean isNull) throws IOException {
+            if (!isNull) {
+                writer.write(Long.toString(value));
+            }
+        }
+
+        private void writeText(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private final class NdjsonRowWriter extends SaleRowWriter {
+
+        private final JsonGenerator generator;
+
+        private NdjsonRowWriter(OutputStream out) throws IOException {
+            this.generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+            generator.setRootValueSeparator(null);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        void writeRow(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("id", rs.getLong(1));
+            generator.writeStringField("productCode", rs.getString(2));
+            long clientId = rs.getLong(3);
+            if (rs.wasNull()) {
+                generator.writeNullField("clientId");
+            } else {
+                generator.writeNumberField("clientId", clientId);
+            }
+            Timestamp operationDate = rs.getTimestamp(4);
+            generator.writeStringField("operationDate", operationDate == null ? null : formatDay(operationDate));
+            long quantity = rs.getLong(5);
+            if (rs.wasNull()) {
+                generator.writeNullField("quantity");
+            } else {
+                generator.writeNumberField("quantity", quantity);
+            }
+            double amount = rs.getDouble(6);
+            if (rs.wasNull()) {
+                generator.writeNullField("amount");
+            } else {
+                generator.writeNumberField("amount", amount);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ma.hero.sales.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.service.ISaleService;
+
+/**
+ * Group commit of the sale creations.
+ * <p>
+ * Callers enqueue their sale in a bounded queue and wait for its future. A single writer thread takes up to
+ * max-batch-size sales, or what arrived within max-delay-ms of the first one, and inserts them in one transaction.
+ * When the queue stays full for offer-timeout-ms the sale is rejected, so that callers back off instead of piling up.
+ * A caller still waiting after commit-timeout-ms gets a {@link CommitOutcomeUnknownException} (504 on POST /api/sale)
+ * rather than a rejection: its sale is already queued and may be saved after all.
+ */
+@Service
+@ConditionalOnProperty(prefix = "sales.group-commit", name = "enabled", havingValue = "true")
+public class SaleGroupCommitter {
+
+    private final Logger log = LoggerFactory.getLogger(SaleGroupCommitter.class);
+
+    private final ISaleService saleService;
+
+    private final BlockingQueue<PendingSale> queue;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final long offerTimeoutMs;
+
+    private final long commitTimeoutMs;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer queueWait;
+
+    private final Counter rejected;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    public SaleGroupCommitter(ISaleService saleService, MeterRegistry meterRegistry,
+            @Value("${sales.group-commit.queue-capacity:10000}") int queueCapacity,
+            @Value("${sales.group-commit.max-batch-size:500}") int maxBatchSize,
+            @Value("${sales.group-commit.max-delay-ms:5}") long maxDelayMs,
+            @Value("${sales.group-commit.offer-timeout-ms:50}") long offerTimeoutMs,
+            @Value("${sales.group-commit.commit-timeout-ms:10000}") long commitTimeoutMs) {
+        this.saleService = saleService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.commitTimeoutMs = commitTimeoutMs;
+        this.batchSize = DistributionSummary.builder("sales.group_commit.batch.size")
+                .description("Sales inserted per group commit").publishPercentileHistogram().register(meterRegistry);
+        this.queueWait = Timer.builder("sales.group_commit.queue.wait")
+                .description("Time spent by a sale in the group commit queue").publishPercentileHistogram().register(meterRegistry);
+        this.rejected = Counter.builder("sales.group_commit.rejected")
+                .description("Sales rejected because the group commit queue was full").register(meterRegistry);
+        Gauge.builder("sales.group_commit.queue.size", queue, BlockingQueue::size)
+                .description("Sales waiting in the group commit queue").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::write, "sale-group-committer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(commitTimeoutMs);
+        PendingSale pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("The sale group committer is stopped"));
+        }
+    }
+
+    /**
+     * Enqueue a sale for the next group commit.
+     *
+     * @return the future of the saved entity.
+     * @throws RejectedExecutionException
+     *             if the queue stayed full for offer-timeout-ms.
+     */
+    public CompletableFuture<Sale> submit(Sale sale) {
+        PendingSale pending = new PendingSale(sale);
+        boolean queued;
+        try {
+            queued = running && queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            rejected.increment();
+            throw new RejectedExecutionException("The sale group commit queue is full");
+        }
+        return pending.future;
+    }
+
+    /**
+     * Save a sale with the next group commit and wait for it.
+     *
+     * @return the saved entity.
+     * @throws RejectedExecutionException
+     *             if the queue is full: the sale is not saved.
+     * @throws CommitOutcomeUnknownException
+     *             if the commit did not complete in time: the sale stays queued and may still be saved.
+     */
+    public Sale create(Sale sale) {
+        CompletableFuture<Sale> future = submit(sale);
+        try {
+            return future.get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new CommitOutcomeUnknownException("The sale group commit did not complete in time, the sale may still be saved", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommitOutcomeUnknownException("Interrupted while waiting for the sale group commit, the sale may still be saved", e);
+        }
+    }
+
+    private void write() {
+        List<PendingSale> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSale first = queue.poll(100L, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingSale next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingSale> batch) {
+        long now = System.nanoTime();
+        batch.forEach(pending -> queueWait.record(now - pending.enqueuedAt, TimeUnit.NANOSECONDS));
+        batchSize.record(batch.size());
+        try {
+            List<Sale> saved = saleService.createSales(batch.stream().map(pending -> pending.sale).collect(Collectors.toList()));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // one bad sale must not fail the others: fall back to one transaction per sale
+            log.warn("Group commit of {} sales failed, committing them one by one", batch.size(), e);
+            for (PendingSale pending : batch) {
+                try {
+                    pending.sale.setId(null);
+                    pending.future.complete(saleService.createSale(pending.sale));
+                } catch (RuntimeException single) {
+                    pending.future.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private static final class PendingSale {
+
+        private final Sale sale;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Sale> future = new CompletableFuture<>();
+
+        private PendingSale(Sale sale) {
+            this.sale = sale;
+        }
+    }
+
+    /**
+     * The sale was queued but its commit was not seen in time: it may or may not end up saved.
+     */
+    public static class CommitOutcomeUnknownException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public CommitOutcomeUnknownException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package ma.hero.sales.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.sales.config.JournalConfig;
+import ma.hero.sales.domain.SaleJournalCheckpoint;
+import ma.hero.sales.domain.SaleJournalDeadLetter;
+import ma.hero.sales.journal.JournalEntry;
+import ma.hero.sales.journal.SaleJournal;
+import ma.hero.sales.repository.SaleJournalCheckpointRepository;
+import ma.hero.sales.repository.SaleJournalDeadLetterRepository;
+import ma.hero.sales.service.ISaleService;
+
+/**
+ * Inserts the journaled sales in the database, in batches.
+ * Each batch is inserted in the same transaction as the checkpoint update, so a restart resumes after the last
+ * committed batch without losing or duplicating sales.
+ * A batch failing max-batch-attempts times in a row is inserted one sale at a time; a sale that still fails, other than
+ * transiently, goes to the dead letter table with the checkpoint, so that it does not block the sales behind it.
+ */
+@Service
+@ConditionalOnProperty(prefix = "sales.journal", name = "enabled", havingValue = "true")
+public class SaleJournalDrainer {
+
+    private final Logger log = LoggerFactory.getLogger(SaleJournalDrainer.class);
+
+    private final SaleJournal journal;
+
+    private final ISaleService saleService;
+
+    private final SaleJournalCheckpointRepository checkpointRepository;
+
+    private final SaleJournalDeadLetterRepository deadLetterRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter deadLettered;
+
+    private final int batchSize;
+
+    private final long pollIntervalMs;
+
+    private final long retryDelayMs;
+
+    private final int maxBatchAttempts;
+
+    private volatile long checkpoint;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    public SaleJournalDrainer(SaleJournal journal, ISaleService saleService, SaleJournalCheckpointRepository checkpointRepository,
+            SaleJournalDeadLetterRepository deadLetterRepository, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${sales.journal.batch-size:1000}") int batchSize,
+            @Value("${sales.journal.poll-interval-ms:100}") long pollIntervalMs,
+            @Value("${sales.journal.retry-delay-ms:1000}") long retryDelayMs,
+            @Value("${sales.journal.max-batch-attempts:3}") int maxBatchAttempts) {
+        this.journal = journal;
+        this.saleService = saleService;
+        this.checkpointRepository = checkpointRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retryDelayMs = retryDelayMs;
+        this.maxBatchAttempts = maxBatchAttempts;
+        this.checkpoint = checkpointRepository.findById(JournalConfig.CHECKPOINT_NAME).map(SaleJournalCheckpoint::getSequence).orElse(0L);
+        Gauge.builder("sales.journal.lag", this, drainer -> journal.getLastSequence() - drainer.checkpoint)
+                .description("Journaled sales not yet inserted in the database").register(meterRegistry);
+        this.deadLettered = Counter.builder("sales.journal.dead-lettered")
+                .description("Journaled sales moved to the dead letter table").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::drain, "sale-journal-drainer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        Thread drainer;
+        synchronized (this) {
+            drainer = thread;
+        }
+        if (drainer != null) {
+            drainer.join(10_000L);
+        }
+    }
+
+    /**
+     * @return the sequence of the last journal record inserted in the database.
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    private void drain() {
+        log.info("Draining the sale journal from sequence {}", checkpoint + 1);
+        SaleJournal.Cursor cursor = journal.cursor(checkpoint);
+        List<JournalEntry> entries = new ArrayList<>(batchSize);
+        int failures = 0;
+        while (running) {
+            try {
+                if (entries.isEmpty() && cursor.next(batchSize, entries) == 0) {
+                    journal.awaitAppend(cursor.getNextSequence() - 1, pollIntervalMs);
+                    continue;
+                }
+                if (failures < maxBatchAttempts) {
+                    insert(entries);
+                } else {
+                    insertOneByOne(entries);
+                }
+                entries.clear();
+                failures = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // the remaining sales are kept and retried: the checkpoint did not move past them
+                failures++;
+                log.error("Could not insert {} journaled sales (attempt {}), retrying in {} ms", entries.size(), failures, retryDelayMs, e);
+                sleep(retryDelayMs);
+            }
+        }
+    }
+
+    /**
+     * Insert the sales one at a time, removing each from the list once inserted or dead lettered.
+     * A transient failure is thrown: the sale is retried rather than dead lettered.
+     */
+    private void insertOneByOne(List<JournalEntry> entries) {
+        for (Iterator<JournalEntry> iterator = entries.iterator(); iterator.hasNext();) {
+            JournalEntry entry = iterator.next();
+            try {
+                insert(Collections.singletonList(entry));
+            } catch (TransientDataAccessException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                deadLetter(entry, e);
+            }
+            iterator.remove();
+        }
+    }
+
+    private void deadLetter(JournalEntry entry, RuntimeException cause) {
+        log.error("Moving journaled sale {} to the dead letter table", entry.getSequence(), cause);
+        transactionTemplate.executeWithoutResult(status -> {
+            deadLetterRepository.save(new SaleJournalDeadLetter(entry.getSequence(), entry.getSale(), String.valueOf(cause)));
+            checkpointRepository.save(new SaleJournalCheckpoint(JournalConfig.CHECKPOINT_NAME, entry.getSequence()));
+        });
+        deadLettered.increment();
+        checkpoint = entry.getSequence();
+        journal.release(entry.getSequence());
+    }
+
+    private void insert(List<JournalEntry> entries) {
+        long last = entries.get(entries.size() - 1).getSequence();
+        // a failed attempt may have assigned ids that were rolled back
+        entries.forEach(entry -> entry.getSale().setId(null));
+        transactionTemplate.executeWithoutResult(status -> {
+            saleService.createSales(entries.stream().map(JournalEntry::getSale).collect(Collectors.toList()));
+            checkpointRepository.save(new SaleJournalCheckpoint(JournalConfig.CHECKPOINT_NAME, last));
+        });
+        checkpoint = last;
+        journal.release(last);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ma.hero.sales.service.impl;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleDailyRollup;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.dto.SaleTotals;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
+import ma.hero.sales.repository.SaleDailyRollupRepository.RollupTotals;
+import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.ISaleRollupService;
+import ma.hero.sales.util.DateUtils;
+
+/**
+ * Service Implementation for maintaining and querying {@link SaleDailyRollup}.
+ * Sales without client, date or product code are not part of the rollup.
+ */
+@Service
+@Transactional
+public class SaleRollupService implements ISaleRollupService {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern(DateUtils.DATE_PATTERN);
+
+    private final Logger log = LoggerFactory.getLogger(SaleRollupService.class);
+
+    private final SaleDailyRollupRepository rollupRepository;
+
+    private final SaleRepository saleRepository;
+
+    private final EntityManager entityManager;
+
+    public SaleRollupService(SaleDailyRollupRepository rollupRepository, SaleRepository saleRepository, EntityManager entityManager) {
+        this.rollupRepository = rollupRepository;
+        this.saleRepository = saleRepository;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void addSale(Sale sale) {
+        applySale(sale, 1);
+    }
+
+    @Override
+    public void addSales(Collection<Sale> sales) {
+        applySales(sales, 1);
+    }
+
+    @Override
+    public void removeSale(Sale sale) {
+        applySale(sale, -1);
+    }
+
+    @Override
+    public void removeSales(Collection<Sale> sales) {
+        applySales(sales, -1);
+    }
+
+    private void applySales(Collection<Sale> sales, int sign) {
+        Map<RollupKey, SaleDailyRollup> deltas = new LinkedHashMap<>();
+        for (Sale sale : sales) {
+            accumulate(deltas, sale);
+        }
+        deltas.values().forEach(delta -> applyDelta(delta, sign));
+    }
+
+    private void applySale(Sale sale, int sign) {
+        Map<RollupKey, SaleDailyRollup> deltas = new LinkedHashMap<>(2);
+        accumulate(deltas, sale);
+        deltas.values().forEach(delta -> applyDelta(delta, sign));
+    }
+
+    private void applyDelta(SaleDailyRollup delta, int sign) {
+        if (sign > 0) {
+            rollupRepository.upsertRollup(delta.getClientId(), delta.getDay(), delta.getProductCode(),
+                    delta.getSaleCount(), delta.getQuantity(), delta.getAmount());
+        } else {
+            rollupRepository.addToRollup(delta.getClientId(), delta.getDay(), delta.getProductCode(),
+                    -delta.getSaleCount(), -delta.getQuantity(), -delta.getAmount());
+            rollupRepository.deleteEmptyRollup(delta.getClientId(), delta.getDay(), delta.getProductCode());
+        }
+    }
+
+    private static void accumulate(Map<RollupKey, SaleDailyRollup> rollups, Sale sale) {
+        if (sale.getClientId() == null || sale.getOperationDate() == null || sale.getProductCode() == null) {
+            return;
+        }
+        RollupKey key = new RollupKey(sale.getClientId(), DateUtils.toLocalDate(sale.getOperationDate()), sale.getProductCode());
+        SaleDailyRollup rollup = rollups.computeIfAbsent(key, k -> new SaleDailyRollup(k.clientId, k.day, k.productCode, 0L, 0L, 0D));
+        rollup.setSaleCount(rollup.getSaleCount() + 1);
+        rollup.setQuantity(rollup.getQuantity() + (sale.getQuantity() == null ? 0L : sale.getQuantity()));
+        rollup.setAmount(rollup.getAmount() + (sale.getAmount() == null ? 0D : sale.getAmount()));
+    }
+
+    /**
+     * Get the totals of a client over a period.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SaleTotals getClientTotals(Long clientId, LocalDate from, LocalDate to) {
+        log.debug("Request to get Sale totals of Client {} from {} to {}", clientId, from, to);
+        RollupTotals totals = rollupRepository.sumByClient(clientId, from, to);
+        return new SaleTotals(clientId, from, to, count(totals), quantity(totals), amount(totals));
+    }
+
+    /**
+     * Get the totals of a client over a period, per day.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<SaleAggregate> getClientDailyTotals(Long clientId, LocalDate from, LocalDate to) {
+        log.debug("Request to get daily Sale totals of Client {} from {} to {}", clientId, from, to);
+        return rollupRepository.sumByClientGroupByDay(clientId, from, to).stream()
+                .map(totals -> new SaleAggregate(DAY_FORMAT.format(totals.getDay()), count(totals), quantity(totals), amount(totals)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the totals of a client over a period, per product.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<SaleAggregate> getClientProductTotals(Long clientId, LocalDate from, LocalDate to) {
+        log.debug("Request to get product Sale totals of Client {} from {} to {}", clientId, from, to);
+        return rollupRepository.sumByClientGroupByProduct(clientId, from, to).stream()
+                .map(totals -> new SaleAggregate(totals.getProductCode(), count(totals), quantity(totals), amount(totals)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Recompute the whole rollup from the sale table, in a single transaction.
+     */
+    @Override
+    public long rebuild() {
+        log.info("Rebuilding the sale rollup");
+        Map<RollupKey, SaleDailyRollup> rollups = new LinkedHashMap<>();
+        try (Stream<Sale> sales = saleRepository.streamAllByOrderByIdAsc()) {
+            sales.forEach(sale -> {
+                accumulate(rollups, sale);
+                entityManager.detach(sale);
+            });
+        }
+        rollupRepository.deleteAllInBatch();
+        rollupRepository.saveAll(rollups.values());
+        log.info("Sale rollup rebuilt with {} rows", rollups.size());
+        return rollups.size();
+    }
+
+    private static long count(RollupTotals totals) {
+        return totals == null || totals.getSaleCount() == null ? 0L : totals.getSaleCount();
+    }
+
+    private static long quantity(RollupTotals totals) {
+        return totals == null || totals.getQuantity() == null ? 0L : totals.getQuantity();
+    }
+
+    private static double amount(RollupTotals totals) {
+        return totals == null || totals.getAmount() == null ? 0D : totals.getAmount();
+    }
+
+    private static final class RollupKey {
+
+        private final Long clientId;
+        private final LocalDate day;
+        private final String productCode;
+
+        private RollupKey(Long clientId, LocalDate day, String productCode) {
+            this.clientId = clientId;
+            this.day = day;
+            this.productCode = productCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) o;
+            return clientId.equals(other.clientId) && day.equals(other.day) && productCode.equals(other.productCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clientId, day, productCode);
+        }
+    }
+}
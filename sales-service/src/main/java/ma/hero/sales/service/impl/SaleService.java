@@ -1,15 +1,44 @@
 package ma.hero.sales.service.impl;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.ProductSaleView;
+import ma.hero.sales.event.SaleEvent;
+import ma.hero.sales.repository.SaleClientMarkerRepository;
 import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.ISaleRollupService;
 import ma.hero.sales.service.ISaleService;
+import ma.hero.sales.util.DateUtils;
 
 /**
  * Service Implementation for managing {@link Sale}.
@@ -22,8 +51,40 @@ public class SaleService implements ISaleService {
 
     private final SaleRepository saleRepository;
 
-    public SaleService(SaleRepository saleRepository) {
+    private final ISaleRollupService saleRollupService;
+
+    private final SaleClientMarkerRepository clientMarkerRepository;
+
+    private final EntityManager entityManager;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int inChunkSize;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final SaleCache saleCache;
+
+    private final int deleteChunkSize;
+
+    private final int deleteMaxRowsPerSecond;
+
+    public SaleService(SaleRepository saleRepository, ISaleRollupService saleRollupService,
+            SaleClientMarkerRepository clientMarkerRepository, EntityManager entityManager, ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager, SaleCache saleCache,
+            @Value("${sales.bulk.in-chunk-size:500}") int inChunkSize,
+            @Value("${sales.bulk-delete.chunk-size:500}") int deleteChunkSize,
+            @Value("${sales.bulk-delete.max-rows-per-second:5000}") int deleteMaxRowsPerSecond) {
         this.saleRepository = saleRepository;
+        this.saleRollupService = saleRollupService;
+        this.clientMarkerRepository = clientMarkerRepository;
+        this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.saleCache = saleCache;
+        this.inChunkSize = inChunkSize;
+        this.deleteChunkSize = deleteChunkSize;
+        this.deleteMaxRowsPerSecond = deleteMaxRowsPerSecond;
     }
 
     /**
@@ -34,7 +95,29 @@ public class SaleService implements ISaleService {
     @Override
     public Sale createSale(Sale sale) {
         log.debug("Request to save Sale : {}", sale);
-        return saleRepository.save(sale);
+        Sale saved = saleRepository.save(sale);
+        saleRollupService.addSale(saved);
+        touchClient(saved.getClientId());
+        eventPublisher.publishEvent(SaleEvent.created(saved));
+        return saved;
+    }
+
+    /**
+     * Save several sales in one transaction.
+     * The inserts are sent as JDBC batches, then the persistence context is cleared.
+     * @param sales the entities to save.
+     * @return the persisted entities, detached.
+     */
+    @Override
+    public List<Sale> createSales(List<Sale> sales) {
+        log.debug("Request to save {} Sales", sales.size());
+        List<Sale> saved = saleRepository.saveAll(sales);
+        saleRollupService.addSales(saved);
+        saved.stream().map(Sale::getClientId).distinct().forEach(this::touchClient);
+        saved.forEach(created -> eventPublisher.publishEvent(SaleEvent.created(created)));
+        entityManager.flush();
+        entityManager.clear();
+        return saved;
     }
 
     /**
@@ -48,6 +131,36 @@ public class SaleService implements ISaleService {
         return saleRepository.findAll();
     }
 
+    /**
+     * Get a page of sales using keyset pagination on the id.
+     * @param afterId the id of the last sale of the previous page, null for the first page.
+     * @param size the maximum number of sales to return.
+     * @return the list of entities, ordered by id.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Sale> getSalesPage(Long afterId, int size) {
+        log.debug("Request to get a page of {} Sales after : {}", size, afterId);
+        return saleRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, PageRequest.of(0, size));
+    }
+
+    /**
+     * Stream all the sales ordered by id.
+     * Each sale is detached once consumed so the persistence context stays empty.
+     * @param action the callback invoked for each sale.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllSales(Consumer<Sale> action) {
+        log.debug("Request to stream all Sales");
+        try (Stream<Sale> sales = saleRepository.streamAllByOrderByIdAsc()) {
+            sales.forEach(sale -> {
+                action.accept(sale);
+                entityManager.detach(sale);
+            });
+        }
+    }
+
     /**
      * Get one sale by id.
      * @param id the id of the entity.
@@ -57,7 +170,7 @@ public class SaleService implements ISaleService {
     @Transactional(readOnly = true)
     public Sale getSale(Long id) {
         log.debug("Request to get Sale : {}", id);
-        return saleRepository.findById(id).orElse(null);
+        return saleCache.getSale(id, () -> saleRepository.findById(id).orElse(null));
     }
 
     /**
@@ -70,7 +183,59 @@ public class SaleService implements ISaleService {
     @Transactional(readOnly = true)
     public List<Sale> getSalesByClient(Long clientId){
         log.debug("Request to get Sales By Client ID : {}", clientId);
-        return saleRepository.findByClientId(clientId);
+        return saleCache.getSalesByClient(clientId, () -> saleRepository.findByClientId(clientId));
+    }
+
+    /**
+     * Get the sales of several clients.
+     * The ids are sent in chunks of in-chunk-size, so that a long list does not produce an oversized IN clause.
+     *
+     * @param clientIds the ids of the clients.
+     * @return the sales of each requested client, in request order.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, List<Sale>> getSalesByClients(Collection<Long> clientIds) {
+        log.debug("Request to get Sales By Client IDs : {}", clientIds);
+        Map<Long, List<Sale>> salesByClient = new LinkedHashMap<>();
+        clientIds.forEach(clientId -> salesByClient.put(clientId, new ArrayList<>()));
+        List<Long> ids = new ArrayList<>(salesByClient.keySet());
+        for (int start = 0; start < ids.size(); start += inChunkSize) {
+            List<Long> chunk = ids.subList(start, Math.min(start + inChunkSize, ids.size()));
+            saleRepository.findByClientIdInOrderByClientIdAscIdAsc(chunk)
+                    .forEach(sale -> salesByClient.get(sale.getClientId()).add(sale));
+        }
+        return salesByClient;
+    }
+
+    /**
+     * Get the sales of a client over a period.
+     *
+     * @param clientId the id of the client.
+     * @param from the first day, inclusive, null for no lower bound.
+     * @param to the last day, inclusive, null for no upper bound.
+     * @return the list of sales, ordered by operation date.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ClientSaleView> getClientSalesBetween(Long clientId, LocalDate from, LocalDate to) {
+        log.debug("Request to get Sales of Client {} from {} to {}", clientId, from, to);
+        return saleRepository.findClientSalesBetween(clientId, lowerBound(from), upperBound(to));
+    }
+
+    /**
+     * Get the sales of a product over a period.
+     *
+     * @param productCode the code of the product.
+     * @param from the first day, inclusive, null for no lower bound.
+     * @param to the last day, inclusive, null for no upper bound.
+     * @return the list of sales, ordered by operation date.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProductSaleView> getProductSalesBetween(String productCode, LocalDate from, LocalDate to) {
+        log.debug("Request to get Sales of Product {} from {} to {}", productCode, from, to);
+        return saleRepository.findProductSalesBetween(productCode, lowerBound(from), upperBound(to));
     }
 
     /**
@@ -81,10 +246,72 @@ public class SaleService implements ISaleService {
     @Override
     public Sale updateSale(Sale sale) {
         log.debug("Request to update Sale : {}", sale);
-        if (!saleRepository.existsById(sale.getId())) {
+        Sale existing = saleRepository.findById(sale.getId()).orElse(null);
+        if (existing == null) {
+            return null;
+        }
+        if (sale.getVersion() != null && !sale.getVersion().equals(existing.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Sale.class, sale.getId());
+        }
+        // the rollup and the event must see the old values before they are overwritten
+        Sale previous = new Sale(existing);
+        saleRollupService.removeSale(existing);
+        existing.setProductCode(sale.getProductCode());
+        existing.setClientId(sale.getClientId());
+        existing.setOperationDate(sale.getOperationDate());
+        existing.setQuantity(sale.getQuantity());
+        existing.setAmount(sale.getAmount());
+        saleRollupService.addSale(existing);
+        touchClient(previous.getClientId());
+        if (!Objects.equals(previous.getClientId(), existing.getClientId())) {
+            touchClient(existing.getClientId());
+        }
+        // flushed for the new version of the change log entry
+        entityManager.flush();
+        eventPublisher.publishEvent(SaleEvent.updated(previous, existing));
+        return existing;
+    }
+
+    /**
+     * Update some fields of a sale.
+     * The sale is read once, for the rollup and the event that need its old values, then detached: the UPDATE sets the
+     * patched columns only and is conditioned on the version read, so a concurrent change makes it fail instead of
+     * being overwritten.
+     * @param id the id of the sale.
+     * @param version the version the sale must have, null to patch the version read.
+     * @param changes the new values of the fields.
+     * @param fields the names of the fields to update.
+     * @return the patched sale, null if it does not exist.
+     */
+    @Override
+    public Sale patchSale(Long id, Long version, Sale changes, Set<String> fields) {
+        log.debug("Request to patch Sale {} : {}", id, fields);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, patchedValue(changes, field));
+        }
+        Sale previous = saleRepository.findById(id).orElse(null);
+        if (previous == null) {
             return null;
         }
-        return saleRepository.save(sale);
+        entityManager.detach(previous);
+        if (version != null && !version.equals(previous.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Sale.class, id);
+        }
+        if (saleRepository.patch(id, previous.getVersion(), values) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Sale.class, id);
+        }
+        Sale patched = new Sale(previous);
+        values.forEach((field, value) -> applyPatch(patched, field, value));
+        patched.setVersion(previous.getVersion() + 1);
+        saleRollupService.removeSale(previous);
+        saleRollupService.addSale(patched);
+        touchClient(previous.getClientId());
+        if (!Objects.equals(previous.getClientId(), patched.getClientId())) {
+            touchClient(patched.getClientId());
+        }
+        eventPublisher.publishEvent(SaleEvent.updated(previous, patched));
+        return patched;
     }
 
     /**
@@ -94,6 +321,187 @@ public class SaleService implements ISaleService {
     @Override
     public void deleteSale(Long id) {
         log.debug("Request to delete Sale : {}", id);
-        saleRepository.deleteById(id);
+        Sale existing = saleRepository.findById(id)
+                .orElseThrow(() -> new EmptyResultDataAccessException(String.format("No %s entity with id %s exists!", Sale.class, id), 1));
+        saleRollupService.removeSale(existing);
+        saleRepository.delete(existing);
+        touchClient(existing.getClientId());
+        eventPublisher.publishEvent(SaleEvent.deleted(existing));
+    }
+
+    /**
+     * Delete sales by id, by chunks of the configured size.
+     * @param ids the ids of the sales, unknown ones are ignored.
+     * @return the number of sales deleted.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long deleteSales(Collection<Long> ids) {
+        log.debug("Request to delete {} Sales", ids.size());
+        // sorted, so that concurrent bulk deletes lock the rows in the same order
+        List<Long> sorted = new ArrayList<>(new TreeSet<>(ids));
+        long deleted = 0;
+        for (int from = 0; from < sorted.size(); from += deleteChunkSize) {
+            List<Long> chunk = sorted.subList(from, Math.min(from + deleteChunkSize, sorted.size()));
+            long start = System.nanoTime();
+            int count = transactionTemplate.execute(status -> deleteChunk(saleRepository.findByIdInOrderByIdAsc(chunk)).size());
+            deleted += count;
+            pace(count, start, deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete all the sales of a client, by chunks of the configured size.
+     * @param clientId the id of the client.
+     * @return the number of sales deleted.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long deleteClientSales(Long clientId) {
+        log.debug("Request to delete the Sales of Client : {}", clientId);
+        return deleteByKeyset(afterId -> saleRepository.findByClientIdAndIdGreaterThanOrderByIdAsc(clientId, afterId,
+                PageRequest.of(0, deleteChunkSize)));
+    }
+
+    /**
+     * Delete the sales made before a day, by chunks of the configured size.
+     * @param day the first day kept.
+     * @return the number of sales deleted.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long deleteSalesBefore(LocalDate day) {
+        log.debug("Request to delete the Sales made before {}", day);
+        Date before = DateUtils.startOfDay(day);
+        return deleteByKeyset(afterId -> saleRepository.findByOperationDateBeforeAndIdGreaterThanOrderByIdAsc(before, afterId,
+                PageRequest.of(0, deleteChunkSize)));
+    }
+
+    /**
+     * Delete the chunks read after the last deleted id until a chunk is empty, each in its own transaction.
+     */
+    private long deleteByKeyset(LongFunction<List<Sale>> nextChunk) {
+        long deleted = 0;
+        long afterId = 0L;
+        while (true) {
+            long after = afterId;
+            long start = System.nanoTime();
+            List<Sale> chunk = transactionTemplate.execute(status -> deleteChunk(nextChunk.apply(after)));
+            if (chunk.isEmpty()) {
+                return deleted;
+            }
+            deleted += chunk.size();
+            afterId = chunk.get(chunk.size() - 1).getId();
+            if (chunk.size() < deleteChunkSize) {
+                return deleted;
+            }
+            pace(chunk.size(), start, deleted);
+        }
+    }
+
+    /**
+     * One DELETE statement for the chunk, read and locked beforehand in the same transaction, and one rollup write
+     * per (client, day, product) group of the chunk.
+     */
+    private List<Sale> deleteChunk(List<Sale> sales) {
+        if (sales.isEmpty()) {
+            return sales;
+        }
+        List<Long> ids = new ArrayList<>(sales.size());
+        sales.forEach(sale -> ids.add(sale.getId()));
+        entityManager.clear();
+        saleRepository.deleteByIdIn(ids);
+        saleRollupService.removeSales(sales);
+        sales.stream().map(Sale::getClientId).distinct().forEach(this::touchClient);
+        sales.forEach(sale -> eventPublisher.publishEvent(SaleEvent.deleted(sale)));
+        return sales;
+    }
+
+    /**
+     * Wait, after a chunk, long enough to keep under the configured deleted rows per second, so that a large delete
+     * leaves room to the other writers of the sale table. An interrupted thread stops the delete there.
+     * @param deleted the sales deleted so far.
+     * @throws DeleteInterruptedException if the thread was interrupted, so that a partial delete is never taken for a
+     *             complete one.
+     */
+    private void pace(int rows, long startNanos, long deleted) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new DeleteInterruptedException(deleted, null);
+        }
+        if (deleteMaxRowsPerSecond <= 0) {
+            return;
+        }
+        long waitNanos = TimeUnit.SECONDS.toNanos(rows) / deleteMaxRowsPerSecond - (System.nanoTime() - startNanos);
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeleteInterruptedException(deleted, e);
+        }
+    }
+
+    /**
+     * Get the change counter of the sales of a client.
+     * @param clientId the id of the client.
+     * @return the counter, 0 if the client never had a sale.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long getClientSalesVersion(Long clientId) {
+        return clientMarkerRepository.findVersionByClientId(clientId).orElse(0L);
+    }
+
+    private void touchClient(Long clientId) {
+        if (clientId != null) {
+            clientMarkerRepository.incrementVersion(clientId);
+        }
+    }
+
+    private static Object patchedValue(Sale changes, String field) {
+        switch (field) {
+        case "productCode":
+            return changes.getProductCode();
+        case "clientId":
+            return changes.getClientId();
+        case "operationDate":
+            return changes.getOperationDate();
+        case "quantity":
+            return changes.getQuantity();
+        case "amount":
+            return changes.getAmount();
+        default:
+            throw new IllegalArgumentException("The field " + field + " cannot be patched");
+        }
+    }
+
+    private static void applyPatch(Sale sale, String field, Object value) {
+        switch (field) {
+        case "productCode":
+            sale.setProductCode((String) value);
+            break;
+        case "clientId":
+            sale.setClientId((Long) value);
+            break;
+        case "operationDate":
+            sale.setOperationDate((Date) value);
+            break;
+        case "quantity":
+            sale.setQuantity((Long) value);
+            break;
+        default:
+            sale.setAmount((Double) value);
+        }
+    }
+
+    private static Date lowerBound(LocalDate from) {
+        return from == null ? null : DateUtils.startOfDay(from);
+    }
+
+    private static Date upperBound(LocalDate to) {
+        return to == null ? null : DateUtils.startOfNextDay(to);
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package ma.hero.sales.util;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Date conversions shared by the sales service.
+ * Days are computed in UTC, like the datasource (serverTimezone=UTC).
+ */
+public final class DateUtils {
+
+    /**
+     * Pattern used for dates in the REST API.
+     */
+    public static final String DATE_PATTERN = "dd-MM-yyyy";
+
+    private DateUtils() {
+    }
+
+    public static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * @return the first instant of the given day.
+     */
+    public static Date startOfDay(LocalDate day) {
+        return day == null ? null : Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    /**
+     * @return the first instant of the day following the given one, to be used as an exclusive upper bound.
+     */
+    public static Date startOfNextDay(LocalDate day) {
+        return day == null ? null : startOfDay(day.plusDays(1));
+    }
+}
@@ -0,0 +1,111 @@
+package ma.hero.sales.analytics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ma.hero.sales.analytics.SaleColumnStore.Metric;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.util.DateUtils;
+
+public class SaleColumnStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2021, 3, 10);
+
+    private SaleColumnStore store;
+
+    @Before
+    public void createStore() {
+        store = new SaleColumnStore();
+        store.put(sale(1L, "Code1", 1L, DAY, 2L, 10.0D));
+        store.put(sale(2L, "Code1", 2L, DAY.plusDays(1), 1L, 5.0D));
+        store.put(sale(3L, "Code2", 1L, DAY.plusDays(2), 4L, 40.0D));
+    }
+
+    @Test
+    public void testTotals() {
+        SaleAggregate all = store.totals(SaleColumnFilter.of(null, null, null, null));
+        assertEquals(3L, all.getCount());
+        assertEquals(7L, all.getQuantity());
+        assertEquals(55.0D, all.getAmount(), 0.001D);
+
+        SaleAggregate filtered = store.totals(SaleColumnFilter.of(DAY, DAY.plusDays(1), 1L, "Code1"));
+        assertEquals(1L, filtered.getCount());
+        assertEquals(10.0D, filtered.getAmount(), 0.001D);
+
+        assertEquals(0L, store.totals(SaleColumnFilter.of(null, null, null, "Unknown")).getCount());
+    }
+
+    @Test
+    public void testGroupBy() {
+        List<SaleAggregate> products = store.groupByProduct(SaleColumnFilter.of(null, null, null, null));
+        assertThat(products, hasSize(2));
+        assertEquals("Code1", products.get(0).getKey());
+        assertEquals(2L, products.get(0).getCount());
+
+        List<SaleAggregate> clients = store.groupByClient(SaleColumnFilter.of(null, null, null, null));
+        assertThat(clients, hasSize(2));
+        assertEquals("1", clients.get(0).getKey());
+        assertEquals(50.0D, clients.get(0).getAmount(), 0.001D);
+
+        List<SaleAggregate> days = store.groupByDay(SaleColumnFilter.of(DAY.plusDays(1), null, null, null));
+        assertThat(days, hasSize(2));
+        assertEquals("11-03-2021", days.get(0).getKey());
+    }
+
+    @Test
+    public void testTop() {
+        List<SaleAggregate> top = SaleColumnStore.top(store.groupByProduct(SaleColumnFilter.of(null, null, null, null)), Metric.AMOUNT, 1);
+        assertThat(top, hasSize(1));
+        assertEquals("Code2", top.get(0).getKey());
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        store.put(sale(1L, "Code2", 1L, DAY, 2L, 20.0D));
+        store.remove(2L);
+        assertEquals(2, store.size());
+        SaleAggregate code2 = store.totals(SaleColumnFilter.of(null, null, null, "Code2"));
+        assertEquals(2L, code2.getCount());
+        assertEquals(60.0D, code2.getAmount(), 0.001D);
+        assertEquals(0L, store.totals(SaleColumnFilter.of(null, null, null, "Code1")).getCount());
+    }
+
+    @Test
+    public void testCompaction() {
+        for (long id = 10L; id < 5000L; id++) {
+            store.put(sale(id, "Code3", 3L, DAY, 1L, 1.0D));
+        }
+        for (long id = 10L; id < 4000L; id++) {
+            store.remove(id);
+        }
+        assertEquals(1003, store.size());
+        assertEquals(1000L, store.totals(SaleColumnFilter.of(null, null, 3L, null)).getCount());
+        store.put(sale(4500L, "Code3", 3L, DAY, 5L, 1.0D));
+        assertEquals(1004L, store.totals(SaleColumnFilter.of(null, null, 3L, null)).getQuantity());
+    }
+
+    @Test
+    public void testLoadDoesNotResurrectDeletedSales() {
+        store.startLoading();
+        store.remove(4L);
+        store.load(sale(4L, "Code1", 1L, DAY, 1L, 1.0D));
+        store.load(sale(1L, "Code1", 1L, DAY, 99L, 1.0D));
+        store.finishLoading();
+        assertEquals(3, store.size());
+        assertEquals(2L, store.totals(SaleColumnFilter.of(null, null, 1L, "Code1")).getQuantity());
+    }
+
+    private static Sale sale(Long id, String productCode, Long clientId, LocalDate day, Long quantity, Double amount) {
+        Sale sale = new Sale(productCode, clientId, DateUtils.startOfDay(day), quantity, amount);
+        sale.setId(id);
+        return sale;
+    }
+}
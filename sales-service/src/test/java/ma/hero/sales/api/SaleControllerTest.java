@@ -2,14 +2,33 @@ package ma.hero.sales.api;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -21,7 +40,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -29,10 +50,19 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.gson.Gson;
+import com.jayway.jsonpath.JsonPath;
 
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleChange;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.SaleChangePage;
+import ma.hero.sales.service.ISaleChangeService;
 import ma.hero.sales.service.impl.SaleService;
 
 @RunWith(SpringRunner.class)
@@ -48,6 +78,12 @@ public class SaleControllerTest {
     private SaleController controller;
     @MockBean
     private SaleService service;
+    @MockBean
+    private ISaleChangeService changeService;
+    @Autowired
+    private WebApplicationContext context;
+
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
 
     private final Gson gson = new Gson();
 
@@ -60,10 +96,28 @@ public class SaleControllerTest {
     @Test
     public void testGetSales() throws Exception {
         Sale sale1 = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
+        sale1.setId(1L);
+        Sale sale2 = new Sale("Code2", 2L, new Date(), 2L, 20.0D);
+        sale2.setId(2L);
+        when(service.getSalesPage(null, 101)).thenReturn(Stream.of(sale1, sale2).collect(Collectors.toList()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale").accept(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$.content", hasSize(2))).andExpect(jsonPath("$.nextCursor").doesNotExist()).andReturn();
+    }
+
+    @Test
+    public void testGetSalesNextCursor() throws Exception {
+        Sale sale1 = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
+        sale1.setId(1L);
         Sale sale2 = new Sale("Code2", 2L, new Date(), 2L, 20.0D);
-        when(service.getAllSales()).thenReturn(Stream.of(sale1, sale2).collect(Collectors.toList()));
+        sale2.setId(2L);
+        when(service.getSalesPage(null, 2)).thenReturn(Stream.of(sale1, sale2).collect(Collectors.toList()));
+        when(service.getSalesPage(1L, 2)).thenReturn(Stream.of(sale2).collect(Collectors.toList()));
 
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/sales").accept(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$", hasSize(2))).andReturn();
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/sale?size=1").accept(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$.content", hasSize(1))).andReturn();
+        String cursor = JsonPath.read(result.getResponse().getContentAsString(), "$.nextCursor");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale?size=1&cursor=" + cursor).accept(MediaType.APPLICATION_JSON)).andExpect(jsonPath("$.content", hasSize(1))).andExpect(jsonPath("$.nextCursor").doesNotExist()).andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale?cursor=invalid").accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest());
     }
 
     @Test
@@ -87,6 +141,20 @@ public class SaleControllerTest {
 
     }
 
+    @Test
+    public void testGetClientSalesBetween() throws Exception {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 1L);
+        row.put("productCode", "Code1");
+        row.put("operationDate", new Date(0L));
+        ClientSaleView view = new SpelAwareProxyProjectionFactory().createProjection(ClientSaleView.class, row);
+        when(service.getClientSalesBetween(eq(1L), any(), any())).thenReturn(Stream.of(view).collect(Collectors.toList()));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/client/1/range?from=01-01-1970&to=31-01-1970").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(1))).andExpect(jsonPath("$[0].operationDate").value("01-01-1970"))
+                .andExpect(jsonPath("$[0].clientId").doesNotExist()).andReturn();
+    }
+
     @Test
     public void testCreateSale() throws Exception {
         Sale sale1 = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
@@ -98,6 +166,151 @@ public class SaleControllerTest {
         JSONAssert.assertEquals(gson.toJson(sale1), result.getResponse().getContentAsString(), false);
     }
 
+    @Test
+    public void testCreateSalesBatch() throws Exception {
+        when(service.createSales(any())).thenAnswer(invocation -> {
+            List<Sale> sales = invocation.getArgument(0);
+            for (int i = 0; i < sales.size(); i++) {
+                sales.get(i).setId(i + 1L);
+            }
+            return sales;
+        });
+        Sale sale1 = new Sale("Code1", 1L, null, 3L, 10.0D);
+        Sale sale2 = new Sale("Code2", 2L, null, 2L, 20.0D);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/sale/batch").accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON).content(gson.toJson(new Sale[] { sale1, sale2 })))
+                .andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(1))).andExpect(jsonPath("$[0].created").value(2)).andExpect(jsonPath("$[0].lastId").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/sale/batch").accept(MediaType.APPLICATION_JSON).contentType("application/x-ndjson").content(gson.toJson(sale1) + "\n" + gson.toJson(sale2) + "\n" + gson.toJson(sale1) + "\n"))
+                .andExpect(status().isOk()).andExpect(jsonPath("$[0].created").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/sale/batch").accept(MediaType.APPLICATION_JSON).contentType("application/x-ndjson").content(gson.toJson(sale1) + "\n{broken"))
+                .andExpect(status().isBadRequest()).andExpect(jsonPath("$[0].error").exists());
+    }
+
+    @Test
+    public void testExportSalesGzip() throws Exception {
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/export").param("format", "csv").param("gzip", "true"))
+                .andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip")).andReturn();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())), StandardCharsets.UTF_8))) {
+            assertEquals("id,productCode,clientId,operationDate,quantity,amount", reader.readLine());
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/export").param("format", "xlsx")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetSaleNotModified() throws Exception {
+        Sale sale = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
+        sale.setId(1L);
+        sale.setVersion(4L);
+        when(service.getSale(1L)).thenReturn(sale);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(header().string("ETag", "\"1-4\""));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/1").accept(MediaType.APPLICATION_JSON).header("If-None-Match", "\"1-4\""))
+                .andExpect(status().isNotModified()).andExpect(content().string(""));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/1").accept(MediaType.APPLICATION_JSON).header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testGetSalesByClientAsSmile() throws Exception {
+        Sale sale1 = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
+        when(service.getSalesByClient(1L)).thenReturn(Stream.of(sale1).collect(Collectors.toList()));
+        // the converters of the application, not the standalone ones
+        MockMvc webMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        MvcResult result = webMvc.perform(MockMvcRequestBuilders.get("/api/sale/client/1").accept(SMILE, MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().contentType(SMILE)).andReturn();
+        JsonNode sales = new ObjectMapper(new SmileFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertEquals(1, sales.size());
+        assertEquals("Code1", sales.get(0).get("productCode").asText());
+
+        webMvc.perform(MockMvcRequestBuilders.get("/api/sale/client/1").accept(MediaType.ALL))
+                .andExpect(status().isOk()).andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    public void testGetSalesByClientNotModified() throws Exception {
+        when(service.getClientSalesVersion(1L)).thenReturn(7L);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/client/1").accept(MediaType.APPLICATION_JSON).header("If-None-Match", "\"client-1-7\""))
+                .andExpect(status().isNotModified());
+        verify(service, never()).getSalesByClient(1L);
+    }
+
+    @Test
+    public void testPatchSale() throws Exception {
+        Sale patched = new Sale("Code1", 1L, new Date(), 5L, 10.0D);
+        patched.setId(1L);
+        patched.setVersion(3L);
+        when(service.patchSale(eq(1L), eq(2L), any(Sale.class), eq(Collections.singleton("quantity")))).thenReturn(patched);
+        when(service.patchSale(eq(1L), eq(1L), any(Sale.class), any())).thenThrow(new ObjectOptimisticLockingFailureException(Sale.class, 1L));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/sale/1").header("If-Match", "\"1-2\"").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"quantity\": 5}").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(header().string("ETag", "\"1-3\"")).andExpect(jsonPath("$.quantity").value(5));
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/sale/1").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"quantity\": 5, \"version\": 1}").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/sale/2").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"quantity\": 5}").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/sale/1").header("If-Match", "\"7-2\"").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"quantity\": 5}").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetChanges() throws Exception {
+        Sale sale = new Sale("Code1", 1L, new Date(), 5L, 10.0D);
+        sale.setId(8L);
+        SaleChange change = new SaleChange(SaleChange.Type.INSERT, 8L, null, sale);
+        change.setSeq(12L);
+        when(changeService.getChanges("token", 100)).thenReturn(new SaleChangePage(Collections.singletonList(change), "next"));
+        when(changeService.getChanges("compacted", 100)).thenReturn(null);
+        when(changeService.getChanges("bad", 100)).thenThrow(new IllegalArgumentException("Invalid change token bad"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/changes").param("since", "token").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(jsonPath("$.changes", hasSize(1))).andExpect(jsonPath("$.next").value("next"))
+                .andExpect(jsonPath("$.changes[0].seq").value(12)).andExpect(jsonPath("$.changes[0].type").value("INSERT"))
+                .andExpect(jsonPath("$.changes[0].before").doesNotExist()).andExpect(jsonPath("$.changes[0].after.quantity").value(5));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/changes").param("since", "compacted").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isGone());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/changes").param("since", "bad").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/sale/changes").param("limit", "100000").accept(MediaType.APPLICATION_JSON));
+        verify(changeService).getChanges(null, 1000);
+    }
+
+    @Test
+    public void testApplyClientEvents() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/sale/client-events").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\": 1, \"type\": \"CREATED\"}]").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testDeleteSales() throws Exception {
+        when(service.deleteSales(Arrays.asList(1L, 2L))).thenReturn(2L);
+        when(service.deleteClientSales(3L)).thenReturn(5L);
+        when(service.deleteSalesBefore(LocalDate.of(2021, 1, 31))).thenReturn(7L);
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/sale").param("ids", "1,2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().string("2"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/sale").param("clientId", "3").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().string("5"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/sale").param("before", "31-01-2021").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andExpect(content().string("7"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/sale").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/sale").param("ids", "1").param("clientId", "3").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        verify(service, never()).deleteSales(Collections.singletonList(1L));
+    }
+
     @Test
     public void testDeleteSale() throws Exception {
         doNothing().when(service).deleteSale(1L);
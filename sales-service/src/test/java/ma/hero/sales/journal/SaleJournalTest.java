@@ -0,0 +1,118 @@
+package ma.hero.sales.journal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ma.hero.sales.domain.Sale;
+
+public class SaleJournalTest {
+
+    private static final int SEGMENT_SIZE = 2048;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        try (SaleJournal journal = new SaleJournal(folder.getRoot().toPath(), SEGMENT_SIZE, false, 0L)) {
+            assertEquals(1L, journal.append(new Sale("Code1", 1L, new Date(1000L), 3L, 10.0D)));
+            assertEquals(2L, journal.append(new Sale(null, null, null, null, null)));
+
+            List<JournalEntry> entries = new ArrayList<>();
+            assertEquals(2, journal.cursor(0L).next(10, entries));
+            Sale sale = entries.get(0).getSale();
+            assertEquals("Code1", sale.getProductCode());
+            assertEquals(Long.valueOf(1L), sale.getClientId());
+            assertEquals(new Date(1000L), sale.getOperationDate());
+            assertEquals(Long.valueOf(3L), sale.getQuantity());
+            assertEquals(Double.valueOf(10.0D), sale.getAmount());
+            assertNull(entries.get(1).getSale().getProductCode());
+            assertNull(entries.get(1).getSale().getAmount());
+        }
+    }
+
+    @Test
+    public void testRotationAndRelease() throws IOException {
+        try (SaleJournal journal = new SaleJournal(folder.getRoot().toPath(), SEGMENT_SIZE, false, 0L)) {
+            for (int i = 0; i < 200; i++) {
+                journal.append(new Sale("Code" + i, (long) i, new Date(), 1L, 1.0D));
+            }
+            assertTrue(journal.segmentFiles().size() > 1);
+
+            List<JournalEntry> entries = new ArrayList<>();
+            SaleJournal.Cursor cursor = journal.cursor(50L);
+            assertEquals(150, cursor.next(1000, entries));
+            assertEquals(51L, entries.get(0).getSequence());
+            assertEquals("Code50", entries.get(0).getSale().getProductCode());
+            assertEquals("Code199", entries.get(149).getSale().getProductCode());
+
+            journal.release(200L);
+            assertThat(journal.segmentFiles(), hasSize(1));
+            journal.append(new Sale("Code200", 1L, new Date(), 1L, 1.0D));
+            entries.clear();
+            assertEquals(1, cursor.next(10, entries));
+            assertEquals(201L, entries.get(0).getSequence());
+        }
+    }
+
+    @Test
+    public void testRecoveryDropsTornRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Path lastSegment;
+        try (SaleJournal journal = new SaleJournal(directory, SEGMENT_SIZE, false, 0L)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(new Sale("Code" + i, (long) i, new Date(), 1L, 1.0D));
+            }
+            List<Path> files = journal.segmentFiles();
+            lastSegment = files.get(files.size() - 1);
+        }
+        // corrupt the payload of the last record, as if the process died while writing it
+        try (RandomAccessFile file = new RandomAccessFile(lastSegment.toFile(), "rw")) {
+            long position = 0L;
+            long last = 0L;
+            file.seek(position);
+            int length = file.readInt();
+            while (length > 0) {
+                last = position;
+                position += SaleJournal.HEADER_SIZE + length;
+                file.seek(position);
+                length = file.readInt();
+            }
+            file.seek(last + SaleJournal.HEADER_SIZE + 2);
+            file.writeByte(0x7F);
+        }
+
+        try (SaleJournal journal = new SaleJournal(directory, SEGMENT_SIZE, false, 10L)) {
+            assertEquals(99L, journal.getLastSequence());
+            assertEquals(100L, journal.append(new Sale("Code100", 1L, new Date(), 1L, 1.0D)));
+            List<JournalEntry> entries = new ArrayList<>();
+            assertEquals(90, journal.cursor(10L).next(1000, entries));
+            assertEquals("Code10", entries.get(0).getSale().getProductCode());
+            assertEquals("Code100", entries.get(89).getSale().getProductCode());
+        }
+    }
+
+    @Test
+    public void testCheckpointAheadOfJournal() throws IOException {
+        try (SaleJournal journal = new SaleJournal(folder.getRoot().toPath(), SEGMENT_SIZE, false, 500L)) {
+            assertEquals(500L, journal.getLastSequence());
+            assertEquals(501L, journal.append(new Sale("Code1", 1L, new Date(), 1L, 1.0D)));
+            List<JournalEntry> entries = new ArrayList<>();
+            assertEquals(1, journal.cursor(500L).next(10, entries));
+        }
+    }
+}
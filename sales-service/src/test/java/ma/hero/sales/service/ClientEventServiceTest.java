@@ -0,0 +1,129 @@
+package ma.hero.sales.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import ma.hero.sales.SalesServiceApplication;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleClientRef;
+import ma.hero.sales.dto.ClientEventDto;
+import ma.hero.sales.dto.ClientEventDto.Type;
+import ma.hero.sales.repository.SaleClientRefRepository;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
+import ma.hero.sales.repository.SaleRepository;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = { SalesServiceApplication.class }, properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "sales.client-events.delete-sales-of-deleted-clients=true" })
+@ActiveProfiles("test")
+public class ClientEventServiceTest {
+
+    @Autowired
+    private IClientEventService clientEventService;
+
+    @Autowired
+    private SaleClientRefRepository clientRefRepository;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private SaleDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private ISaleService saleService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @After
+    public void deleteRefs() {
+        clientRefRepository.deleteAll();
+        saleRepository.deleteAll();
+        rollupRepository.deleteAll();
+    }
+
+    @Test
+    public void testEventsAreAppliedOnce() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        // out of id order within the batch
+        assertEquals(3, clientEventService.applyClientEvents(Arrays.asList(event(2L, 20L, Type.UPDATED, 1L),
+                event(1L, 20L, Type.CREATED, 0L), event(3L, 21L, Type.CREATED, 0L))));
+        // one select of the references, one batch of inserts without the selects of a merge, one lookup of the
+        // pending sales deletes
+        assertEquals(0L, statistics.getEntityLoadCount());
+        assertEquals(3L, statistics.getPrepareStatementCount());
+
+        SaleClientRef ref = clientEventService.getClientRef(20L);
+        assertEquals(2L, ref.getLastEventId());
+        assertEquals(Long.valueOf(1L), ref.getClientVersion());
+        assertFalse(ref.isDeleted());
+
+        // redelivered
+        assertEquals(0, clientEventService.applyClientEvents(Arrays.asList(event(1L, 20L, Type.CREATED, 0L), event(3L, 21L, Type.CREATED, 0L))));
+        assertEquals(2L, clientEventService.getClientRef(20L).getLastEventId());
+
+        // a later change applied first: the older one is skipped
+        assertEquals(1, clientEventService.applyClientEvents(Collections.singletonList(event(5L, 20L, Type.DELETED, 2L))));
+        assertEquals(0, clientEventService.applyClientEvents(Collections.singletonList(event(4L, 20L, Type.UPDATED, 2L))));
+        assertTrue(clientEventService.getClientRef(20L).isDeleted());
+        assertNull(clientEventService.getClientRef(22L));
+    }
+
+    @Test
+    public void testSalesOfDeletedClientAreDeleted() {
+        saleService.createSale(new Sale("Code1", 23L, new Date(), 1L, 1.0D));
+        saleService.createSale(new Sale("Code2", 23L, new Date(), 1L, 1.0D));
+        saleService.createSale(new Sale("Code1", 24L, new Date(), 1L, 1.0D));
+
+        assertEquals(2, clientEventService.applyClientEvents(Arrays.asList(event(10L, 23L, Type.DELETED, 3L),
+                event(11L, 24L, Type.UPDATED, 3L))));
+
+        assertTrue(saleRepository.findByClientId(23L).isEmpty());
+        assertEquals(1, saleRepository.findByClientId(24L).size());
+    }
+
+    @Test
+    public void testFailedSalesDeleteIsRetriedOnRedelivery() {
+        saleService.createSale(new Sale("Code1", 25L, new Date(), 1L, 1.0D));
+        // as left by a delete failing after the commit of the event
+        SaleClientRef ref = new SaleClientRef(25L);
+        ref.setDeleted(true);
+        ref.setLastEventId(12L);
+        ref.setSalesPurgePending(true);
+        clientRefRepository.save(ref);
+
+        assertEquals(0, clientEventService.applyClientEvents(Collections.singletonList(event(12L, 25L, Type.DELETED, 1L))));
+
+        assertTrue(saleRepository.findByClientId(25L).isEmpty());
+        assertFalse(clientEventService.getClientRef(25L).isSalesPurgePending());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEventWithoutType() {
+        clientEventService.applyClientEvents(Collections.singletonList(event(1L, 20L, null, 0L)));
+    }
+
+    private static ClientEventDto event(Long id, Long clientId, Type type, Long version) {
+        return new ClientEventDto(id, clientId, type, version, new Date());
+    }
+}
@@ -0,0 +1,186 @@
+package ma.hero.sales.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ma.hero.sales.SalesServiceApplication;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleChange;
+import ma.hero.sales.dto.SaleChangePage;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
+import ma.hero.sales.repository.SaleRepository;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = { SalesServiceApplication.class }, properties = { "sales.changes.retention-hours=0",
+        "sales.changes.compaction.reader-hold-ms=" + SaleChangeServiceTest.HOLD_MS })
+@ActiveProfiles("test")
+public class SaleChangeServiceTest {
+
+    static final long HOLD_MS = 200L;
+
+    @Autowired
+    private ISaleChangeService changeService;
+
+    @Autowired
+    private ISaleService saleService;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private SaleDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @After
+    public void deleteSales() {
+        saleRepository.deleteAll();
+        rollupRepository.deleteAll();
+    }
+
+    @Test
+    public void testChangesFollowTheWrites() {
+        String since = readAll(null, new ArrayList<>());
+        Sale first = saleService.createSale(new Sale("Code1", 40L, new Date(), 2L, 10.0D));
+        Sale second = saleService.createSale(new Sale("Code2", 41L, new Date(), 1L, 5.0D));
+        Sale change = new Sale("Code1", 42L, first.getOperationDate(), 3L, 12.0D);
+        change.setId(first.getId());
+        saleService.updateSale(change);
+        saleService.deleteSale(second.getId());
+        // rolled back: not logged
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            saleService.createSale(new Sale("Code3", 43L, new Date(), 1L, 1.0D));
+            status.setRollbackOnly();
+        });
+
+        SaleChangePage page = changeService.getChanges(since, 10);
+        List<SaleChange> changes = page.getChanges();
+        assertEquals(4, changes.size());
+        for (int i = 1; i < changes.size(); i++) {
+            assertEquals(changes.get(i - 1).getSeq() + 1, changes.get(i).getSeq().longValue());
+        }
+        assertEquals(SaleChange.Type.INSERT, changes.get(0).getType());
+        assertNull(changes.get(0).getBefore());
+        assertEquals(Long.valueOf(40L), changes.get(0).getAfter().getClientId());
+        assertEquals(SaleChange.Type.INSERT, changes.get(1).getType());
+        SaleChange update = changes.get(2);
+        assertEquals(SaleChange.Type.UPDATE, update.getType());
+        assertEquals(first.getId(), update.getSaleId());
+        assertEquals(Long.valueOf(40L), update.getBefore().getClientId());
+        assertEquals(Long.valueOf(0L), update.getBefore().getVersion());
+        assertEquals(Long.valueOf(42L), update.getAfter().getClientId());
+        assertEquals(Long.valueOf(3L), update.getAfter().getQuantity());
+        assertEquals(Long.valueOf(1L), update.getAfter().getVersion());
+        SaleChange delete = changes.get(3);
+        assertEquals(SaleChange.Type.DELETE, delete.getType());
+        assertEquals(second.getId(), delete.getSaleId());
+        assertEquals(Long.valueOf(41L), delete.getBefore().getClientId());
+        assertNull(delete.getAfter());
+
+        // caught up: the same position again
+        assertTrue(changeService.getChanges(page.getNext(), 10).getChanges().isEmpty());
+    }
+
+    @Test
+    public void testCompactionKeepsTheLastStateOfTheSales() throws Exception {
+        String start = readAll(null, new ArrayList<>());
+        Sale kept = saleService.createSale(new Sale("Code1", 50L, new Date(), 2L, 10.0D));
+        Sale patch = new Sale();
+        patch.setQuantity(7L);
+        saleService.patchSale(kept.getId(), null, patch, Collections.singleton("quantity"));
+        Sale deleted = saleService.createSale(new Sale("Code2", 51L, new Date(), 1L, 5.0D));
+        saleService.deleteSale(deleted.getId());
+        // inside the range about to be compacted
+        String inside = changeService.getChanges(start, 1).getNext();
+        String end = readAll(start, new ArrayList<>());
+        // the reads held the compaction
+        assertEquals(0, changeService.compact());
+        Thread.sleep(HOLD_MS + 50L);
+
+        while (changeService.compact() > 0) {
+            // until every change is older than the retention of 0 hours
+        }
+
+        assertNull(changeService.getChanges(inside, 10));
+        assertTrue(changeService.getChanges(end, 10).getChanges().isEmpty());
+        List<SaleChange> changes = new ArrayList<>();
+        readAll(null, changes);
+        assertTrue(changes.stream().noneMatch(change -> change.getSaleId().equals(deleted.getId())));
+        List<SaleChange> keptChanges = new ArrayList<>();
+        changes.stream().filter(change -> change.getSaleId().equals(kept.getId())).forEach(keptChanges::add);
+        assertEquals(1, keptChanges.size());
+        assertEquals(SaleChange.Type.INSERT, keptChanges.get(0).getType());
+        assertNull(keptChanges.get(0).getBefore());
+        assertEquals(Long.valueOf(7L), keptChanges.get(0).getAfter().getQuantity());
+
+        // the log goes on after the compacted range
+        Sale later = saleService.createSale(new Sale("Code3", 52L, new Date(), 1L, 1.0D));
+        SaleChangePage page = changeService.getChanges(end, 10);
+        assertNotNull(page);
+        assertEquals(1, page.getChanges().size());
+        assertEquals(later.getId(), page.getChanges().get(0).getSaleId());
+    }
+
+    @Test
+    public void testReaderInsideTheCompactedRangeHoldsTheCompaction() throws Exception {
+        Sale sale = saleService.createSale(new Sale("Code1", 60L, new Date(), 2L, 10.0D));
+        Thread.sleep(HOLD_MS + 50L);
+        while (changeService.compact() > 0) {
+            // a compacted range to read
+        }
+        Sale change = new Sale("Code1", 61L, sale.getOperationDate(), 3L, 12.0D);
+        change.setId(sale.getId());
+        saleService.updateSale(change);
+        Thread.sleep(5L);
+
+        // a rebuild from the beginning of the log, a page at a time, the compaction being due after every page
+        SaleChangePage page = changeService.getChanges(null, 1);
+        while (!page.getChanges().isEmpty()) {
+            assertEquals(0, changeService.compact());
+            page = changeService.getChanges(page.getNext(), 1);
+            assertNotNull(page);
+        }
+
+        // past the compacted range: the compaction goes on once the hold expired
+        Thread.sleep(HOLD_MS + 50L);
+        assertTrue(changeService.compact() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() {
+        changeService.getChanges("aWQ6NDI", 10);
+    }
+
+    /**
+     * Read the changes until the log is caught up.
+     * @return the token of the end of the log.
+     */
+    private String readAll(String since, List<SaleChange> changes) {
+        SaleChangePage page;
+        String token = since;
+        do {
+            page = changeService.getChanges(token, 100);
+            changes.addAll(page.getChanges());
+            token = page.getNext();
+        } while (page.getChanges().size() == 100);
+        return token;
+    }
+}
@@ -0,0 +1,79 @@
+package ma.hero.sales.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.hero.sales.SalesServiceApplication;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
+import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.impl.SaleGroupCommitter;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = { SalesServiceApplication.class }, properties = { "sales.group-commit.enabled=true",
+        "sales.group-commit.max-delay-ms=20" })
+@ActiveProfiles("test")
+public class SaleGroupCommitterTest {
+
+    @Autowired
+    private SaleGroupCommitter groupCommitter;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private SaleDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @After
+    public void deleteSales() {
+        saleRepository.deleteAll();
+        rollupRepository.deleteAll();
+    }
+
+    @Test
+    public void testConcurrentSalesAreCommittedTogether() {
+        DistributionSummary batchSize = meterRegistry.get("sales.group_commit.batch.size").summary();
+        long batchesBefore = batchSize.count();
+        double sizeBefore = batchSize.totalAmount();
+        List<CompletableFuture<Sale>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(groupCommitter.submit(new Sale("Code1", 1L, new Date(), 1L, 2.0D)));
+        }
+        Set<Long> ids = new HashSet<>();
+        futures.forEach(future -> ids.add(future.join().getId()));
+        assertEquals(200, ids.size());
+        assertEquals(200L, saleRepository.count());
+
+        assertTrue(batchSize.count() - batchesBefore < 200L);
+        assertEquals(200.0D, batchSize.totalAmount() - sizeBefore, 0.001D);
+        assertNotNull(meterRegistry.get("sales.group_commit.queue.wait").timer());
+    }
+
+    @Test
+    public void testCreateWaitsForTheCommit() {
+        Sale sale = groupCommitter.create(new Sale("Code2", 2L, new Date(), 3L, 1.0D));
+        assertNotNull(sale.getId());
+        assertTrue(saleRepository.findById(sale.getId()).isPresent());
+    }
+}
@@ -0,0 +1,121 @@
+package ma.hero.sales.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ma.hero.sales.SalesServiceApplication;
+import ma.hero.sales.domain.Sale;
+import ma.hero.sales.domain.SaleJournalDeadLetter;
+import ma.hero.sales.journal.SaleJournal;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
+import ma.hero.sales.repository.SaleJournalCheckpointRepository;
+import ma.hero.sales.repository.SaleJournalDeadLetterRepository;
+import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.impl.SaleJournalDrainer;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = { SalesServiceApplication.class }, properties = { "sales.journal.enabled=true",
+        "sales.journal.directory=target/sale-journal-test", "sales.journal.poll-interval-ms=10", "sales.journal.retry-delay-ms=10",
+        "sales.journal.max-batch-attempts=1" })
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SaleJournalDrainerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SaleJournal saleJournal;
+
+    @Autowired
+    private SaleJournalDrainer drainer;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    @Autowired
+    private SaleDailyRollupRepository rollupRepository;
+
+    @Autowired
+    private SaleJournalCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private SaleJournalDeadLetterRepository deadLetterRepository;
+
+    @BeforeClass
+    public static void deleteJournal() {
+        // the checkpoint lives in the in-memory database, so the journal must not outlive it
+        FileSystemUtils.deleteRecursively(new File("target/sale-journal-test"));
+    }
+
+    @After
+    public void deleteSales() {
+        saleRepository.deleteAll();
+        rollupRepository.deleteAll();
+        deadLetterRepository.deleteAll();
+    }
+
+    @Test
+    public void testJournaledSalesAreDrained() throws Exception {
+        long before = saleRepository.count();
+        mockMvc.perform(post("/api/sale").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new Sale("Code1", 1L, new Date(), 3L, 10.0D))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("X-Journal-Sequence"));
+        long last = 0L;
+        for (int i = 0; i < 50; i++) {
+            last = saleJournal.append(new Sale("Code2", 2L, new Date(), 1L, 1.0D));
+        }
+
+        for (int i = 0; i < 200 && drainer.getCheckpoint() < last; i++) {
+            Thread.sleep(50L);
+        }
+        assertEquals(last, drainer.getCheckpoint());
+        assertEquals(last, checkpointRepository.findAll().get(0).getSequence());
+        assertEquals(before + 51L, saleRepository.count());
+    }
+
+    @Test
+    public void testFailingSaleIsDeadLettered() throws Exception {
+        long before = saleRepository.count();
+        saleJournal.append(new Sale("Code1", 1L, new Date(), 1L, 1.0D));
+        // longer than the product_code column
+        long failing = saleJournal.append(new Sale(String.join("", Collections.nCopies(300, "X")), 1L, new Date(), 1L, 1.0D));
+        long last = saleJournal.append(new Sale("Code2", 1L, new Date(), 1L, 1.0D));
+
+        for (int i = 0; i < 200 && drainer.getCheckpoint() < last; i++) {
+            Thread.sleep(50L);
+        }
+        assertEquals(last, drainer.getCheckpoint());
+        assertEquals(before + 2L, saleRepository.count());
+        SaleJournalDeadLetter deadLetter = deadLetterRepository.findAll().get(0);
+        assertEquals(Long.valueOf(failing), deadLetter.getSequence());
+        assertEquals(300, deadLetter.getProductCode().length());
+        assertNotNull(deadLetter.getError());
+    }
+}
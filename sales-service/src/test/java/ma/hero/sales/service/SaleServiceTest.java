@@ -1,12 +1,27 @@
 package ma.hero.sales.service;
 
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
@@ -15,15 +30,31 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.jayway.jsonpath.JsonPath;
+
 import ma.hero.sales.SalesServiceApplication;
+import ma.hero.sales.config.CacheConfig;
+import ma.hero.sales.config.SaleSequenceCheck;
 import ma.hero.sales.domain.Sale;
+import ma.hero.sales.dto.ClientSaleView;
+import ma.hero.sales.dto.ProductSaleView;
+import ma.hero.sales.dto.SaleAggregate;
+import ma.hero.sales.dto.SaleTotals;
+import ma.hero.sales.repository.SaleDailyRollupRepository;
 import ma.hero.sales.repository.SaleRepository;
+import ma.hero.sales.service.ISaleService.DeleteInterruptedException;
+import ma.hero.sales.util.DateUtils;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = { SalesServiceApplication.class })
+@SpringBootTest(classes = { SalesServiceApplication.class }, properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "sales.bulk-delete.chunk-size=2" })
 @ActiveProfiles("test")
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class SaleServiceTest {
@@ -31,9 +62,33 @@ public class SaleServiceTest {
     @Autowired
     private SaleRepository saleRepository;
 
+    @Autowired
+    private SaleDailyRollupRepository rollupRepository;
+
     @Autowired
     private ISaleService saleService;
 
+    @Autowired
+    private ISaleRollupService saleRollupService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ISaleAnalyticsService saleAnalyticsService;
+
+    @Autowired
+    private ISaleExportService saleExportService;
+
+    @Autowired
+    private SaleSequenceCheck saleSequenceCheck;
+
+    @Autowired
+    private DataSource dataSource;
+
     private Long randomId;
 
     @Before
@@ -46,6 +101,8 @@ public class SaleServiceTest {
     @After
     public void deleteSales() {
         saleRepository.deleteAll();
+        rollupRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
     }
 
     @Test
@@ -54,6 +111,27 @@ public class SaleServiceTest {
         assertThat(sales, hasSize(1));
     }
 
+    @Test
+    public void testGetSalesPage() {
+        Long secondId = saleRepository.save(new Sale("Code2", 2L, new Date(), 1L, 5.0D)).getId();
+        List<Sale> firstPage = saleService.getSalesPage(null, 1);
+        assertThat(firstPage, hasSize(1));
+        assertEquals(randomId, firstPage.get(0).getId());
+        List<Sale> secondPage = saleService.getSalesPage(randomId, 1);
+        assertThat(secondPage, hasSize(1));
+        assertEquals(secondId, secondPage.get(0).getId());
+        assertThat(saleService.getSalesPage(secondId, 1), hasSize(0));
+    }
+
+    @Test
+    public void testStreamAllSales() {
+        saleRepository.save(new Sale("Code2", 2L, new Date(), 1L, 5.0D));
+        List<Long> ids = new ArrayList<>();
+        saleService.streamAllSales(sale -> ids.add(sale.getId()));
+        assertThat(ids, hasSize(2));
+        assertEquals(randomId, ids.get(0));
+    }
+
     @Test
     public void testGetSale() throws Exception {
         Sale sale = saleService.getSale(randomId);
@@ -66,6 +144,58 @@ public class SaleServiceTest {
         assertThat(sales, hasSize(1));
     }
 
+    @Test
+    public void testGetSaleByClientCacheEviction() {
+        assertThat(saleService.getSalesByClient(1L), hasSize(1));
+        // written behind the service back : the cached list is still served
+        saleRepository.save(new Sale("Code2", 1L, new Date(), 1L, 1.0D));
+        assertThat(saleService.getSalesByClient(1L), hasSize(1));
+
+        saleService.createSale(new Sale("Code3", 1L, new Date(), 1L, 1.0D));
+        assertThat(saleService.getSalesByClient(1L), hasSize(3));
+
+        Sale moved = new Sale("Code3", 2L, new Date(), 1L, 1.0D);
+        moved.setId(randomId);
+        saleService.getSalesByClient(2L);
+        saleService.updateSale(moved);
+        assertThat(saleService.getSalesByClient(1L), hasSize(2));
+        assertThat(saleService.getSalesByClient(2L), hasSize(1));
+
+        @SuppressWarnings("unchecked")
+        Cache<Object, Object> nativeCache = (Cache<Object, Object>) cacheManager.getCache(CacheConfig.SALES_BY_CLIENT_CACHE).getNativeCache();
+        assertEquals(1L, nativeCache.stats().hitCount());
+    }
+
+    @Test
+    public void testSaleCacheHoldsCopies() {
+        saleService.getSale(randomId).setQuantity(99L);
+        saleService.getSalesByClient(1L).get(0).setQuantity(99L);
+        assertEquals(Long.valueOf(3L), saleService.getSale(randomId).getQuantity());
+        assertEquals(Long.valueOf(3L), saleService.getSalesByClient(1L).get(0).getQuantity());
+
+        assertNull(saleService.getSale(-1L));
+        assertNull(cacheManager.getCache(CacheConfig.SALE_CACHE).get(-1L));
+    }
+
+    @Test
+    public void testGetSalesBetween() {
+        LocalDate today = LocalDate.now();
+        saleRepository.save(new Sale("Code1", 1L, DateUtils.startOfDay(today.minusDays(10)), 1L, 1.0D));
+        saleRepository.save(new Sale("Code2", 1L, DateUtils.startOfDay(today.minusDays(2)), 1L, 1.0D));
+        saleRepository.save(new Sale("Code3", 1L, DateUtils.startOfDay(LocalDate.of(1965, 6, 1)), 1L, 1.0D));
+
+        List<ClientSaleView> recent = saleService.getClientSalesBetween(1L, today.minusDays(3), today);
+        assertThat(recent, hasSize(2));
+        assertEquals("Code2", recent.get(0).getProductCode());
+        assertThat(saleService.getClientSalesBetween(1L, null, null), hasSize(4));
+        assertEquals("Code3", saleService.getClientSalesBetween(1L, null, today.minusDays(10)).get(0).getProductCode());
+        assertThat(saleService.getClientSalesBetween(1L, today.minusDays(10), today.minusDays(10)), hasSize(1));
+
+        List<ProductSaleView> products = saleService.getProductSalesBetween("Code1", today.minusDays(30), null);
+        assertThat(products, hasSize(2));
+        assertEquals(Long.valueOf(1L), products.get(0).getClientId());
+    }
+
     @Test
     public void testCreateSale() throws Exception {
         Sale randomSale2 = new Sale("Code1", 1L, new Date(), 3L, 10.0D);
@@ -73,9 +203,237 @@ public class SaleServiceTest {
         assertNotNull(sale.getId());
     }
 
+    @Test
+    public void testCreateSales() {
+        List<Sale> batch = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            batch.add(new Sale("Code" + (i % 3), 9L, new Date(), 1L, 2.0D));
+        }
+        List<Sale> created = saleService.createSales(batch);
+        assertThat(created, hasSize(120));
+        created.forEach(sale -> assertNotNull(sale.getId()));
+        assertEquals(121L, saleRepository.count());
+        SaleTotals totals = saleRollupService.getClientTotals(9L, null, null);
+        assertEquals(120L, totals.getCount());
+        assertEquals(240.0D, totals.getAmount(), 0.001D);
+    }
+
     @Test
     public void testDeleteSale() throws Exception {
         saleService.deleteSale(randomId);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testBulkDeleteSales() {
+        LocalDate today = LocalDate.now();
+        List<Sale> sales = saleService.createSales(Arrays.asList(
+                new Sale("Code1", 11L, DateUtils.startOfDay(today), 1L, 1.0D),
+                new Sale("Code1", 11L, DateUtils.startOfDay(today), 2L, 2.0D),
+                new Sale("Code2", 11L, DateUtils.startOfDay(today.minusDays(10)), 1L, 3.0D),
+                new Sale("Code1", 12L, DateUtils.startOfDay(today.minusDays(10)), 1L, 4.0D),
+                new Sale("Code1", 12L, DateUtils.startOfDay(today.minusDays(20)), 1L, 5.0D),
+                new Sale("Code2", 12L, DateUtils.startOfDay(today), 1L, 6.0D),
+                new Sale("Code3", 13L, DateUtils.startOfDay(today), 1L, 7.0D)));
+        long markerBefore = saleService.getClientSalesVersion(12L);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // chunks of 2 sales, unknown ids are ignored
+        assertEquals(2L, saleService.deleteSales(Arrays.asList(sales.get(6).getId(), -1L, sales.get(0).getId())));
+        assertEquals(3L, saleService.deleteSalesBefore(today.minusDays(5)));
+        assertEquals(1L, saleService.deleteClientSales(12L));
+        assertEquals(0L, saleService.deleteClientSales(12L));
+        // DELETE ... WHERE statements only, no entity removed one by one
+        assertEquals(0L, statistics.getEntityDeleteCount());
+
+        assertEquals(2L, saleRepository.count());
+        assertEquals(sales.get(1).getId(), saleRepository.findByClientId(11L).get(0).getId());
+        SaleTotals totals = saleRollupService.getClientTotals(11L, null, null);
+        assertEquals(1L, totals.getCount());
+        assertEquals(2.0D, totals.getAmount(), 0.001D);
+        assertEquals(0L, saleRollupService.getClientTotals(12L, null, null).getCount());
+        assertEquals(0L, saleRollupService.getClientTotals(13L, null, null).getCount());
+        assertEquals(markerBefore + 3, saleService.getClientSalesVersion(12L));
+    }
+
+    @Test
+    public void testInterruptedBulkDeleteIsReported() {
+        LocalDate today = LocalDate.now();
+        saleService.createSales(Arrays.asList(
+                new Sale("Code1", 14L, DateUtils.startOfDay(today), 1L, 1.0D),
+                new Sale("Code1", 14L, DateUtils.startOfDay(today), 1L, 1.0D),
+                new Sale("Code1", 14L, DateUtils.startOfDay(today), 1L, 1.0D)));
+
+        Thread.currentThread().interrupt();
+        try {
+            saleService.deleteClientSales(14L);
+            fail("A partial delete must not look complete");
+        } catch (DeleteInterruptedException e) {
+            // stopped after the first chunk of 2 sales
+            assertEquals(2L, e.getDeleted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1L, saleService.deleteClientSales(14L));
+    }
+
+    @Test
+    public void testRollupFollowsWrites() {
+        LocalDate today = LocalDate.now();
+        Date todayDate = DateUtils.startOfDay(today);
+        Sale first = saleService.createSale(new Sale("Code1", 7L, todayDate, 3L, 10.0D));
+        saleService.createSale(new Sale("Code2", 7L, todayDate, 1L, 5.0D));
+        saleService.createSale(new Sale("Code1", 7L, DateUtils.startOfDay(today.minusDays(1)), 2L, 4.0D));
+        saleService.createSale(new Sale("Code1", 7L, DateUtils.startOfDay(LocalDate.of(1965, 6, 1)), 1L, 1.0D));
+
+        SaleTotals totals = saleRollupService.getClientTotals(7L, null, null);
+        assertEquals(4L, totals.getCount());
+        assertEquals(7L, totals.getQuantity());
+        assertEquals(20.0D, totals.getAmount(), 0.001D);
+        assertEquals(2L, saleRollupService.getClientTotals(7L, today, today).getCount());
+
+        Sale changed = new Sale("Code1", 7L, todayDate, 5L, 20.0D);
+        changed.setId(first.getId());
+        saleService.updateSale(changed);
+        List<SaleAggregate> products = saleRollupService.getClientProductTotals(7L, today, today);
+        assertThat(products, hasSize(2));
+        assertEquals("Code1", products.get(0).getKey());
+        assertEquals(5L, products.get(0).getQuantity());
+        assertEquals(20.0D, products.get(0).getAmount(), 0.001D);
+
+        saleService.deleteSale(first.getId());
+        List<SaleAggregate> days = saleRollupService.getClientDailyTotals(7L, null, null);
+        assertThat(days, hasSize(3));
+        assertEquals(1L, days.get(2).getCount());
+        assertEquals(3L, saleRollupService.getClientTotals(7L, null, null).getCount());
+    }
+
+    @Test
+    public void testSaleSequenceCheck() {
+        saleSequenceCheck.check();
+        new JdbcTemplate(dataSource).update("insert into sale (id, product_code, version) values (?, ?, 0)", 1_000_000L, "Legacy");
+        try {
+            saleSequenceCheck.check();
+            fail("A sequence behind the existing sale ids must fail the check");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("1000001"));
+        }
+    }
+
+    @Test
+    public void testRollupRebuild() {
+        saleRepository.save(new Sale("Code1", 1L, new Date(), 2L, 1.5D));
+        assertEquals(1L, saleRollupService.rebuild());
+        SaleTotals totals = saleRollupService.getClientTotals(1L, null, null);
+        assertEquals(2L, totals.getCount());
+        assertEquals(5L, totals.getQuantity());
+    }
+
+    @Test
+    public void testAnalyticsFollowsWrites() throws Exception {
+        for (int i = 0; i < 100 && !saleAnalyticsService.isReady(); i++) {
+            Thread.sleep(50L);
+        }
+        Sale sale = saleService.createSale(new Sale("Analytics1", 7L, new Date(), 2L, 8.0D));
+        SaleAggregate totals = saleAnalyticsService.getTotals(null, null, 7L, "Analytics1");
+        assertEquals(1L, totals.getCount());
+        assertEquals(8.0D, totals.getAmount(), 0.001D);
+
+        sale.setQuantity(5L);
+        saleService.updateSale(sale);
+        assertEquals(5L, saleAnalyticsService.getTotals(null, null, 7L, "Analytics1").getQuantity());
+
+        saleService.deleteSale(sale.getId());
+        assertEquals(0L, saleAnalyticsService.getTotals(null, null, 7L, "Analytics1").getCount());
+    }
+
+    @Test
+    public void testExportSales() throws Exception {
+        LocalDate day = LocalDate.of(2021, 5, 3);
+        saleRepository.save(new Sale("Code,2", 2L, DateUtils.startOfDay(day), 4L, 2.5D));
+        saleRepository.save(new Sale("Code3", null, DateUtils.startOfDay(day.plusDays(1)), null, 1.0D));
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        assertEquals(3L, saleExportService.exportSales(ISaleExportService.Format.CSV, null, null, csv));
+        String[] lines = csv.toString("UTF-8").split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("id,productCode,clientId,operationDate,quantity,amount", lines[0]);
+        assertEquals(",\"Code,2\",2,03-05-2021,4,2.5", lines[2].substring(lines[2].indexOf(',')));
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        assertEquals(1L, saleExportService.exportSales(ISaleExportService.Format.NDJSON, day.plusDays(1), day.plusDays(1), ndjson));
+        String json = ndjson.toString("UTF-8");
+        assertEquals(1, json.split("\n").length);
+        assertEquals("Code3", JsonPath.read(json, "$.productCode"));
+        assertNull(JsonPath.read(json, "$.clientId"));
+        assertEquals("04-05-2021", JsonPath.read(json, "$.operationDate"));
+    }
+
+    @Test
+    public void testVersionAndClientMarker() {
+        long markerBefore = saleService.getClientSalesVersion(9L);
+        Sale sale = saleService.createSale(new Sale("Code1", 9L, new Date(), 1L, 1.0D));
+        assertEquals(Long.valueOf(0L), sale.getVersion());
+        assertEquals(markerBefore + 1, saleService.getClientSalesVersion(9L));
+
+        Sale change = new Sale(sale);
+        change.setQuantity(2L);
+        Sale updated = saleService.updateSale(change);
+        assertEquals(Long.valueOf(1L), updated.getVersion());
+        assertEquals(markerBefore + 2, saleService.getClientSalesVersion(9L));
+
+        // a client holding the first version must not overwrite the second one
+        try {
+            saleService.updateSale(change);
+            fail("A stale version must be rejected");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            assertEquals(Long.valueOf(2L), saleRepository.findById(sale.getId()).get().getQuantity());
+        }
+    }
+
+    @Test
+    public void testPatchSale() {
+        LocalDate today = LocalDate.now();
+        Sale sale = saleService.createSale(new Sale("Code1", 8L, DateUtils.startOfDay(today), 3L, 10.0D));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Sale changes = new Sale();
+        changes.setQuantity(5L);
+        statistics.clear();
+        Sale patched = saleService.patchSale(sale.getId(), 0L, changes, Collections.singleton("quantity"));
+        // on the sale: one select and one conditional update, without merge nor full-column update
+        assertEquals(1L, statistics.getEntityLoadCount());
+        assertEquals(0L, statistics.getEntityUpdateCount());
+        // then the rollup of the only sale of the day removed and upserted back, the client marker increment, and the
+        // change log counter increment and read and its entry
+        assertEquals(9L, statistics.getPrepareStatementCount());
+
+        assertEquals(Long.valueOf(1L), patched.getVersion());
+        assertEquals("Code1", patched.getProductCode());
+        Sale stored = saleRepository.findById(sale.getId()).get();
+        assertEquals(Long.valueOf(5L), stored.getQuantity());
+        assertEquals(Double.valueOf(10.0D), stored.getAmount());
+        assertEquals(Long.valueOf(1L), stored.getVersion());
+        assertEquals(5L, saleRollupService.getClientTotals(8L, today, today).getQuantity());
+
+        try {
+            saleService.patchSale(sale.getId(), 0L, changes, Collections.singleton("quantity"));
+            fail("A stale version must be rejected");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            assertEquals(Long.valueOf(1L), saleRepository.findById(sale.getId()).get().getVersion());
+        }
+        assertNull(saleService.patchSale(-1L, null, changes, Collections.singleton("quantity")));
+    }
+
+    @Test
+    public void testGetSalesByClients() {
+        saleRepository.save(new Sale("Code2", 2L, new Date(), 1L, 1.0D));
+        saleRepository.save(new Sale("Code3", 2L, new Date(), 1L, 1.0D));
+        Map<Long, List<Sale>> sales = saleService.getSalesByClients(Arrays.asList(2L, 1L, 5L));
+        assertEquals(Arrays.asList(2L, 1L, 5L), new ArrayList<>(sales.keySet()));
+        assertThat(sales.get(2L), hasSize(2));
+        assertThat(sales.get(1L), hasSize(1));
+        assertThat(sales.get(5L), hasSize(0));
+    }
+
+}